@@ -1,6 +1,7 @@
 package gui;
 
 import common.ActivityInfo;
+import common.ActivityPage;
 import common.DailyLateData;
 import common.MonthlyReportData;
 import common.OrderInfo;
@@ -35,8 +36,12 @@ import javafx.util.Duration;
 import ocsf.client.AbstractClient;
 
 import java.io.IOException;
+import java.time.Instant;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.Month;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -46,6 +51,8 @@ import java.util.stream.IntStream;
  * This class represents the ClientUi.
  */
 public class ClientUi extends Application {
+    private static final DateTimeFormatter ORDER_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final DateTimeFormatter SCHEDULED_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
     private String role;
     private String requestedFutureDate;
     /**
@@ -193,6 +200,11 @@ public class ClientUi extends Application {
     private boolean expectingHistory = false;
     private boolean dashboardShown = false;
 
+    // Paging state of the activity table currently on screen (history or system-wide log).
+    private TableView<ActivityInfo> activityTable;
+    private Button loadMoreActivitiesBtn;
+    private String activityNextCursor;
+
     private Label resultLabel;
     private Stage primaryStage;
     private MyClient client;
@@ -767,6 +779,7 @@ public class ClientUi extends Application {
         }
         table.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY);
         table.setPlaceholder(new Label("No activity history found."));
+        activityTable = table;
 
         VBox leftNav = new VBox(15);
         leftNav.getStyleClass().add("side-nav-pane");
@@ -774,7 +787,7 @@ public class ClientUi extends Application {
         backButton.getStyleClass().add("nav-button");
         backButton.setMaxWidth(Double.MAX_VALUE);
         backButton.setOnAction(e -> showClientDashboard());
-        leftNav.getChildren().add(backButton);
+        leftNav.getChildren().addAll(backButton, createLoadMoreActivitiesButton("GET_HISTORY;" + subscriberInfo.getSubscriptionCode() + ";"));
         
         Scene scene = createMainViewScene("My Activity History", table, leftNav);
         primaryStage.setScene(scene);
@@ -803,10 +816,12 @@ public class ClientUi extends Application {
         table.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY);
         table.setPlaceholder(new Label("No activity has been logged in the system."));
         table.getColumns().forEach(col -> col.setStyle("-fx-alignment: CENTER;"));
+        activityTable = table;
 
         VBox leftNav = new VBox(15);
         leftNav.getStyleClass().add("side-nav-pane");
         addManagerButtons(leftNav);
+        leftNav.getChildren().add(createLoadMoreActivitiesButton("GET_ALL_ACTIVITY_LOGS;"));
 
         Scene scene = createMainViewScene("System-Wide Activity Log", table, leftNav);
         primaryStage.setScene(scene);
@@ -814,6 +829,31 @@ public class ClientUi extends Application {
         primaryStage.setMaximized(true);
     }
 
+    /**
+     * Creates the button that requests the next (older) page of the activity table on screen.
+     * The button is disabled once the server reports there are no more entries.
+     */
+    private Button createLoadMoreActivitiesButton(String requestPrefix) {
+        Button loadMoreBtn = new Button("Load More");
+        loadMoreBtn.getStyleClass().add("nav-button");
+        loadMoreBtn.setMaxWidth(Double.MAX_VALUE);
+        loadMoreBtn.setDisable(activityNextCursor == null);
+        loadMoreBtn.setOnAction(e -> {
+            if (activityNextCursor == null) {
+                return;
+            }
+            try {
+                loadMoreBtn.setDisable(true);
+                client.sendToServer(requestPrefix + activityNextCursor);
+            } catch (IOException ex) {
+                loadMoreBtn.setDisable(false);
+                showError("Failed to request more activity entries.");
+            }
+        });
+        loadMoreActivitiesBtn = loadMoreBtn;
+        return loadMoreBtn;
+    }
+
     private void showError(String message) {
         Platform.runLater(() -> {
             Alert alert = new Alert(Alert.AlertType.ERROR);
@@ -1483,6 +1523,8 @@ public class ClientUi extends Application {
                     processStringMessage(message);
                 } else if (msg instanceof SubscriberInfo newInfo) {
                     processSubscriberInfoUpdate(newInfo);
+                } else if (msg instanceof ActivityPage page) {
+                    processActivityPage(page);
                 } else if (msg instanceof ArrayList<?> list) {
                     processListData(list);
                 } else {
@@ -1560,6 +1602,28 @@ public class ClientUi extends Application {
             }
         }
 
+        /**
+         * Processes a page of activity log entries. A first page opens the history or
+         * activity log screen; a continuation page is appended to the table already shown.
+         */
+        private void processActivityPage(ActivityPage page) {
+            activityNextCursor = page.getNextCursor();
+            if (page.isContinuation()) {
+                if (activityTable != null) {
+                    activityTable.getItems().addAll(page.getActivities());
+                }
+                if (loadMoreActivitiesBtn != null) {
+                    loadMoreActivitiesBtn.setDisable(!page.hasMore());
+                }
+                return;
+            }
+            if (page.getActivities().isEmpty()) {
+                handleEmptyListResponse();
+            } else {
+                handleActivityInfoList(page.getActivities());
+            }
+        }
+
         /**
          * Handles the specific logic for when an empty list is received from the server,
          * routing to the correct UI page based on the expected data type.
@@ -1737,6 +1801,19 @@ public class ClientUi extends Application {
         protected void connectionClosed() { Platform.runLater(() -> { showError("Connection to server has been lost."); showConnectionScreen(); }); }
     }
     
+    /**
+     * Formats an {@link OrderInfo} time for display in the local time zone.
+     * @param epochMillis the time in epoch milliseconds, or 0 if not set
+     * @param format the display format
+     * @return the formatted time, or "N/A" if not set
+     */
+    private static String formatOrderTime(long epochMillis, DateTimeFormatter format) {
+        if (epochMillis == 0) {
+            return "N/A";
+        }
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault()).format(format);
+    }
+
     private void showManagerActiveParkingPage(ArrayList<OrderInfo> orders) {
         dashboardShown = false;
 
@@ -1750,9 +1827,9 @@ public class ClientUi extends Application {
         TableColumn<OrderInfo, String> confirmationCodeCol = new TableColumn<>("Confirmation Code");
         confirmationCodeCol.setCellValueFactory(new PropertyValueFactory<>("confirmationCode"));
         TableColumn<OrderInfo, String> placingTimeCol = new TableColumn<>("Parking Start Time");
-        placingTimeCol.setCellValueFactory(new PropertyValueFactory<>("timeOfPlacingOrder"));
+        placingTimeCol.setCellValueFactory(data -> new SimpleStringProperty(formatOrderTime(data.getValue().getTimeOfPlacingOrder(), ORDER_TIME_FORMAT)));
         TableColumn<OrderInfo, String> endTimeCol = new TableColumn<>("Parking End Time");
-        endTimeCol.setCellValueFactory(new PropertyValueFactory<>("endParkTime"));
+        endTimeCol.setCellValueFactory(data -> new SimpleStringProperty(formatOrderTime(data.getValue().getEndParkTime(), ORDER_TIME_FORMAT)));
         table.getColumns().addAll(orderNumberCol, parkingSpaceCol, subscriberIdCol, confirmationCodeCol, placingTimeCol, endTimeCol);
         table.getItems().addAll(orders);
         table.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY);
@@ -1788,7 +1865,7 @@ public class ClientUi extends Application {
         TableColumn<OrderInfo, String> userNameCol = new TableColumn<>("User Name");
         userNameCol.setCellValueFactory(new PropertyValueFactory<>("userName"));
         TableColumn<OrderInfo, String> scheduledTimeCol = new TableColumn<>("Scheduled Time");
-        scheduledTimeCol.setCellValueFactory(new PropertyValueFactory<>("scheduledTime"));
+        scheduledTimeCol.setCellValueFactory(data -> new SimpleStringProperty(formatOrderTime(data.getValue().getScheduledTime(), SCHEDULED_TIME_FORMAT)));
         TableColumn<OrderInfo, String> futureSpotCol = new TableColumn<>("Assigned Spot");
         futureSpotCol.setCellValueFactory(new PropertyValueFactory<>("futureParkingSpot"));
         TableColumn<OrderInfo, String> confirmationCodeCol = new TableColumn<>("Confirmation Code");
@@ -0,0 +1,433 @@
+package backend;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Timestamp;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The local store of archived 'activity_log' months written by {@link ActivityLogArchiver}.
+ * Each month is one gzip-compressed file of tab-separated rows
+ * ({@code id, subscriber_code, activity_type, details, timestamp millis}), named
+ * {@code activity_log-YYYY-MM.tsv.gz}. A file only appears under its final name once it is
+ * complete and synced to disk, so a half-written month is never read.
+ * <p>
+ * Next to each month, {@code activity_log-YYYY-MM.subscribers} lists the subscriber codes that
+ * have rows in it, one per line. The lists are loaded into an in-memory index on first use
+ * (and written for months archived before they existed), so a subscriber's history only
+ * decompresses the months that actually contain the subscriber.
+ * <p>
+ * Reading is the slow path for history that is no longer in MySQL: {@link #readPage}
+ * decompresses whole months, newest first, until it has enough rows. The activity pages only
+ * call it once the client explicitly pages past the end of the live table.
+ */
+public class ActivityArchive {
+    private static final String FILE_PREFIX = "activity_log-";
+    private static final String FILE_SUFFIX = ".tsv.gz";
+    private static final String INDEX_SUFFIX = ".subscribers";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String NULL_FIELD = "\\N";
+
+    /**
+     * A single archived activity_log row.
+     */
+    public static final class Record {
+        final long id;
+        final String subscriberCode;
+        final String activityType;
+        final String details;
+        final Timestamp timestamp;
+
+        Record(long id, String subscriberCode, String activityType, String details, Timestamp timestamp) {
+            this.id = id;
+            this.subscriberCode = subscriberCode;
+            this.activityType = activityType;
+            this.details = details;
+            this.timestamp = timestamp;
+        }
+    }
+
+    /**
+     * Writes one month to a temporary file; {@link #commit()} publishes it under its final name.
+     * Closing a writer that was not committed deletes the temporary file.
+     */
+    public final class MonthWriter implements Closeable {
+        private final YearMonth month;
+        private final Path tempFile;
+        private final FileOutputStream fileOut;
+        private final BufferedWriter out;
+        private final Set<String> subscriberCodes = new HashSet<>();
+        private int rows;
+        private boolean committed;
+
+        private MonthWriter(YearMonth month) throws IOException {
+            this.month = month;
+            this.tempFile = directory.resolve(fileName(month) + TEMP_SUFFIX);
+            this.fileOut = new FileOutputStream(tempFile.toFile());
+            this.out = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(fileOut, 64 * 1024), StandardCharsets.UTF_8));
+        }
+
+        public void write(Record record) throws IOException {
+            out.write(Long.toString(record.id));
+            out.write('\t');
+            out.write(escape(record.subscriberCode));
+            out.write('\t');
+            out.write(escape(record.activityType));
+            out.write('\t');
+            out.write(escape(record.details));
+            out.write('\t');
+            out.write(Long.toString(record.timestamp.getTime()));
+            out.write('\n');
+            if (record.subscriberCode != null) {
+                subscriberCodes.add(record.subscriberCode);
+            }
+            rows++;
+        }
+
+        public int getRows() {
+            return rows;
+        }
+
+        /**
+         * Finishes the file, syncs it to disk and renames it to its final name. The month's
+         * subscriber list is published first, so a published month always has one.
+         *
+         * @return The published file.
+         */
+        public Path commit() throws IOException {
+            out.flush();
+            fileOut.getFD().sync();
+            out.close();
+            writeSubscriberIndex(month, subscriberCodes);
+            Path target = fileFor(month);
+            Files.move(tempFile, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            committed = true;
+            indexMonth(month, subscriberCodes);
+            return target;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!committed) {
+                out.close();
+                Files.deleteIfExists(tempFile);
+            }
+        }
+    }
+
+    private final Path directory;
+
+    /** The archived months of each subscriber code, newest first; null until first used. Guarded by this. */
+    private Map<String, NavigableSet<YearMonth>> subscriberMonths;
+    /** Months whose subscriber list could not be read; they are scanned for every subscriber. Guarded by this. */
+    private final Set<YearMonth> unindexedMonths = new HashSet<>();
+
+    /**
+     * @param directory The directory holding the archive files; created when the first month is archived.
+     */
+    public ActivityArchive(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Starts writing a month. Any previous archive of the month is replaced when the new one is committed.
+     *
+     * @param month The month being archived.
+     * @return A writer for the month's rows.
+     * @throws IOException If the directory or the temporary file cannot be created.
+     */
+    public MonthWriter openMonth(YearMonth month) throws IOException {
+        Files.createDirectories(directory);
+        return new MonthWriter(month);
+    }
+
+    /**
+     * @param month A month.
+     * @return Whether an archive file exists for the month.
+     */
+    public boolean contains(YearMonth month) {
+        return Files.exists(fileFor(month));
+    }
+
+    /**
+     * @return The archived months, newest first.
+     */
+    public List<YearMonth> months() {
+        List<YearMonth> months = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return months;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, FILE_PREFIX + "*" + FILE_SUFFIX)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                try {
+                    months.add(YearMonth.parse(name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length())));
+                } catch (RuntimeException e) {
+                    System.err.println("Activity archive: ignoring unexpected file " + name);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Activity archive: could not list " + directory + ": " + e.getMessage());
+        }
+        months.sort(Collections.reverseOrder());
+        return months;
+    }
+
+    /**
+     * Reads archived rows strictly before a keyset position, newest first, in the same
+     * (timestamp DESC, id DESC) order as the live activity_log pages.
+     *
+     * @param subscriberCode Only rows of this subscriber, or null for all rows.
+     * @param beforeMillis   The timestamp of the keyset position, in epoch milliseconds.
+     * @param beforeId       The id of the keyset position.
+     * @param limit          The maximum number of rows to return.
+     * @return Up to {@code limit} rows.
+     */
+    public List<Record> readPage(String subscriberCode, long beforeMillis, long beforeId, int limit) {
+        List<Record> page = new ArrayList<>();
+        for (YearMonth month : candidateMonths(subscriberCode)) {
+            if (page.size() >= limit) {
+                break;
+            }
+            if (monthStart(month) > beforeMillis) {
+                continue;
+            }
+            List<Record> rows = new ArrayList<>();
+            try {
+                forEachInMonth(month, record -> {
+                    if ((subscriberCode == null || subscriberCode.equals(record.subscriberCode))
+                            && (record.timestamp.getTime() < beforeMillis
+                                || (record.timestamp.getTime() == beforeMillis && record.id < beforeId))) {
+                        rows.add(record);
+                    }
+                });
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Activity archive: could not read " + fileName(month) + ": " + e.getMessage());
+                continue;
+            }
+            rows.sort((a, b) -> a.timestamp.getTime() != b.timestamp.getTime()
+                ? Long.compare(b.timestamp.getTime(), a.timestamp.getTime())
+                : Long.compare(b.id, a.id));
+            page.addAll(rows.subList(0, Math.min(rows.size(), limit - page.size())));
+        }
+        return page;
+    }
+
+    /**
+     * Answers from the subscriber index whether {@link #readPage} could return anything,
+     * without decompressing a month.
+     *
+     * @param subscriberCode Only rows of this subscriber, or null for all rows.
+     * @param beforeMillis   The timestamp of the keyset position, in epoch milliseconds.
+     * @return Whether an archived month that may hold such rows starts before the position.
+     */
+    public boolean hasRowsBefore(String subscriberCode, long beforeMillis) {
+        for (YearMonth month : candidateMonths(subscriberCode)) {
+            if (monthStart(month) <= beforeMillis) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return A one-line summary of the archive for the server metrics output.
+     */
+    public String describe() {
+        List<YearMonth> months = months();
+        int subscribers;
+        synchronized (this) {
+            subscribers = subscriberMonths == null ? 0 : subscriberMonths.size();
+        }
+        return "archivedMonths=" + months.size() + (months.isEmpty() ? "" : " oldest=" + months.get(months.size() - 1) + " newest=" + months.get(0))
+            + " indexedSubscribers=" + subscribers;
+    }
+
+    /**
+     * Reads every row of an archived month, in the order they were archived.
+     *
+     * @param month    The month.
+     * @param consumer Receives each row.
+     * @throws IOException If the month is not archived or its file cannot be read.
+     */
+    public void forEachInMonth(YearMonth month, Consumer<Record> consumer) throws IOException {
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(fileFor(month)), 64 * 1024), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] fields = line.split("\t", -1);
+                if (fields.length != 5) {
+                    continue;
+                }
+                consumer.accept(new Record(Long.parseLong(fields[0]), unescape(fields[1]), unescape(fields[2]),
+                    unescape(fields[3]), new Timestamp(Long.parseLong(fields[4]))));
+            }
+        }
+    }
+
+    /**
+     * @return The months that may hold rows of the subscriber, newest first; all months for null.
+     */
+    private List<YearMonth> candidateMonths(String subscriberCode) {
+        if (subscriberCode == null) {
+            return months();
+        }
+        synchronized (this) {
+            loadSubscriberIndex();
+            NavigableSet<YearMonth> months = new TreeSet<>(Collections.reverseOrder());
+            NavigableSet<YearMonth> indexed = subscriberMonths.get(subscriberCode);
+            if (indexed != null) {
+                months.addAll(indexed);
+            }
+            months.addAll(unindexedMonths);
+            return new ArrayList<>(months);
+        }
+    }
+
+    private synchronized void loadSubscriberIndex() {
+        if (subscriberMonths != null) {
+            return;
+        }
+        subscriberMonths = new HashMap<>();
+        for (YearMonth month : months()) {
+            Set<String> codes = readSubscriberIndex(month);
+            if (codes == null) {
+                unindexedMonths.add(month);
+            } else {
+                indexMonth(month, codes);
+            }
+        }
+    }
+
+    private synchronized void indexMonth(YearMonth month, Set<String> codes) {
+        if (subscriberMonths == null) {
+            return;
+        }
+        unindexedMonths.remove(month);
+        for (String code : codes) {
+            subscriberMonths.computeIfAbsent(code, key -> new TreeSet<>(Collections.reverseOrder())).add(month);
+        }
+    }
+
+    /**
+     * Reads a month's subscriber list, building and writing it from the month's rows if the
+     * month was archived before the lists existed.
+     *
+     * @return The subscriber codes of the month, or null if neither the list nor the month could be read.
+     */
+    private Set<String> readSubscriberIndex(YearMonth month) {
+        Path path = indexFileFor(month);
+        try {
+            Set<String> codes = new HashSet<>();
+            if (Files.exists(path)) {
+                for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+                    codes.add(unescape(line));
+                }
+                return codes;
+            }
+            forEachInMonth(month, record -> {
+                if (record.subscriberCode != null) {
+                    codes.add(record.subscriberCode);
+                }
+            });
+            writeSubscriberIndex(month, codes);
+            return codes;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Activity archive: could not index " + fileName(month) + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeSubscriberIndex(YearMonth month, Set<String> codes) throws IOException {
+        Path target = indexFileFor(month);
+        Path temp = directory.resolve(target.getFileName() + TEMP_SUFFIX);
+        List<String> lines = new ArrayList<>(codes.size());
+        for (String code : codes) {
+            lines.add(escape(code));
+        }
+        Files.write(temp, lines, StandardCharsets.UTF_8);
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static long monthStart(YearMonth month) {
+        return month.atDay(1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private Path fileFor(YearMonth month) {
+        return directory.resolve(fileName(month));
+    }
+
+    private Path indexFileFor(YearMonth month) {
+        return directory.resolve(FILE_PREFIX + month + INDEX_SUFFIX);
+    }
+
+    private static String fileName(YearMonth month) {
+        return FILE_PREFIX + month + FILE_SUFFIX;
+    }
+
+    private static String escape(String value) {
+        if (value == null) {
+            return NULL_FIELD;
+        }
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\': sb.append("\\\\"); break;
+                case '\t': sb.append("\\t"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                default: sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String unescape(String value) {
+        if (NULL_FIELD.equals(value)) {
+            return null;
+        }
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c != '\\' || i + 1 == value.length()) {
+                sb.append(c);
+                continue;
+            }
+            char next = value.charAt(++i);
+            switch (next) {
+                case 't': sb.append('\t'); break;
+                case 'n': sb.append('\n'); break;
+                case 'r': sb.append('\r'); break;
+                default: sb.append(next);
+            }
+        }
+        return sb.toString();
+    }
+}
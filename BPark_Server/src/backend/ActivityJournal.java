@@ -0,0 +1,300 @@
+package backend;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.zip.CRC32;
+
+/**
+ * A crash-safe local journal for activity log entries that have been accepted but not yet
+ * written to MySQL by {@link ActivityLogWriter}.
+ * <p>
+ * Entries are appended to memory-mapped segment files of a fixed size; when a segment is full
+ * a new one is started. Because the data lives in the OS page cache as soon as it is copied
+ * into the mapping, a crash of the server process does not lose it. Each record is
+ * {@code [int length][int crc32][payload]}, and a zero length marks the end of a segment.
+ * <p>
+ * The journal keeps a checkpoint: the highest sequence number below which every entry has
+ * been written to the database. Segments that lie entirely below the checkpoint are deleted.
+ * On startup, {@link #open()} reads whatever the previous run left behind so the entries can
+ * be replayed into the database. Replay is at-least-once: an entry written just before a crash,
+ * or written out of order above the checkpoint, may be inserted a second time.
+ */
+public class ActivityJournal {
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final int RECORD_HEADER_BYTES = 8;
+
+    private final Path directory;
+    private final int segmentBytes;
+
+    private final ConcurrentSkipListSet<Long> pending = new ConcurrentSkipListSet<>();
+    private final Deque<Segment> closedSegments = new ArrayDeque<>();
+    private Segment activeSegment;
+    private MappedByteBuffer checkpointBuffer;
+    private long checkpoint;
+    private long nextSequence = 1;
+
+    /**
+     * @param directory    The directory holding the segment files; created if missing.
+     * @param segmentBytes The size of each memory-mapped segment file.
+     */
+    public ActivityJournal(Path directory, int segmentBytes) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+    }
+
+    /**
+     * Opens the journal and recovers entries left by a previous run.
+     * The recovered entries are re-appended to a fresh segment (keeping their original
+     * timestamps) and the old segments are deleted, so they stay journaled until the caller
+     * has written them and called {@link #markFlushed}.
+     *
+     * @return The recovered entries, in their original order, that still have to be written.
+     * @throws IOException If the journal directory or its files cannot be accessed.
+     */
+    public synchronized List<ActivityLogWriter.Entry> open() throws IOException {
+        Files.createDirectories(directory);
+        try (FileChannel channel = FileChannel.open(directory.resolve(CHECKPOINT_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            checkpointBuffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Long.BYTES);
+        }
+        checkpoint = checkpointBuffer.getLong(0);
+
+        List<Path> oldSegments = listSegments();
+        List<ActivityLogWriter.Entry> recovered = new ArrayList<>();
+        long highestSequence = checkpoint;
+        for (Path segment : oldSegments) {
+            highestSequence = Math.max(highestSequence, readSegment(segment, recovered));
+        }
+        nextSequence = highestSequence + 1;
+
+        activeSegment = mapSegment(nextSequence, segmentBytes);
+        // An unused segment from the previous run can have the same name as the new one.
+        oldSegments.remove(activeSegment.path);
+        for (ActivityLogWriter.Entry entry : recovered) {
+            append(entry);
+        }
+        activeSegment.buffer.force();
+        for (Path segment : oldSegments) {
+            Files.deleteIfExists(segment);
+        }
+        return recovered;
+    }
+
+    /**
+     * Appends an entry and assigns it the next sequence number.
+     *
+     * @param entry The entry to journal.
+     */
+    public synchronized void append(ActivityLogWriter.Entry entry) {
+        byte[] payload = encode(entry, nextSequence);
+        int recordBytes = RECORD_HEADER_BYTES + payload.length;
+        try {
+            if (activeSegment.buffer.remaining() < recordBytes + Integer.BYTES) {
+                rotate(Math.max(segmentBytes, recordBytes + Integer.BYTES));
+            }
+        } catch (IOException e) {
+            System.err.println("Activity journal rotation failed, entry is not journaled: " + e.getMessage());
+            return;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        MappedByteBuffer buffer = activeSegment.buffer;
+        int start = buffer.position();
+        buffer.position(start + Integer.BYTES);
+        buffer.putInt((int) crc.getValue());
+        buffer.put(payload);
+        // Publish the length last so a torn write is never mistaken for a complete record.
+        buffer.putInt(start, payload.length);
+
+        entry.sequence = nextSequence;
+        activeSegment.lastSequence = nextSequence;
+        pending.add(nextSequence);
+        nextSequence++;
+    }
+
+    /**
+     * Marks entries as durably written to the database. Advances the checkpoint past every
+     * entry that is no longer pending and deletes segments that are fully covered by it.
+     *
+     * @param entries The entries that were written (or deliberately discarded).
+     */
+    public synchronized void markFlushed(Collection<ActivityLogWriter.Entry> entries) {
+        for (ActivityLogWriter.Entry entry : entries) {
+            if (entry.sequence > 0) {
+                pending.remove(entry.sequence);
+            }
+        }
+        long watermark = pending.isEmpty() ? nextSequence - 1 : pending.first() - 1;
+        if (watermark <= checkpoint) {
+            return;
+        }
+        checkpoint = watermark;
+        checkpointBuffer.putLong(0, checkpoint);
+
+        Iterator<Segment> it = closedSegments.iterator();
+        while (it.hasNext()) {
+            Segment segment = it.next();
+            if (segment.lastSequence > checkpoint) {
+                break;
+            }
+            try {
+                Files.deleteIfExists(segment.path);
+                it.remove();
+            } catch (IOException e) {
+                // Still mapped on some platforms; retried on the next checkpoint.
+                break;
+            }
+        }
+    }
+
+    /**
+     * Forces the active segment and checkpoint to disk.
+     */
+    public synchronized void close() {
+        if (activeSegment != null) {
+            activeSegment.buffer.force();
+        }
+        if (checkpointBuffer != null) {
+            checkpointBuffer.force();
+        }
+    }
+
+    /**
+     * @return A one-line summary of the journal state for the server metrics output.
+     */
+    public synchronized String describe() {
+        return "pending=" + pending.size() + " checkpoint=" + checkpoint + " segments=" + (closedSegments.size() + 1);
+    }
+
+    private void rotate(int size) throws IOException {
+        activeSegment.buffer.force();
+        closedSegments.addLast(activeSegment);
+        activeSegment = mapSegment(nextSequence, size);
+    }
+
+    private Segment mapSegment(long firstSequence, int size) throws IOException {
+        Path path = directory.resolve(String.format("%s%019d%s", SEGMENT_PREFIX, firstSequence, SEGMENT_SUFFIX));
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            return new Segment(path, buffer, firstSequence - 1);
+        }
+    }
+
+    private List<Path> listSegments() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                segments.add(path);
+            }
+        }
+        segments.sort(null);
+        return segments;
+    }
+
+    /**
+     * Reads the valid records of a segment, adding those above the checkpoint to {@code out}.
+     *
+     * @return The highest sequence number seen in the segment.
+     */
+    private long readSegment(Path segment, List<ActivityLogWriter.Entry> out) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(segment));
+        long highest = 0;
+        while (buffer.remaining() >= RECORD_HEADER_BYTES) {
+            int length = buffer.getInt();
+            int storedCrc = buffer.getInt();
+            if (length <= 0 || length > buffer.remaining()) {
+                break;
+            }
+            byte[] payload = new byte[length];
+            buffer.get(payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if ((int) crc.getValue() != storedCrc) {
+                System.err.println("Activity journal: corrupt record in " + segment.getFileName() + ", skipping the rest of the segment.");
+                break;
+            }
+            ByteBuffer record = ByteBuffer.wrap(payload);
+            long sequence = record.getLong();
+            long timestamp = record.getLong();
+            String subscriberCode = readString(record);
+            String activityType = readString(record);
+            String details = readString(record);
+            highest = Math.max(highest, sequence);
+            if (sequence > checkpoint) {
+                out.add(new ActivityLogWriter.Entry(subscriberCode, activityType, details, new Timestamp(timestamp)));
+            }
+        }
+        return highest;
+    }
+
+    private static byte[] encode(ActivityLogWriter.Entry entry, long sequence) {
+        byte[] subscriberCode = toBytes(entry.subscriberCode);
+        byte[] activityType = toBytes(entry.activityType);
+        byte[] details = toBytes(entry.details);
+        ByteBuffer buffer = ByteBuffer.allocate(2 * Long.BYTES + 3 * Integer.BYTES
+            + length(subscriberCode) + length(activityType) + length(details));
+        buffer.putLong(sequence);
+        buffer.putLong(entry.timestamp.getTime());
+        writeBytes(buffer, subscriberCode);
+        writeBytes(buffer, activityType);
+        writeBytes(buffer, details);
+        return buffer.array();
+    }
+
+    private static byte[] toBytes(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int length(byte[] bytes) {
+        return bytes == null ? 0 : bytes.length;
+    }
+
+    private static void writeBytes(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(bytes.length);
+            buffer.put(bytes);
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static class Segment {
+        final Path path;
+        final MappedByteBuffer buffer;
+        long lastSequence;
+
+        Segment(Path path, MappedByteBuffer buffer, long lastSequence) {
+            this.path = path;
+            this.buffer = buffer;
+            this.lastSequence = lastSequence;
+        }
+    }
+}
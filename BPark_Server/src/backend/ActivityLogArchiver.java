@@ -0,0 +1,291 @@
+package backend;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Maintains the monthly partitions of 'activity_log' and moves cold months out of MySQL.
+ * <p>
+ * Schema migration 5 range-partitions the table by {@code TO_DAYS(activity_timestamp)} with a
+ * single catch-all partition {@code p_future}. Every run of this class first splits
+ * {@code p_future} so that there is one partition {@code pYYYYMM} per month up to a few months
+ * ahead, and then archives every month older than the retention period: its rows are exported
+ * to an {@link ActivityArchive} file, the month is recorded in 'activity_log_archive'
+ * (created by schema migration 7) and the partition is dropped, which frees the space without a large DELETE.
+ * <p>
+ * The archiver runs on its own low-priority thread and never competes with gate traffic for
+ * long: it reads in small keyset batches on a connection it checks out per batch, limits
+ * itself to a configured number of rows per second, and pauses while the connection pool is
+ * nearly exhausted. The daily counts in 'activity_daily_counts' are kept for archived months,
+ * so the manager reports are unaffected; raw history of archived months is served from the
+ * archive files by {@link DBController}.
+ */
+public class ActivityLogArchiver {
+    private static final String FUTURE_PARTITION = "p_future";
+    private static final Pattern MONTH_PARTITION = Pattern.compile("p(\\d{4})(\\d{2})");
+    private static final long BUSY_POOL_PAUSE_MS = 250;
+
+    private static final String LIST_PARTITIONS =
+        "SELECT PARTITION_NAME FROM information_schema.PARTITIONS " +
+        "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'activity_log' AND PARTITION_NAME IS NOT NULL";
+
+    private final ConnectionPool pool;
+    private final ActivityArchive archive;
+    private final int retentionMonths;
+    private final int monthsAhead;
+    private final int batchSize;
+    private final int rowsPerSecond;
+    private final ScheduledExecutorService executor;
+    private volatile boolean running = true;
+
+    private final AtomicLong archivedMonths = new AtomicLong();
+    private final AtomicLong archivedRows = new AtomicLong();
+    private final AtomicLong pausedMillis = new AtomicLong();
+    private final AtomicLong failedRuns = new AtomicLong();
+    private volatile String lastRun = "never";
+
+    /**
+     * @param pool            The connection pool of the database.
+     * @param archive         Where archived months are written.
+     * @param retentionMonths How many months, including the current one, stay in MySQL.
+     * @param monthsAhead     How many future months get a partition in advance.
+     * @param batchSize       The number of rows exported per query.
+     * @param rowsPerSecond   The maximum export rate.
+     */
+    public ActivityLogArchiver(ConnectionPool pool, ActivityArchive archive, int retentionMonths, int monthsAhead, int batchSize, int rowsPerSecond) {
+        this.pool = pool;
+        this.archive = archive;
+        this.retentionMonths = Math.max(1, retentionMonths);
+        this.monthsAhead = Math.max(1, monthsAhead);
+        this.batchSize = Math.max(1, batchSize);
+        this.rowsPerSecond = Math.max(1, rowsPerSecond);
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "activity-log-archiver");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    /**
+     * Schedules periodic runs, the first one shortly after startup.
+     *
+     * @param intervalMinutes The time between runs.
+     */
+    public void start(long intervalMinutes) {
+        executor.scheduleWithFixedDelay(this::runOnce, 1, Math.max(1, intervalMinutes), TimeUnit.MINUTES);
+    }
+
+    /**
+     * Stops the archiver. A month being exported is abandoned and retried on the next start.
+     */
+    public void shutdown() {
+        running = false;
+        executor.shutdownNow();
+    }
+
+    /**
+     * Creates missing monthly partitions and archives the months past the retention period.
+     */
+    public void runOnce() {
+        try {
+            TreeMap<YearMonth, String> partitions = listMonthPartitions();
+            if (partitions == null) {
+                return;
+            }
+            ensurePartitions(partitions);
+            YearMonth cutoff = YearMonth.now().minusMonths(retentionMonths - 1);
+            for (Map.Entry<YearMonth, String> entry : partitions.headMap(cutoff).entrySet()) {
+                if (!running) {
+                    return;
+                }
+                archiveMonth(entry.getKey(), entry.getValue());
+            }
+            lastRun = LocalDateTime.now().withNano(0).toString();
+        } catch (SQLException | IOException e) {
+            failedRuns.incrementAndGet();
+            System.err.println("Activity log archiver: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return A one-line summary of the archiver for the server metrics output.
+     */
+    public String describe() {
+        return "archivedMonths=" + archivedMonths.get() + " archivedRows=" + archivedRows.get()
+            + " pausedMs=" + pausedMillis.get() + " failedRuns=" + failedRuns.get() + " lastRun=" + lastRun;
+    }
+
+    /**
+     * @return The monthly partitions by month, or null if the table is not partitioned.
+     */
+    private TreeMap<YearMonth, String> listMonthPartitions() throws SQLException {
+        TreeMap<YearMonth, String> partitions = new TreeMap<>();
+        boolean partitioned = false;
+        try (Connection conn = pool.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(LIST_PARTITIONS)) {
+            while (rs.next()) {
+                partitioned = true;
+                String name = rs.getString(1);
+                Matcher matcher = MONTH_PARTITION.matcher(name);
+                if (matcher.matches()) {
+                    partitions.put(YearMonth.of(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2))), name);
+                }
+            }
+        }
+        if (!partitioned) {
+            System.err.println("Activity log archiver: activity_log is not partitioned, nothing to do.");
+            return null;
+        }
+        return partitions;
+    }
+
+    /**
+     * Splits {@code p_future} into monthly partitions up to {@link #monthsAhead} months from now.
+     * The first split covers every month that has rows, starting from the oldest one.
+     */
+    private void ensurePartitions(TreeMap<YearMonth, String> partitions) throws SQLException {
+        YearMonth last = YearMonth.now().plusMonths(monthsAhead);
+        YearMonth first;
+        if (!partitions.isEmpty()) {
+            first = partitions.lastKey().plusMonths(1);
+        } else {
+            first = oldestMonthWithRows();
+        }
+        if (first.isAfter(last)) {
+            return;
+        }
+
+        List<String> definitions = new ArrayList<>();
+        for (YearMonth month = first; !month.isAfter(last); month = month.plusMonths(1)) {
+            String name = String.format("p%04d%02d", month.getYear(), month.getMonthValue());
+            definitions.add("PARTITION " + name + " VALUES LESS THAN (TO_DAYS('" + month.plusMonths(1).atDay(1) + "'))");
+            partitions.put(month, name);
+        }
+        definitions.add("PARTITION " + FUTURE_PARTITION + " VALUES LESS THAN MAXVALUE");
+        try (Connection conn = pool.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("ALTER TABLE activity_log REORGANIZE PARTITION " + FUTURE_PARTITION + " INTO (" + String.join(", ", definitions) + ")");
+        }
+        System.out.println("Activity log archiver: added partitions for " + first + " to " + last);
+    }
+
+    private YearMonth oldestMonthWithRows() throws SQLException {
+        try (Connection conn = pool.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT MIN(activity_timestamp) FROM activity_log")) {
+            if (rs.next() && rs.getTimestamp(1) != null) {
+                return YearMonth.from(rs.getTimestamp(1).toLocalDateTime());
+            }
+        }
+        return YearMonth.now();
+    }
+
+    /**
+     * Exports one month to the archive, records it and drops its partition.
+     * If rows were added to the month while it was exported, the export is discarded and retried on the next run.
+     */
+    private void archiveMonth(YearMonth month, String partition) throws SQLException, IOException, InterruptedException {
+        String selectSql = "SELECT id, subscriber_code, activity_type, details, activity_timestamp FROM activity_log PARTITION (" + partition + ") " +
+                           "WHERE id > ? ORDER BY id LIMIT ?";
+        int rows;
+        try (ActivityArchive.MonthWriter writer = archive.openMonth(month)) {
+            long lastId = 0;
+            long started = System.nanoTime();
+            while (running) {
+                waitForIdlePool();
+                int batchRows = 0;
+                try (Connection conn = pool.getConnection();
+                     PreparedStatement stmt = conn.prepareStatement(selectSql)) {
+                    stmt.setLong(1, lastId);
+                    stmt.setInt(2, batchSize);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            lastId = rs.getLong("id");
+                            writer.write(new ActivityArchive.Record(lastId, rs.getString("subscriber_code"),
+                                rs.getString("activity_type"), rs.getString("details"), rs.getTimestamp("activity_timestamp")));
+                            batchRows++;
+                        }
+                    }
+                }
+                if (batchRows < batchSize) {
+                    break;
+                }
+                throttle(writer.getRows(), started);
+            }
+            if (!running) {
+                return;
+            }
+
+            rows = writer.getRows();
+            if (rows != countRows(partition)) {
+                System.err.println("Activity log archiver: " + month + " changed during export, will retry on the next run.");
+                return;
+            }
+            writer.commit();
+        }
+
+        try (Connection conn = pool.getConnection()) {
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "INSERT INTO activity_log_archive (archive_month, row_count) VALUES (?, ?) " +
+                    "ON DUPLICATE KEY UPDATE row_count = VALUES(row_count), archived_at = CURRENT_TIMESTAMP")) {
+                stmt.setDate(1, java.sql.Date.valueOf(month.atDay(1)));
+                stmt.setInt(2, rows);
+                stmt.executeUpdate();
+            }
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("ALTER TABLE activity_log DROP PARTITION " + partition);
+            }
+        }
+        archivedMonths.incrementAndGet();
+        archivedRows.addAndGet(rows);
+        System.out.println("Activity log archiver: archived " + rows + " rows of " + month + " and dropped partition " + partition);
+    }
+
+    private int countRows(String partition) throws SQLException {
+        try (Connection conn = pool.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM activity_log PARTITION (" + partition + ")")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    /**
+     * Sleeps long enough to keep the export at or below {@link #rowsPerSecond}.
+     */
+    private void throttle(int rowsSoFar, long startedNanos) throws InterruptedException {
+        long targetMillis = rowsSoFar * 1000L / rowsPerSecond;
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedNanos);
+        if (targetMillis > elapsedMillis) {
+            Thread.sleep(targetMillis - elapsedMillis);
+        }
+    }
+
+    /**
+     * Waits while all but one pooled connection are checked out, so request threads always get the free ones.
+     */
+    private void waitForIdlePool() throws InterruptedException {
+        while (running && pool.getActiveCount() >= Math.max(1, pool.getMaxSize() - 1)) {
+            Thread.sleep(BUSY_POOL_PAUSE_MS);
+            pausedMillis.addAndGet(BUSY_POOL_PAUSE_MS);
+        }
+    }
+}
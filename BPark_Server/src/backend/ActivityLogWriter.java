@@ -0,0 +1,445 @@
+package backend;
+
+import java.sql.Connection;
+import java.sql.DataTruncation;
+import java.sql.PreparedStatement;
+import java.sql.SQLDataException;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A write-behind appender for the 'activity_log' table.
+ * Entries are queued by request threads and written by a single background thread as
+ * multi-row INSERT statements, either when a batch fills up or when the oldest queued
+ * entry has waited for the flush interval. The timestamp of each entry is taken when it
+ * is queued, so delayed writes do not shift the recorded activity time. Each batch also
+ * updates the daily counts in {@link ReportRollups} within the same transaction.
+ * <p>
+ * When an {@link ActivityJournal} is configured, every entry is journaled before it is
+ * queued and only released from the journal once its batch has been committed, so entries
+ * that were accepted but not yet written survive a crash and are replayed on the next start.
+ * <p>
+ * A batch that fails with a transient error (a lost connection, a lock conflict, an exhausted
+ * pool) is kept and retried by the background thread with an exponential backoff, ahead of any
+ * newer entries; while it is being retried the queue fills up and the overflow policy applies.
+ * A batch the database rejects because of its data is split in halves until the rejected rows
+ * are isolated; those rows are quarantined (logged in full and released from the journal, so
+ * they do not stall the writer again on the next start) and the rest is written. Other
+ * errors, and batches that still wait for a retry when more rows are waiting than the queue
+ * holds or at shutdown, are given up; given-up rows stay in the journal, if there is one,
+ * and are replayed on the next start.
+ */
+public class ActivityLogWriter {
+
+    /**
+     * What {@link #append} does when the queue is full.
+     */
+    public enum OverflowPolicy {
+        /** Wait until the background thread frees space in the queue. */
+        BLOCK,
+        /** Discard the new entry and count it as dropped. */
+        DROP,
+        /** Insert the entry synchronously on the caller's thread. */
+        WRITE_THROUGH
+    }
+
+    /**
+     * A single pending activity_log row.
+     */
+    public static final class Entry {
+        final String subscriberCode;
+        final String activityType;
+        final String details;
+        final Timestamp timestamp;
+        long sequence;
+
+        Entry(String subscriberCode, String activityType, String details, Timestamp timestamp) {
+            this.subscriberCode = subscriberCode;
+            this.activityType = activityType;
+            this.details = details;
+            this.timestamp = timestamp;
+        }
+    }
+
+    /** MySQL error codes, reported with a generic SQLState, for a value the column does not accept. */
+    private static final List<Integer> REJECTED_VALUE_ERRORS = Arrays.asList(
+        1048, // ER_BAD_NULL_ERROR
+        1366, // ER_TRUNCATED_WRONG_VALUE_FOR_FIELD
+        1406  // ER_DATA_TOO_LONG
+    );
+    /** MySQL error codes for lock conflicts, which succeed when retried. */
+    private static final List<Integer> LOCK_ERRORS = Arrays.asList(
+        1205, // ER_LOCK_WAIT_TIMEOUT
+        1213  // ER_LOCK_DEADLOCK
+    );
+
+    private static final String INSERT_PREFIX = "INSERT INTO activity_log (subscriber_code, activity_type, details, activity_timestamp) VALUES ";
+
+    private final ConnectionPool pool;
+    private final ActivityJournal journal;
+    private final BlockingQueue<Entry> queue;
+    private final int batchSize;
+    private final long flushIntervalMillis;
+    private final OverflowPolicy overflowPolicy;
+    private final long retryBackoffMillis;
+    private final long retryBackoffMaxMillis;
+    private final ConcurrentLinkedDeque<List<Entry>> failedBatches = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger failedBatchRows = new AtomicInteger();
+    private final Thread flusher;
+    private volatile boolean running = true;
+
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong writtenThrough = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong quarantined = new AtomicLong();
+    private final AtomicLong failedRows = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+
+    /**
+     * Creates the writer and starts its background flush thread.
+     *
+     * @param pool                The connection pool used for the batched inserts.
+     * @param journal             The local journal for pending entries, or null to run without one.
+     * @param capacity            The maximum number of queued entries.
+     * @param batchSize           The maximum number of rows per INSERT statement.
+     * @param flushIntervalMillis The longest time an entry waits in the queue before being flushed.
+     * @param overflowPolicy      What to do when the queue is full.
+     * @param retryBackoffMillis  The wait before the first retry of a failed batch; doubled after each failed retry.
+     * @param retryBackoffMaxMillis The longest wait between two retries of a failed batch.
+     */
+    public ActivityLogWriter(ConnectionPool pool, ActivityJournal journal, int capacity, int batchSize, long flushIntervalMillis, OverflowPolicy overflowPolicy,
+                             long retryBackoffMillis, long retryBackoffMaxMillis) {
+        this.pool = pool;
+        this.journal = journal;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.overflowPolicy = overflowPolicy;
+        this.retryBackoffMillis = Math.max(1, retryBackoffMillis);
+        this.retryBackoffMaxMillis = Math.max(this.retryBackoffMillis, retryBackoffMaxMillis);
+        this.flusher = new Thread(this::runFlushLoop, "activity-log-writer");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Queues an activity for writing. Returns without waiting for the database unless the
+     * queue is full and the overflow policy is {@link OverflowPolicy#BLOCK} or
+     * {@link OverflowPolicy#WRITE_THROUGH}.
+     *
+     * @param subscriberCode The code of the subscriber performing the activity.
+     * @param activityType   The type of activity.
+     * @param details        A detailed description of the activity.
+     */
+    public void append(String subscriberCode, String activityType, String details) {
+        Entry entry = new Entry(subscriberCode, activityType, details, new Timestamp(System.currentTimeMillis()));
+        if (journal != null) {
+            journal.append(entry);
+        }
+        if (running && queue.offer(entry)) {
+            enqueued.incrementAndGet();
+            return;
+        }
+        switch (running ? overflowPolicy : OverflowPolicy.WRITE_THROUGH) {
+            case BLOCK:
+                try {
+                    queue.put(entry);
+                    enqueued.incrementAndGet();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    dropped.incrementAndGet();
+                }
+                break;
+            case DROP:
+                dropped.incrementAndGet();
+                if (journal != null) {
+                    journal.markFlushed(Collections.singletonList(entry));
+                }
+                break;
+            case WRITE_THROUGH:
+                writtenThrough.incrementAndGet();
+                List<Entry> unwritten = write(Collections.singletonList(entry));
+                if (!unwritten.isEmpty()) {
+                    retryLater(unwritten);
+                }
+                break;
+        }
+    }
+
+    /**
+     * Stops accepting queued entries, flushes the failed batches and everything still in the
+     * queue and stops the background thread. Batches that still fail are given up.
+     * Entries appended after this call are written synchronously.
+     *
+     * @param timeoutMillis How long to wait for the final flush.
+     */
+    public void shutdown(long timeoutMillis) {
+        running = false;
+        flusher.interrupt();
+        try {
+            flusher.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<Entry> batch;
+        while ((batch = failedBatches.pollFirst()) != null) {
+            failedBatchRows.addAndGet(-batch.size());
+            List<Entry> unwritten = write(batch);
+            if (!unwritten.isEmpty()) {
+                giveUp(unwritten);
+            }
+        }
+        List<Entry> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        flushInBatches(remaining);
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    /**
+     * Writes entries recovered from the journal synchronously, in batches.
+     * Rows that fail transiently are retried by the background thread.
+     *
+     * @param entries The recovered entries.
+     */
+    public void replay(List<Entry> entries) {
+        flushInBatches(entries);
+    }
+
+    /**
+     * @return A one-line summary of the writer state for the server metrics output.
+     */
+    public String describe() {
+        return String.format("queued=%d enqueued=%d written=%d batches=%d writeThrough=%d dropped=%d awaitingRetry=%d retries=%d quarantined=%d failed=%d policy=%s",
+            queue.size(), enqueued.get(), written.get(), batches.get(), writtenThrough.get(), dropped.get(), failedBatchRows.get(), retries.get(),
+            quarantined.get(), failedRows.get(), overflowPolicy);
+    }
+
+    private void runFlushLoop() {
+        List<Entry> batch = new ArrayList<>(batchSize);
+        long backoff = retryBackoffMillis;
+        while (running) {
+            List<Entry> failed = failedBatches.peekFirst();
+            if (failed != null) {
+                // Retry the oldest failed batch before taking anything newer from the queue.
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException e) {
+                    // Shutdown requested; shutdown() flushes the failed batches.
+                    continue;
+                }
+                if (!failedBatches.remove(failed)) {
+                    continue; // Given up meanwhile to make room.
+                }
+                failedBatchRows.addAndGet(-failed.size());
+                retries.incrementAndGet();
+                List<Entry> unwritten = write(failed);
+                if (unwritten.isEmpty()) {
+                    backoff = retryBackoffMillis;
+                } else {
+                    failedBatches.addFirst(new ArrayList<>(unwritten));
+                    failedBatchRows.addAndGet(unwritten.size());
+                    backoff = Math.min(backoff * 2, retryBackoffMaxMillis);
+                }
+                continue;
+            }
+            try {
+                Entry first = queue.poll(flushIntervalMillis, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0) {
+                        break;
+                    }
+                    Entry next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                // Shutdown requested; the batch collected so far is still written below.
+            }
+            if (!batch.isEmpty()) {
+                List<Entry> unwritten = write(batch);
+                if (!unwritten.isEmpty()) {
+                    retryLater(unwritten);
+                }
+                batch.clear();
+            }
+        }
+    }
+
+    private void flushInBatches(List<Entry> entries) {
+        for (int from = 0; from < entries.size(); from += batchSize) {
+            List<Entry> unwritten = write(entries.subList(from, Math.min(entries.size(), from + batchSize)));
+            if (unwritten.isEmpty()) {
+                continue;
+            }
+            if (running) {
+                retryLater(unwritten);
+            } else {
+                giveUp(unwritten);
+            }
+        }
+    }
+
+    /**
+     * Keeps a failed batch for the background thread to retry. If more rows than the queue
+     * holds are already waiting for a retry, the oldest batches are given up to make room.
+     */
+    private void retryLater(List<Entry> entries) {
+        entries = new ArrayList<>(entries);
+        failedBatches.addLast(entries);
+        failedBatchRows.addAndGet(entries.size());
+        List<Entry> oldest;
+        while (failedBatchRows.get() > queueCapacity() && (oldest = failedBatches.pollFirst()) != null) {
+            failedBatchRows.addAndGet(-oldest.size());
+            giveUp(oldest);
+        }
+    }
+
+    private int queueCapacity() {
+        return queue.size() + queue.remainingCapacity();
+    }
+
+    /**
+     * Stops trying to write a batch. With a journal the rows stay there, and the journal
+     * checkpoint cannot move past them until the next start replays them.
+     */
+    private void giveUp(List<Entry> entries) {
+        failedRows.addAndGet(entries.size());
+        if (journal != null) {
+            System.err.println("Gave up writing " + entries.size() + " activity log entries; they are kept in the journal for replay on the next start.");
+        } else {
+            System.err.println("Gave up writing " + entries.size() + " activity log entries; they are lost.");
+        }
+    }
+
+    /**
+     * Writes a batch. If the database rejects the data of some rows, the batch is split in
+     * halves until those rows are isolated and quarantined, and the other rows are written.
+     * A batch that fails with any other non-transient error is given up.
+     *
+     * @return The rows that failed with a transient error and should be retried; empty if
+     *         every row was written, quarantined or given up.
+     */
+    private List<Entry> write(List<Entry> entries) {
+        SQLException failure;
+        try {
+            writeBatch(entries);
+            return Collections.emptyList();
+        } catch (SQLException e) {
+            failure = e;
+        }
+        System.err.println("Failed to write " + entries.size() + " activity log entries: " + failure.getMessage());
+        if (isRejectedData(failure)) {
+            if (entries.size() == 1) {
+                quarantine(entries.get(0), failure);
+                return Collections.emptyList();
+            }
+            int middle = entries.size() / 2;
+            List<Entry> unwritten = new ArrayList<>(write(entries.subList(0, middle)));
+            unwritten.addAll(write(entries.subList(middle, entries.size())));
+            return unwritten;
+        }
+        if (isTransient(failure)) {
+            return entries;
+        }
+        giveUp(entries);
+        return Collections.emptyList();
+    }
+
+    /**
+     * @return True if the database rejected the values of a row, so retrying the row cannot succeed.
+     */
+    private static boolean isRejectedData(SQLException e) {
+        String state = e.getSQLState();
+        return e instanceof SQLDataException || e instanceof SQLIntegrityConstraintViolationException || e instanceof DataTruncation
+            || (state != null && (state.startsWith("22") || state.startsWith("23")))
+            || REJECTED_VALUE_ERRORS.contains(e.getErrorCode());
+    }
+
+    /**
+     * @return True if a retry may succeed: a lost or refused connection, a lock conflict, an
+     *         exhausted or closed pool, or an error that says nothing about its cause.
+     */
+    private static boolean isTransient(SQLException e) {
+        String state = e.getSQLState();
+        return e instanceof SQLTransientException || e instanceof SQLRecoverableException
+            || state == null || state.startsWith("08") || state.startsWith("40")
+            || LOCK_ERRORS.contains(e.getErrorCode());
+    }
+
+    /**
+     * Gives up a row the database rejects. The row is logged in full and released from the
+     * journal, since replaying it would only fail again.
+     */
+    private void quarantine(Entry entry, SQLException cause) {
+        quarantined.incrementAndGet();
+        failedRows.incrementAndGet();
+        System.err.println("Quarantined activity log entry rejected by the database (" + cause.getMessage() + "): subscriber="
+            + entry.subscriberCode + " type=" + entry.activityType + " time=" + entry.timestamp + " details=" + entry.details);
+        if (journal != null) {
+            journal.markFlushed(Collections.singletonList(entry));
+        }
+    }
+
+    /**
+     * Writes one batch in a single transaction.
+     *
+     * @throws SQLException If the batch failed and was rolled back.
+     */
+    private void writeBatch(List<Entry> entries) throws SQLException {
+        StringBuilder sql = new StringBuilder(INSERT_PREFIX);
+        for (int i = 0; i < entries.size(); i++) {
+            sql.append(i == 0 ? "(?, ?, ?, ?)" : ", (?, ?, ?, ?)");
+        }
+        try (Connection conn = pool.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+                int index = 1;
+                for (Entry entry : entries) {
+                    stmt.setString(index++, entry.subscriberCode);
+                    stmt.setString(index++, entry.activityType);
+                    stmt.setString(index++, entry.details);
+                    stmt.setTimestamp(index++, entry.timestamp);
+                }
+                stmt.executeUpdate();
+                ReportRollups.addActivityCounts(conn, entries);
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+            written.addAndGet(entries.size());
+            batches.incrementAndGet();
+            if (journal != null) {
+                journal.markFlushed(entries);
+            }
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package backend;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import common.ActivityPage;
+import common.DailyLateData;
+import common.MonthlyReportData;
+import common.OrderInfo;
+import common.SlotOccupancyData;
+import common.SubscriberInfo;
+import common.SubscriberParkingData;
+import common.UsageSliceData;
+
+/**
+ * The storage operations the server needs for subscribers, active parking sessions,
+ * scheduled reservations, the activity log and the manager reports.
+ * {@link DBController} implements it on MySQL; {@link InMemoryRepository} keeps everything
+ * in memory so the request path can be run and benchmarked without a database.
+ */
+public interface BParkRepository {
+
+    // --- Subscribers ---
+
+    /**
+     * Inserts a new subscriber and sends a welcome email.
+     *
+     * @param code  The subscriber's unique subscription code.
+     * @param name  The subscriber's name.
+     * @param phone The subscriber's phone number.
+     * @param email The subscriber's email address.
+     * @param id    The subscriber's national/personal ID.
+     */
+    void insertSubscriber(String code, String name, String phone, String email, String id);
+
+    /**
+     * Inserts a chunk of subscribers for a bulk import. Unlike {@link #insertSubscriber},
+     * no welcome emails are sent; the importer sends them itself.
+     *
+     * @param subscribers The subscribers to insert.
+     * @return For each subscriber, in order, null if it was inserted, otherwise the reason it was not.
+     */
+    List<String> insertSubscribers(List<SubscriberInfo> subscribers);
+
+    /**
+     * @param subscriptionCode The code of the subscriber to find.
+     * @return The subscriber, or null if not found.
+     */
+    SubscriberInfo findSubscriberByCode(String subscriptionCode);
+
+    /**
+     * @return All subscribers.
+     */
+    ArrayList<SubscriberInfo> getAllSubscribers();
+
+    /**
+     * Updates the contact details of a subscriber.
+     *
+     * @return True if the subscriber exists and was updated.
+     */
+    boolean updateSubscriberInfo(String subscriptionCode, String userName, String phoneNumber, String email);
+
+    /**
+     * Freezes or unfreezes a subscriber account.
+     *
+     * @return True if the subscriber exists and was updated.
+     */
+    boolean setFreezeStatus(String subscriberId, boolean freeze);
+
+    /**
+     * Increments a subscriber's late count and freezes the account once it reaches
+     * {@link DBController#LATE_FREEZE_THRESHOLD}.
+     *
+     * @param subscriberId The subscription code of the subscriber who was late.
+     * @return The new late count and frozen state, or null if the subscriber does not exist or the update failed.
+     */
+    PenaltyResult incrementLateCountAndFreeze(String subscriberId);
+
+    /**
+     * Applies one late penalty per entry to a set of subscribers at once, for the no-show sweep.
+     *
+     * @param subscriberIds The subscription codes of the subscribers who were late; duplicates receive one penalty each.
+     * @return The outcome for each existing subscriber, keyed by subscription code.
+     */
+    Map<String, PenaltyResult> applyLatePenalties(List<String> subscriberIds);
+
+    // --- Active parking sessions ---
+
+    /**
+     * @return The currently occupied slot numbers.
+     */
+    ArrayList<Integer> getOccupiedSlots();
+
+    /**
+     * Atomically claims a free slot; the claim is kept or released by {@link #registerParkingSlot}.
+     *
+     * @return The claimed slot number, or -1 if the lot is full.
+     */
+    int claimFreeSlot();
+
+    /**
+     * Registers a new active parking session for a slot obtained from {@link #claimFreeSlot()}.
+     *
+     * @return True if the session was registered.
+     */
+    boolean registerParkingSlot(int slot, String confirmationCode, String subscriberId);
+
+    /**
+     * @return The subscriber's active session, or null if there is none.
+     */
+    OrderInfo getOrderBySubscriberId(String subscriberId);
+
+    /**
+     * @return The active session with this confirmation code, or null if there is none.
+     */
+    OrderInfo getOrderByConfirmationCode(String confirmationCode);
+
+    /**
+     * @return All active sessions.
+     */
+    ArrayList<OrderInfo> getAllOrders();
+
+    /**
+     * Releases an active session.
+     *
+     * @return True if a session with this code existed.
+     */
+    boolean deleteOrderByConfirmationCode(String confirmationCode);
+
+    /**
+     * Extends a subscriber's active session.
+     *
+     * @return True if the session was extended.
+     */
+    boolean extendParkingTime(String subscriberId, int hours);
+
+    /**
+     * @return The maximum number of hours the subscriber's session can still be extended by.
+     */
+    int getMaximumAllowedExtension(String subscriberId);
+
+    // --- Scheduled reservations ---
+
+    /**
+     * @return A slot free for a reservation starting at {@code startTime}, or -1 if none is free.
+     */
+    int findAvailableFutureSlot(Timestamp startTime);
+
+    /**
+     * Stores a new reservation.
+     *
+     * @return True if the reservation was stored.
+     */
+    boolean scheduleParking(String subscriberId, Timestamp scheduledTime, int slotNumber, String confirmationCode);
+
+    /**
+     * Turns a reservation into an active session.
+     *
+     * @return The assigned slot, or a negative error code as documented on {@link DBController#parkWithReservation}.
+     */
+    int parkWithReservation(String confirmationCode, String subscriberId);
+
+    /**
+     * Cancels reservations that were not claimed in time.
+     *
+     * @return The cancelled reservations.
+     */
+    List<OrderInfo> checkAndCancelLateReservations();
+
+    /**
+     * Checks the reservation capacity for a new booking, without querying the store.
+     *
+     * @param scheduledTime The start of the requested reservation.
+     * @return True if the reservation fits within the capacity of every time bucket it covers.
+     */
+    boolean hasReservationCapacity(Timestamp scheduledTime);
+
+    /**
+     * @return All scheduled reservations, earliest first.
+     */
+    ArrayList<OrderInfo> getAllScheduledOrders();
+
+    /**
+     * @return The slots reserved on a date in 'YYYY-MM-DD' format.
+     */
+    ArrayList<Integer> getOccupiedSlotsForDate(String date);
+
+    /**
+     * Claims the reservations starting soon whose reminder has not been sent, marking them as
+     * being sent so that no other sweep picks them up. A claim that is not resolved with
+     * {@link #recordReminderResults} in time expires and the reservation can be claimed again.
+     *
+     * @return The claimed reservations, with the subscriber's name and email for the reminder.
+     */
+    ArrayList<OrderInfo> claimOrdersForReminder();
+
+    /**
+     * Resolves reminder claims: sent reminders are marked as sent, failed ones are released
+     * so that the next sweep retries them.
+     *
+     * @param sentCodes   The confirmation codes whose reminder was sent.
+     * @param failedCodes The confirmation codes whose reminder could not be sent.
+     */
+    void recordReminderResults(List<String> sentCodes, List<String> failedCodes);
+
+    // --- Activity log ---
+
+    /**
+     * Records an activity of a subscriber.
+     */
+    void logActivity(String subscriberCode, String activityType, String details);
+
+    /**
+     * @return One page of a subscriber's activity history, newest first.
+     */
+    ActivityPage getHistoryPageForSubscriber(String subscriberCode, String cursor, int pageSize);
+
+    /**
+     * @return One page of the system-wide activity log, newest first.
+     */
+    ActivityPage getActivitiesPage(String cursor, int pageSize);
+
+    // --- Reports ---
+
+    ArrayList<MonthlyReportData> getMonthlyParkingReport(int year, int month);
+
+    ArrayList<DailyLateData> getDailyLatenessReport(int year, int month);
+
+    ArrayList<SubscriberParkingData> getTotalParkingHoursPerSubscriber(int year, int month);
+
+    ArrayList<SlotOccupancyData> getTotalParkingHoursPerSlot(int year, int month);
+
+    /**
+     * Groups the sessions that started in a month by hour of day, weekday, day of month or slot.
+     *
+     * @param slotFrom The lowest slot to include.
+     * @param slotTo   The highest slot to include.
+     * @return One row per bucket, or an empty list if the month could not be loaded.
+     */
+    ArrayList<UsageSliceData> getUsageSlice(int year, int month, ParkingAnalytics.SliceDimension dimension, int slotFrom, int slotTo);
+
+    // --- Maintenance ---
+
+    /**
+     * Compares in-memory slot state with the backing store and repairs drift.
+     *
+     * @return The number of repaired slots, or -1 if the store could not be read.
+     */
+    int reconcileSlotOccupancy();
+
+    /**
+     * Compares the in-memory reservation capacity counters with the backing store and repairs drift.
+     *
+     * @return The number of repaired time buckets, or -1 if the store could not be read.
+     */
+    int reconcileReservationCapacity();
+
+    /**
+     * Compares the in-memory indexes of active sessions and scheduled reservations with the
+     * backing store and repairs drift.
+     *
+     * @return The number of repaired entries, or -1 if the store could not be read.
+     */
+    int reconcileSessionIndexes();
+
+    /**
+     * Flushes pending writes and releases resources.
+     */
+    void shutdown();
+}
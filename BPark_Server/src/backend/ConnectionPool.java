@@ -0,0 +1,279 @@
+package backend;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded pool of JDBC connections to the BPark database.
+ * Callers check out a connection per database call and close it when done; closing a
+ * pooled connection returns it to the pool instead of closing the underlying socket.
+ * Any transaction left open by the caller is rolled back and auto-commit is restored
+ * before the connection is handed to the next caller.
+ * Statements created on a pooled connection are wrapped by {@link DbInstrumentation}
+ * unless {@code bpark.db.instrumentation} is false.
+ */
+public class ConnectionPool {
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int maxSize;
+    private final long checkoutTimeoutMillis;
+    private final long validationIntervalMillis;
+
+    private final Semaphore permits;
+    private final LinkedBlockingDeque<IdleConnection> idleConnections = new LinkedBlockingDeque<>();
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    private final AtomicInteger activeCount = new AtomicInteger();
+    private final AtomicInteger openCount = new AtomicInteger();
+    private final AtomicLong checkoutCount = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    /**
+     * Creates a pool. Physical connections are opened lazily, up to {@code maxSize}.
+     *
+     * @param url                      The JDBC URL of the database.
+     * @param user                     The database user.
+     * @param password                 The database password.
+     * @param maxSize                  The maximum number of connections checked out at once.
+     * @param checkoutTimeoutMillis    How long a caller waits for a free connection before failing.
+     * @param validationIntervalMillis Idle connections older than this are validated before reuse.
+     */
+    public ConnectionPool(String url, String user, String password, int maxSize, long checkoutTimeoutMillis, long validationIntervalMillis) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Pool size must be positive: " + maxSize);
+        }
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.maxSize = maxSize;
+        this.checkoutTimeoutMillis = checkoutTimeoutMillis;
+        this.validationIntervalMillis = validationIntervalMillis;
+        this.permits = new Semaphore(maxSize, true);
+    }
+
+    /**
+     * Checks out a connection, waiting up to the configured timeout for one to become free.
+     * The returned connection must be closed (preferably with try-with-resources) to return it.
+     *
+     * @return A pooled connection in auto-commit mode.
+     * @throws SQLException If the pool is closed, the wait times out, or a new connection cannot be opened.
+     */
+    public Connection getConnection() throws SQLException {
+        if (closed.get()) {
+            throw new SQLException("Connection pool is closed");
+        }
+        long waitStart = System.nanoTime();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(checkoutTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+        long waited = System.nanoTime() - waitStart;
+        totalWaitNanos.addAndGet(waited);
+        maxWaitNanos.accumulateAndGet(waited, Math::max);
+        if (!acquired) {
+            timeoutCount.incrementAndGet();
+            throw new SQLTimeoutException("Timed out after " + checkoutTimeoutMillis + " ms waiting for a database connection");
+        }
+
+        try {
+            Connection physical = takeIdleOrOpen();
+            checkoutCount.incrementAndGet();
+            activeCount.incrementAndGet();
+            return wrap(physical);
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Closes all idle connections and rejects further checkouts.
+     * Connections that are still checked out are closed when they are returned.
+     */
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        IdleConnection idle;
+        while ((idle = idleConnections.pollFirst()) != null) {
+            closeQuietly(idle.connection);
+        }
+    }
+
+    public int getMaxSize() { return maxSize; }
+    public int getActiveCount() { return activeCount.get(); }
+    public int getIdleCount() { return idleConnections.size(); }
+    public int getOpenCount() { return openCount.get(); }
+    public long getCheckoutCount() { return checkoutCount.get(); }
+    public long getTimeoutCount() { return timeoutCount.get(); }
+    public long getMaxWaitMillis() { return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get()); }
+
+    /**
+     * @return The average time callers waited for a connection, in milliseconds.
+     */
+    public double getAverageWaitMillis() {
+        long attempts = checkoutCount.get() + timeoutCount.get();
+        return attempts == 0 ? 0.0 : totalWaitNanos.get() / 1_000_000.0 / attempts;
+    }
+
+    /**
+     * @return A one-line summary of the pool state for the server metrics output.
+     */
+    public String describe() {
+        return String.format("active=%d idle=%d open=%d max=%d checkouts=%d timeouts=%d avgWaitMs=%.2f maxWaitMs=%d",
+            getActiveCount(), getIdleCount(), getOpenCount(), maxSize,
+            getCheckoutCount(), getTimeoutCount(), getAverageWaitMillis(), getMaxWaitMillis());
+    }
+
+    private Connection takeIdleOrOpen() throws SQLException {
+        IdleConnection idle;
+        while ((idle = idleConnections.pollFirst()) != null) {
+            boolean stale = System.currentTimeMillis() - idle.returnedAt > validationIntervalMillis;
+            if (!stale || isUsable(idle.connection)) {
+                return idle.connection;
+            }
+            discard(idle.connection);
+        }
+        Connection connection = DriverManager.getConnection(url, user, password);
+        openCount.incrementAndGet();
+        return connection;
+    }
+
+    private boolean isUsable(Connection connection) {
+        try {
+            return connection.isValid(2);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void release(Connection physical) {
+        activeCount.decrementAndGet();
+        try {
+            boolean reusable = !closed.get() && !physical.isClosed();
+            if (reusable && !physical.getAutoCommit()) {
+                physical.rollback();
+                physical.setAutoCommit(true);
+            }
+            if (reusable) {
+                idleConnections.offerFirst(new IdleConnection(physical, System.currentTimeMillis()));
+            } else {
+                discard(physical);
+            }
+        } catch (SQLException e) {
+            System.err.println("Discarding pooled connection after reset failure: " + e.getMessage());
+            discard(physical);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void discard(Connection connection) {
+        openCount.decrementAndGet();
+        closeQuietly(connection);
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException ignored) {
+        }
+    }
+
+    private Connection wrap(Connection physical) {
+        return (Connection) Proxy.newProxyInstance(
+            Connection.class.getClassLoader(),
+            new Class<?>[] { Connection.class },
+            new PooledConnectionHandler(physical)
+        );
+    }
+
+    /**
+     * Intercepts {@code close()} on a checked-out connection and returns it to the pool.
+     */
+    private class PooledConnectionHandler implements InvocationHandler {
+        private final Connection physical;
+        private final AtomicBoolean returned = new AtomicBoolean(false);
+
+        PooledConnectionHandler(Connection physical) {
+            this.physical = physical;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (returned.compareAndSet(false, true)) {
+                        release(physical);
+                    }
+                    return null;
+                case "isClosed":
+                    return returned.get() || physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + physical + "]";
+                default:
+                    break;
+            }
+            if (returned.get()) {
+                throw new SQLException("Connection has already been returned to the pool");
+            }
+            Object result;
+            try {
+                result = method.invoke(physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            if (DbInstrumentation.ENABLED && result instanceof Statement) {
+                return instrument(method.getName(), (Statement) result, args);
+            }
+            return result;
+        }
+
+        private Statement instrument(String methodName, Statement statement, Object[] args) {
+            String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : null;
+            switch (methodName) {
+                case "prepareCall":
+                    return DbInstrumentation.wrapStatement(statement, CallableStatement.class, sql);
+                case "prepareStatement":
+                    return DbInstrumentation.wrapStatement(statement, PreparedStatement.class, sql);
+                default:
+                    return DbInstrumentation.wrapStatement(statement, Statement.class, null);
+            }
+        }
+    }
+
+    private static class IdleConnection {
+        final Connection connection;
+        final long returnedAt;
+
+        IdleConnection(Connection connection, long returnedAt) {
+            this.connection = connection;
+            this.returnedAt = returnedAt;
+        }
+    }
+}
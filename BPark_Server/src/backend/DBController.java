@@ -2,39 +2,174 @@ package backend;
 
 import common.DailyLateData;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.sql.*;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.temporal.ChronoUnit;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 import common.ActivityInfo;
+import common.ActivityPage;
 import common.MonthlyReportData;
 import common.OrderInfo;
 import common.SlotOccupancyData;
 import common.SubscriberInfo;
 import common.SubscriberParkingData;
+import common.UsageSliceData;
 
 /**
  * Manages all interactions with the MySQL database for the BPark system.
  * This class includes methods for managing subscribers, parking orders (active and future),
- * activity logging, and generating reports.
+ * activity logging, and generating reports. It is the MySQL implementation of {@link BParkRepository}.
  */
-public class DBController {
-    private static Connection currentConnection;
+public class DBController implements BParkRepository {
+    private static final String DB_URL = System.getProperty("bpark.db.url",
+        "jdbc:mysql://localhost:3306/bpark?serverTimezone=Asia/Jerusalem&cachePrepStmts=true&rewriteBatchedStatements=true");
+    private static final String DB_USER = System.getProperty("bpark.db.user", "root");
+    private static final String DB_PASSWORD = System.getProperty("bpark.db.password", "Aa123456");
+    private static final int POOL_SIZE = Integer.getInteger("bpark.db.pool.size", Math.max(4, Runtime.getRuntime().availableProcessors() * 2));
+    private static final long POOL_CHECKOUT_TIMEOUT_MS = Long.getLong("bpark.db.pool.checkoutTimeoutMs", 5000L);
+    private static final long POOL_VALIDATION_INTERVAL_MS = Long.getLong("bpark.db.pool.validationIntervalMs", 30000L);
+
+    private static final int ACTIVITY_LOG_QUEUE_CAPACITY = Integer.getInteger("bpark.activityLog.queueCapacity", 10000);
+    private static final int ACTIVITY_LOG_BATCH_SIZE = Integer.getInteger("bpark.activityLog.batchSize", 200);
+    private static final long ACTIVITY_LOG_FLUSH_INTERVAL_MS = Long.getLong("bpark.activityLog.flushIntervalMs", 500L);
+    private static final ActivityLogWriter.OverflowPolicy ACTIVITY_LOG_OVERFLOW_POLICY =
+        ActivityLogWriter.OverflowPolicy.valueOf(System.getProperty("bpark.activityLog.overflowPolicy", "WRITE_THROUGH"));
+    private static final long ACTIVITY_LOG_RETRY_BACKOFF_MS = Long.getLong("bpark.activityLog.retryBackoffMs", 500L);
+    private static final long ACTIVITY_LOG_RETRY_BACKOFF_MAX_MS = Long.getLong("bpark.activityLog.retryBackoffMaxMs", 30000L);
+    private static final String ACTIVITY_JOURNAL_DIR = System.getProperty("bpark.activityLog.journalDir", "journal/activity-log");
+    private static final int ACTIVITY_JOURNAL_SEGMENT_BYTES = Integer.getInteger("bpark.activityLog.journalSegmentBytes", 4 * 1024 * 1024);
+    private static final String ACTIVITY_ARCHIVE_DIR = System.getProperty("bpark.activityLog.archiveDir", "archive/activity-log");
+    private static final int ACTIVITY_RETENTION_MONTHS = Integer.getInteger("bpark.activityLog.retentionMonths", 12);
+    private static final int ACTIVITY_PARTITIONS_AHEAD = Integer.getInteger("bpark.activityLog.partitionsAhead", 3);
+    private static final long ACTIVITY_ARCHIVE_INTERVAL_MINUTES = Long.getLong("bpark.activityLog.archive.intervalMinutes", 60L);
+    private static final int ACTIVITY_ARCHIVE_BATCH_SIZE = Integer.getInteger("bpark.activityLog.archive.batchSize", 1000);
+    private static final int ACTIVITY_ARCHIVE_ROWS_PER_SECOND = Integer.getInteger("bpark.activityLog.archive.rowsPerSecond", 5000);
+    private static final long ANALYTICS_REFRESH_MS = TimeUnit.SECONDS.toMillis(Long.getLong("bpark.analytics.refreshSeconds", 30L));
+    private static final int ANALYTICS_MAX_MONTHS = Integer.getInteger("bpark.analytics.maxMonths", 24);
+    private static final int TX_MAX_ATTEMPTS = Integer.getInteger("bpark.db.tx.maxAttempts", 3);
+    private static final long TX_RETRY_BACKOFF_MS = Long.getLong("bpark.db.tx.retryBackoffMs", 50L);
+    private static final long REMINDER_CLAIM_TIMEOUT_MINUTES = Long.getLong("bpark.reminders.claimTimeoutMinutes", 5L);
+    private static final int NAME_LOOKUP_CHUNK = 1000;
+    private static final int MAIL_QUEUE_CAPACITY = Integer.getInteger("bpark.mail.queueCapacity", 1000);
+    private static final int MAIL_THREADS = Integer.getInteger("bpark.mail.threads", 2);
+    private static final long MAIL_SHUTDOWN_TIMEOUT_MS = Long.getLong("bpark.mail.shutdownTimeoutMs", 30000L);
+    private static final double MAIL_PER_SECOND = Double.parseDouble(System.getProperty("bpark.mail.perSecond", "5"));
+
+    /** The number of parking slots in the lot, numbered 1..TOTAL_SLOTS. */
+    public static final int TOTAL_SLOTS = Integer.getInteger("bpark.slots.total", 100);
+
+    /** The length of a scheduled reservation, in hours. */
+    public static final int RESERVATION_DURATION_HOURS = 4;
+    /** The most reservations that may overlap any one capacity bucket: a share of all slots. */
+    public static final int RESERVATION_CAPACITY_PER_BUCKET =
+        Math.max(1, TOTAL_SLOTS * Integer.getInteger("bpark.reservations.capacityPercent", 40) / 100);
+    /** The length of a reservation capacity bucket, in minutes. */
+    public static final long RESERVATION_CAPACITY_BUCKET_MINUTES = Long.getLong("bpark.reservations.capacityBucketMinutes", 60L);
+    /** The longest an active parking session can last, including extensions, in hours. */
+    public static final int MAX_SESSION_HOURS = 8;
+    /** The late count at which a subscriber's account is frozen. */
+    public static final int LATE_FREEZE_THRESHOLD = Integer.getInteger("bpark.penalty.lateThreshold", 2);
+
+    /** The number of activity log entries per page when the client does not ask for a size. */
+    public static final int DEFAULT_ACTIVITY_PAGE_SIZE = 100;
+    /** The largest activity log page the server will return, whatever the client asks for. */
+    public static final int MAX_ACTIVITY_PAGE_SIZE = 500;
+    private static final DateTimeFormatter ARCHIVE_TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    /** Marks an activity cursor that continues in {@link ActivityArchive} rather than the live table. */
+    private static final String ARCHIVE_CURSOR_PREFIX = "A";
+
+    // The month-range statements behind the manager reports; their query plans are checked by ReportQueryPlans.
+    // Each takes the first day of the month and the first day of the next month.
+    static final String MONTHLY_REPORT_SQL =
+        "SELECT activity_date as park_date, activity_count as daily_count FROM activity_daily_counts " +
+        "WHERE activity_type = 'PARK_CAR' AND activity_date >= ? AND activity_date < ? ORDER BY activity_date ASC";
+    static final String LATENESS_REPORT_SQL =
+        "SELECT activity_date as late_date, activity_count as daily_count FROM activity_daily_counts " +
+        "WHERE activity_type = 'LATE_CAR_RETRIEVAL' AND activity_date >= ? AND activity_date < ? ORDER BY activity_date ASC";
+    static final String SUBSCRIBER_HOURS_REPORT_SQL =
+        "SELECT h.subscriber_code AS subscriber_id, s.userName, SUM(h.total_hours) AS total_parked_hours " +
+        "FROM subscriber_daily_hours h JOIN subscriber s ON h.subscriber_code = s.subscriptionCode " +
+        "WHERE h.usage_date >= ? AND h.usage_date < ? " +
+        "GROUP BY h.subscriber_code, s.userName ORDER BY total_parked_hours DESC";
+    static final String SLOT_HOURS_REPORT_SQL =
+        "SELECT parking_space, SUM(total_hours) AS total_occupied_hours " +
+        "FROM slot_daily_hours " +
+        "WHERE usage_date >= ? AND usage_date < ? " +
+        "GROUP BY parking_space ORDER BY total_occupied_hours DESC";
+    // The analytics refresh also takes the id after which rows are appended.
+    static final String ANALYTICS_SESSIONS_SQL =
+        "SELECT id, parking_space, subscriber_code, start_time, end_time FROM parking_history " +
+        "WHERE start_time >= ? AND start_time < ? AND id > ?";
+    static final String ANALYTICS_ACTIVITY_SQL =
+        "SELECT id, activity_type, activity_timestamp FROM activity_log " +
+        "WHERE activity_timestamp >= ? AND activity_timestamp < ? AND id > ?";
+
+    private static ConnectionPool pool;
+    private static UnitOfWork transactions;
+    private static ActivityLogWriter activityLogWriter;
+    private static final ActivityArchive activityArchive = new ActivityArchive(Paths.get(ACTIVITY_ARCHIVE_DIR));
+    private static ActivityLogArchiver activityLogArchiver;
+    private static final SlotOccupancy slotOccupancy = new SlotOccupancy(TOTAL_SLOTS);
+    private static final ReservationIndex reservationIndex = new ReservationIndex(TOTAL_SLOTS);
+    private static final ReservationCapacity reservationCapacity =
+        new ReservationCapacity(RESERVATION_CAPACITY_PER_BUCKET, TimeUnit.MINUTES.toMillis(RESERVATION_CAPACITY_BUCKET_MINUTES));
+    private static final OrderIndex orderIndex = new OrderIndex();
+    // False until the index was loaded from the database; retried by reconcileSessionIndexes.
+    private static volatile boolean orderIndexLoaded;
+    private static volatile boolean reservationIndexLoaded;
+    private static ParkingAnalytics analytics;
+    private static final SubscriberCache subscriberCache = new SubscriberCache(Integer.getInteger("bpark.subscriberCache.maxEntries", 1000));
+
+    private static final MailQueue mailQueue = newMailQueue();
 
-    private static final ExecutorService taskExecutor = Executors.newCachedThreadPool();
+    /**
+     * Creates a mail queue with the {@code bpark.mail.*} settings, for tools that send their
+     * own emails and wait for them with {@link MailQueue#drain}.
+     */
+    static MailQueue newMailQueue() {
+        return new MailQueue(MAIL_QUEUE_CAPACITY, MAIL_THREADS, MAIL_PER_SECOND);
+    }
 
     /**
-     * Establishes a connection to the 'bpark' database.
-     * It loads the MySQL JDBC driver and attempts to connect to the local database instance.
+     * Loads the MySQL JDBC driver and creates the connection pool for the 'bpark' database.
+     * Pool size and timeouts can be overridden with the {@code bpark.db.pool.*} system properties.
+     * One connection is opened eagerly so that connection problems are reported at startup,
+     * then pending schema migrations are applied and the activity log writer is started.
      */
     public DBController() {
+        this(true);
+    }
+
+    /**
+     * Opens only the connection pool, for command-line tools that may run next to the live
+     * server. No migrations are applied, the activity journal is neither opened nor replayed,
+     * and no background threads or in-memory indexes are started, so only methods that go
+     * straight to the database (such as {@link #backfillReportRollups}, {@link #checkReportQueryPlans}
+     * and {@link #insertSubscribers}) may be called on it.
+     *
+     * @return A controller that only owns the connection pool; close it with {@link #shutdown}.
+     */
+    public static DBController openForTool() {
+        return new DBController(false);
+    }
+
+    private DBController(boolean startServer) {
         try {
             Class.forName("com.mysql.cj.jdbc.Driver").newInstance();
             System.out.println("Driver definition succeed");
@@ -42,18 +177,330 @@ public class DBController {
             System.out.println("Driver definition failed");
         }
 
+        pool = new ConnectionPool(DB_URL, DB_USER, DB_PASSWORD, POOL_SIZE, POOL_CHECKOUT_TIMEOUT_MS, POOL_VALIDATION_INTERVAL_MS);
+        ServerMetrics.register("db.pool", pool::describe);
+        transactions = new UnitOfWork(pool, TX_MAX_ATTEMPTS, TX_RETRY_BACKOFF_MS);
+        ServerMetrics.register("db.transactions", transactions::describe);
+        ServerMetrics.register("cache.subscribers", subscriberCache::describe);
+        ServerMetrics.register("mail.queue", mailQueue::describe);
         try {
-            currentConnection = DriverManager.getConnection(
-                "jdbc:mysql://localhost:3306/bpark?serverTimezone=Asia/Jerusalem",
-                "root",
-                "Aa123456"
-            );
-            System.out.println("SQL connection succeed");
+            pool.getConnection().close();
+            System.out.println("SQL connection succeed (pool size " + POOL_SIZE + ")");
         } catch (SQLException ex) {
             System.out.println("SQLException: " + ex.getMessage());
             System.out.println("SQLState: " + ex.getSQLState());
             System.out.println("VendorError: " + ex.getErrorCode());
         }
+        if (!startServer) {
+            return;
+        }
+
+        try {
+            int version = new SchemaMigrator(pool).migrate();
+            System.out.println("Database schema is at version " + version);
+        } catch (SQLException ex) {
+            System.err.println("Schema migration failed: " + ex.getMessage());
+        }
+
+        startActivityLog();
+        startActivityLogArchiver();
+        analytics = new ParkingAnalytics(TOTAL_SLOTS, this::refreshAnalyticsMonth, ANALYTICS_REFRESH_MS, ANALYTICS_MAX_MONTHS, DBController::readSubscriberNames);
+        ServerMetrics.register("analytics", analytics::describe);
+        loadSlotOccupancy();
+        loadReservationIndex();
+        loadOrderIndex();
+    }
+
+    /**
+     * Loads the active parking sessions into the in-memory order index.
+     * If 'activeparking' cannot be read, the load is retried by {@link #reconcileSessionIndexes}.
+     */
+    private void loadOrderIndex() {
+        ServerMetrics.register("orders.index", orderIndex::describe);
+        try {
+            orderIndex.load(readActiveOrders());
+            orderIndexLoaded = true;
+        } catch (SQLException e) {
+            System.err.println("Failed to load active sessions: " + e.getMessage());
+        }
+    }
+
+    private static List<OrderInfo> readActiveOrders() throws SQLException {
+        List<OrderInfo> orders = new ArrayList<>();
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(SELECT_ACTIVE_ORDER);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                orders.add(readActiveOrder(rs));
+            }
+        }
+        return orders;
+    }
+
+    private static final String SELECT_ACTIVE_ORDER = "SELECT * FROM `activeparking`";
+
+    private static OrderInfo readActiveOrder(ResultSet rs) throws SQLException {
+        return new OrderInfo(
+            rs.getString("parking_space"),
+            rs.getString("order_number"),
+            rs.getString("order_date"),
+            rs.getString("confirmation_code"),
+            rs.getString("subscriber_id"),
+            epochMillis(rs.getTimestamp("time_of_placing_an_order")),
+            epochMillis(rs.getTimestamp("endParkTime"))
+        );
+    }
+
+    /**
+     * @return The timestamp in epoch milliseconds, or 0 for SQL NULL.
+     */
+    private static long epochMillis(Timestamp timestamp) {
+        return timestamp != null ? timestamp.getTime() : 0L;
+    }
+
+    /**
+     * Re-reads an active session after it was written and stores it in the order index,
+     * so that values filled in by the database (order number, times) are indexed as stored.
+     * A failure here does not undo the write, so it is only logged; the index is then repaired
+     * from the table by the next passes of {@link #reconcileSessionIndexes}.
+     *
+     * @param conn             The connection that performed the write, after it committed.
+     * @param confirmationCode The confirmation code of the session.
+     */
+    private static void refreshActiveOrder(Connection conn, String confirmationCode) {
+        try (PreparedStatement stmt = conn.prepareStatement(SELECT_ACTIVE_ORDER + " WHERE confirmation_code = ?")) {
+            stmt.setString(1, confirmationCode);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    orderIndex.put(readActiveOrder(rs));
+                } else {
+                    orderIndex.remove(confirmationCode);
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Failed to refresh order index for code " + confirmationCode + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Loads the scheduled reservations from 'parkingorders' into the in-memory reservation index.
+     * If the table cannot be read, the load is retried by {@link #reconcileSessionIndexes}.
+     */
+    private void loadReservationIndex() {
+        ServerMetrics.register("slots.reservations", reservationIndex::describe);
+        ServerMetrics.register("slots.reservationCapacity", reservationCapacity::describe);
+        try {
+            List<ReservationIndex.Reservation> reservations = readReservations();
+            reservationIndex.load(reservations);
+            reservationCapacity.load(reservations);
+            reservationIndexLoaded = true;
+            System.out.println("Loaded " + reservations.size() + " scheduled reservations");
+        } catch (SQLException e) {
+            System.err.println("Failed to load scheduled reservations: " + e.getMessage());
+        }
+    }
+
+    private static List<ReservationIndex.Reservation> readReservations() throws SQLException {
+        List<ReservationIndex.Reservation> reservations = new ArrayList<>();
+        String query = "SELECT confirmationCode, subscriptionCode, futureParkingSpot, scheduled_time FROM parkingorders";
+        try (Connection conn = pool.getConnection();
+             PreparedStatement ps = conn.prepareStatement(query);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                String slotStr = rs.getString("futureParkingSpot");
+                Timestamp scheduledTime = rs.getTimestamp("scheduled_time");
+                slotStr = slotStr == null ? "" : slotStr.replaceAll("[^0-9]", "");
+                if (slotStr.isEmpty() || scheduledTime == null) {
+                    continue;
+                }
+                reservations.add(newReservation(rs.getString("confirmationCode"), rs.getString("subscriptionCode"), Integer.parseInt(slotStr), scheduledTime));
+            }
+        }
+        return reservations;
+    }
+
+    /**
+     * Removes a reservation that was claimed or cancelled from the reservation index and
+     * stops counting it against the reservation capacity.
+     */
+    private static void forgetReservation(String confirmationCode) {
+        ReservationIndex.Reservation reservation = reservationIndex.find(confirmationCode);
+        if (reservation != null && reservationIndex.remove(confirmationCode)) {
+            reservationCapacity.release(reservation.start, reservation.end);
+        }
+    }
+
+    private static ReservationIndex.Reservation newReservation(String confirmationCode, String subscriberCode, int slot, Timestamp scheduledTime) {
+        long start = scheduledTime.getTime();
+        return new ReservationIndex.Reservation(confirmationCode, subscriberCode, slot, start, start + TimeUnit.HOURS.toMillis(RESERVATION_DURATION_HOURS));
+    }
+
+    /**
+     * Loads the occupied slots from 'activeparking' into the in-memory occupancy bitmap.
+     */
+    private void loadSlotOccupancy() {
+        try {
+            slotOccupancy.load(readOccupiedSlots());
+            ServerMetrics.register("slots.occupancy", slotOccupancy::describe);
+            System.out.println("Loaded slot occupancy: " + slotOccupancy.occupiedCount() + "/" + TOTAL_SLOTS + " occupied");
+        } catch (SQLException e) {
+            System.err.println("Failed to load slot occupancy: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Compares the in-memory slot occupancy with 'activeparking' and repairs slots that
+     * stayed out of sync since the previous call. Called periodically by the server.
+     *
+     * @return The number of repaired slots, or -1 if the database could not be read.
+     */
+    public int reconcileSlotOccupancy() {
+        try {
+            return slotOccupancy.reconcile(readOccupiedSlots());
+        } catch (SQLException e) {
+            System.err.println("Failed to reconcile slot occupancy: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * Compares the reservation capacity counters with 'parkingorders' and repairs buckets
+     * that drifted in two consecutive passes.
+     *
+     * @return The number of repaired buckets, or -1 if the table could not be read.
+     */
+    public int reconcileReservationCapacity() {
+        try {
+            return reservationCapacity.reconcile(readReservations(), System.currentTimeMillis());
+        } catch (SQLException e) {
+            System.err.println("Failed to reconcile reservation capacity: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * Compares the in-memory indexes of active sessions and scheduled reservations with
+     * 'activeparking' and 'parkingorders' and repairs entries that differed in two consecutive
+     * passes, such as a session whose index refresh failed after its insert committed.
+     * An index that could not be loaded at startup is loaded here instead.
+     *
+     * @return The number of repaired entries, or -1 if a table could not be read.
+     */
+    public int reconcileSessionIndexes() {
+        try {
+            int fixed = 0;
+            if (!orderIndexLoaded) {
+                loadOrderIndex();
+            } else {
+                fixed += orderIndex.reconcile(readActiveOrders());
+            }
+            if (!reservationIndexLoaded) {
+                loadReservationIndex();
+            } else {
+                fixed += reservationIndex.reconcile(readReservations());
+            }
+            return fixed;
+        } catch (SQLException e) {
+            System.err.println("Failed to reconcile the session indexes: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * Reads the names of many subscribers with one {@code IN (...)} query per
+     * {@value #NAME_LOOKUP_CHUNK} codes, for the analytics reports.
+     *
+     * @param codes The subscription codes.
+     * @return The names of the codes that exist, keyed by code.
+     * @throws SQLException If the subscriber table cannot be read.
+     */
+    private static Map<String, String> readSubscriberNames(Collection<String> codes) throws SQLException {
+        Map<String, String> names = new HashMap<>();
+        List<String> all = new ArrayList<>(codes);
+        try (Connection conn = pool.getConnection()) {
+            for (int from = 0; from < all.size(); from += NAME_LOOKUP_CHUNK) {
+                List<String> chunk = all.subList(from, Math.min(all.size(), from + NAME_LOOKUP_CHUNK));
+                String placeholders = String.join(",", Collections.nCopies(chunk.size(), "?"));
+                try (PreparedStatement ps = conn.prepareStatement(
+                        "SELECT subscriptionCode, userName FROM subscriber WHERE subscriptionCode IN (" + placeholders + ")")) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        ps.setString(i + 1, chunk.get(i));
+                    }
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            names.put(rs.getString(1), rs.getString(2));
+                        }
+                    }
+                }
+            }
+        }
+        return names;
+    }
+
+    private static List<Integer> readOccupiedSlots() throws SQLException {
+        List<Integer> occupiedSlots = new ArrayList<>();
+        String query = "SELECT parking_space FROM activeparking WHERE parking_space IS NOT NULL";
+        try (Connection conn = pool.getConnection();
+             PreparedStatement ps = conn.prepareStatement(query);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                occupiedSlots.add(rs.getInt("parking_space"));
+            }
+        }
+        return occupiedSlots;
+    }
+
+    /**
+     * Opens the local activity journal, starts the asynchronous activity log writer and
+     * replays any entries a previous run accepted but did not get to write to the database.
+     * If the journal cannot be opened, logging continues without crash protection.
+     */
+    private void startActivityLog() {
+        ActivityJournal journal = new ActivityJournal(Paths.get(ACTIVITY_JOURNAL_DIR), ACTIVITY_JOURNAL_SEGMENT_BYTES);
+        List<ActivityLogWriter.Entry> recovered = Collections.emptyList();
+        try {
+            recovered = journal.open();
+            ServerMetrics.register("db.activityJournal", journal::describe);
+        } catch (IOException e) {
+            System.err.println("Could not open activity journal at " + ACTIVITY_JOURNAL_DIR + ": " + e.getMessage());
+            journal = null;
+        }
+        activityLogWriter = new ActivityLogWriter(pool, journal, ACTIVITY_LOG_QUEUE_CAPACITY, ACTIVITY_LOG_BATCH_SIZE,
+            ACTIVITY_LOG_FLUSH_INTERVAL_MS, ACTIVITY_LOG_OVERFLOW_POLICY, ACTIVITY_LOG_RETRY_BACKOFF_MS, ACTIVITY_LOG_RETRY_BACKOFF_MAX_MS);
+        ServerMetrics.register("db.activityLog", activityLogWriter::describe);
+        if (!recovered.isEmpty()) {
+            System.out.println("Replaying " + recovered.size() + " activity log entries from the local journal.");
+            activityLogWriter.replay(recovered);
+        }
+    }
+
+    /**
+     * Starts the background maintenance of the monthly activity_log partitions, which moves
+     * months past the retention period into {@link ActivityArchive} files.
+     */
+    private void startActivityLogArchiver() {
+        activityLogArchiver = new ActivityLogArchiver(pool, activityArchive, ACTIVITY_RETENTION_MONTHS, ACTIVITY_PARTITIONS_AHEAD,
+            ACTIVITY_ARCHIVE_BATCH_SIZE, ACTIVITY_ARCHIVE_ROWS_PER_SECOND);
+        activityLogArchiver.start(ACTIVITY_ARCHIVE_INTERVAL_MINUTES);
+        ServerMetrics.register("db.activityArchiver", activityLogArchiver::describe);
+        ServerMetrics.register("db.activityArchive", activityArchive::describe);
+    }
+
+    /**
+     * Flushes pending activity log entries and closes the connection pool.
+     * Called when the server shuts down.
+     */
+    public void shutdown() {
+        if (activityLogArchiver != null) {
+            activityLogArchiver.shutdown();
+        }
+        if (activityLogWriter != null) {
+            activityLogWriter.shutdown(10000);
+        }
+        mailQueue.shutdown(MAIL_SHUTDOWN_TIMEOUT_MS);
+        if (pool != null) {
+            pool.close();
+        }
     }
 
     /**
@@ -63,9 +510,10 @@ public class DBController {
      * @param subscriberId The ID of the subscriber.
      * @return An {@link OrderInfo} object if an active order exists, otherwise null.
      */
-    public synchronized OrderInfo getActiveOrderBySubscriberCode(String subscriberId) {
+    public OrderInfo getActiveOrderBySubscriberCode(String subscriberId) {
         String sql = "SELECT * FROM activeparking WHERE subscriberId = ?";
-        try (PreparedStatement pstmt = currentConnection.prepareStatement(sql)) {
+        try (Connection conn = pool.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, subscriberId);
             ResultSet rs = pstmt.executeQuery();
             if (rs.next()) {
@@ -75,8 +523,8 @@ public class DBController {
                     rs.getString("parkingSpace"),
                     rs.getString("subscriberId"),
                     rs.getString("confirmationCode"),
-                    rs.getString("timeOfPlacingOrder"),
-                    rs.getString("endParkTime")
+                    epochMillis(rs.getTimestamp("timeOfPlacingOrder")),
+                    epochMillis(rs.getTimestamp("endParkTime"))
                 );
             }
         } catch (SQLException e) {
@@ -89,46 +537,41 @@ public class DBController {
      * Calculates the maximum number of hours a subscriber can extend their current parking session.
      * The calculation is based on two constraints: the total parking time cannot exceed 8 hours,
      * and the extension cannot conflict with a future reservation for the same slot.
+     * Both are answered from memory: the session from the order index and the next reservation
+     * on its slot from the reservation index, which are kept current on every write.
      *
      * @param subscriberId The ID of the subscriber requesting the extension.
      * @return The maximum allowed extension in hours. Returns 0 if no extension is possible.
      */
     public int getMaximumAllowedExtension(String subscriberId) {
-        OrderInfo order = getOrderBySubscriberId(subscriberId);
-        if (order == null || order.getParkingSpace() == null || order.getTimeOfPlacingOrder() == null || order.getEndParkTime() == null) {
+        return maximumExtensionHours(orderIndex.findBySubscriberId(subscriberId), reservationIndex);
+    }
+
+    /**
+     * @param order        An active parking session, or null.
+     * @param reservations The scheduled reservations.
+     * @return The whole hours the session can still be extended by without passing
+     *         {@link #MAX_SESSION_HOURS} in total or reaching the next reservation on its slot.
+     */
+    static int maximumExtensionHours(OrderInfo order, ReservationIndex reservations) {
+        if (order == null || order.getParkingSpace() == null || order.getTimeOfPlacingOrder() == 0 || order.getEndParkTime() == 0) {
             return 0;
         }
-
+        int parkingSpace;
         try {
-            int parkingSpace = Integer.parseInt(order.getParkingSpace());
-            Timestamp timeOfPlacingOrder = Timestamp.valueOf(order.getTimeOfPlacingOrder());
-            Timestamp currentEndParkTime = Timestamp.valueOf(order.getEndParkTime());
-
-            LocalDateTime initialTime = timeOfPlacingOrder.toLocalDateTime();
-            LocalDateTime maxPossibleEndTime = initialTime.plusHours(8);
-            long budgetInHours = ChronoUnit.HOURS.between(currentEndParkTime.toLocalDateTime(), maxPossibleEndTime);
-            if (budgetInHours < 0) budgetInHours = 0;
-
-            long hoursUntilReservation = Long.MAX_VALUE;
-            String sql = "SELECT MIN(scheduled_time) as next_booking FROM parkingorders WHERE futureParkingSpot = ? AND scheduled_time > ?";
-            try (PreparedStatement stmt = currentConnection.prepareStatement(sql)) {
-                stmt.setInt(1, parkingSpace);
-                stmt.setTimestamp(2, currentEndParkTime);
-                ResultSet rs = stmt.executeQuery();
-                if (rs.next() && rs.getTimestamp("next_booking") != null) {
-                    Timestamp nextBookingTime = rs.getTimestamp("next_booking");
-                    hoursUntilReservation = ChronoUnit.HOURS.between(currentEndParkTime.toLocalDateTime(), nextBookingTime.toLocalDateTime());
-                }
-            } catch (SQLException e) {
-                System.err.println("Error checking future reservations for extension: " + e.getMessage());
-                return 0;
-            }
-
-            return (int) Math.min(budgetInHours, hoursUntilReservation);
-        } catch(Exception e) {
-            System.err.println("Error calculating max extension: " + e.getMessage());
+            parkingSpace = Integer.parseInt(order.getParkingSpace());
+        } catch (NumberFormatException e) {
+            System.err.println("Error calculating max extension: invalid parking space " + order.getParkingSpace());
             return 0;
         }
+        long end = order.getEndParkTime();
+        long maxEnd = order.getTimeOfPlacingOrder() + TimeUnit.HOURS.toMillis(MAX_SESSION_HOURS);
+        long budgetInHours = Math.max(0, TimeUnit.MILLISECONDS.toHours(maxEnd - end));
+        long nextReservation = reservations.nextStartAfter(parkingSpace, end);
+        if (nextReservation >= 0) {
+            budgetInHours = Math.min(budgetInHours, TimeUnit.MILLISECONDS.toHours(nextReservation - end));
+        }
+        return (int) budgetInHours;
     }
 
     /**
@@ -137,55 +580,50 @@ public class DBController {
      *
      * @return A list of {@link OrderInfo} objects representing the cancelled reservations.
      */
-    public synchronized List<OrderInfo> checkAndCancelLateReservations() {
-        List<OrderInfo> cancelledOrders = new ArrayList<>();
-        String selectSql = "SELECT po.subscriberId, po.confirmationCode, po.scheduledTime, s.userName, s.email " +
+    public List<OrderInfo> checkAndCancelLateReservations() {
+        String selectSql = "SELECT po.subscriptionCode, po.confirmationCode, po.scheduled_time, s.userName, s.email " +
                            "FROM parkingorders po " +
-                           "JOIN subscriber s ON po.subscriberId = s.id " +
-                           "WHERE po.scheduledTime < NOW() - INTERVAL 15 MINUTE";
+                           "JOIN subscriber s ON po.subscriptionCode = s.subscriptionCode " +
+                           "WHERE po.scheduled_time < NOW() - INTERVAL 15 MINUTE FOR UPDATE";
+        String deleteSql = "DELETE FROM parkingorders WHERE confirmationCode = ?";
 
-        try (Statement stmt = currentConnection.createStatement(); ResultSet rs = stmt.executeQuery(selectSql)) {
-            while (rs.next()) {
-                OrderInfo order = new OrderInfo(
-                    rs.getString("subscriberId"),
-                    rs.getString("userName"),
-                    rs.getString("scheduledTime"),
-                    null,
-                    rs.getString("confirmationCode")
-                );
-                order.setUserEmailForEmail(rs.getString("email"));
-                cancelledOrders.add(order);
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return cancelledOrders;
-        }
-        if (!cancelledOrders.isEmpty()) {
-            String deleteSql = "DELETE FROM parkingorders WHERE confirmationCode = ?";
-            try (PreparedStatement deletePstmt = currentConnection.prepareStatement(deleteSql)) {
-            	currentConnection.setAutoCommit(false);
-                for (OrderInfo order : cancelledOrders) {
-                    deletePstmt.setString(1, order.getConfirmationCode());
-                    deletePstmt.addBatch();
-                    logActivity(order.getSubscriberId(), "Reservation Canceled", "Canceled due to no-show for code " + order.getConfirmationCode());
-                    System.out.println("Canceling reservation for " + order.getUserName() + " (Code: " + order.getConfirmationCode() + ")");
+        List<OrderInfo> cancelledOrders;
+        try {
+            cancelledOrders = transactions.execute(conn -> {
+                List<OrderInfo> lateOrders = new ArrayList<>();
+                try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(selectSql)) {
+                    while (rs.next()) {
+                        OrderInfo order = new OrderInfo(
+                            rs.getString("subscriptionCode"),
+                            rs.getString("userName"),
+                            epochMillis(rs.getTimestamp("scheduled_time")),
+                            null,
+                            rs.getString("confirmationCode")
+                        );
+                        order.setUserEmailForEmail(rs.getString("email"));
+                        lateOrders.add(order);
+                    }
                 }
-                deletePstmt.executeBatch();
-                currentConnection.commit();
-            } catch (SQLException e) {
-                try {
-                	currentConnection.rollback();
-                } catch (SQLException ex) {
-                    ex.printStackTrace();
+                if (lateOrders.isEmpty()) {
+                    return lateOrders;
                 }
-                e.printStackTrace();
-            } finally {
-                try {
-                	currentConnection.setAutoCommit(true);
-                } catch (SQLException e) {
-                    e.printStackTrace();
+                try (PreparedStatement deletePstmt = conn.prepareStatement(deleteSql)) {
+                    for (OrderInfo order : lateOrders) {
+                        deletePstmt.setString(1, order.getConfirmationCode());
+                        deletePstmt.addBatch();
+                    }
+                    deletePstmt.executeBatch();
                 }
-            }
+                return lateOrders;
+            });
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+        for (OrderInfo order : cancelledOrders) {
+            System.out.println("Canceling reservation for " + order.getUserName() + " (Code: " + order.getConfirmationCode() + ")");
+            forgetReservation(order.getConfirmationCode());
+            logActivity(order.getSubscriberId(), "Reservation Canceled", "Canceled due to no-show for code " + order.getConfirmationCode());
         }
         return cancelledOrders;
     }
@@ -200,7 +638,8 @@ public class DBController {
     public ArrayList<Integer> getOccupiedSlotsForDate(String date) {
         ArrayList<Integer> occupiedSlots = new ArrayList<>();
         String query = "SELECT futureParkingSpot FROM parkingorders WHERE DATE(scheduled_time) = ?";
-        try (PreparedStatement ps = currentConnection.prepareStatement(query)) {
+        try (Connection conn = pool.getConnection();
+             PreparedStatement ps = conn.prepareStatement(query)) {
             ps.setString(1, date);
             ResultSet rs = ps.executeQuery();
             while (rs.next()) {
@@ -226,10 +665,12 @@ public class DBController {
             return false;
         }
         String sql = "UPDATE `activeparking` SET endParkTime = DATE_ADD(endParkTime, INTERVAL ? HOUR) WHERE subscriber_id = ?";
-        try (PreparedStatement stmt = currentConnection.prepareStatement(sql)) {
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setInt(1, hours);
             stmt.setString(2, subscriberId);
             int affectedRows = stmt.executeUpdate();
+            refreshActiveOrder(conn, order.getConfirmationCode());
             return affectedRows > 0;
         } catch (SQLException e) {
             System.err.println("DB Error extending parking time for subscriber " + subscriberId + ": " + e.getMessage());
@@ -239,61 +680,46 @@ public class DBController {
 
     /**
      * Finds an available parking slot for a future reservation.
-     * It checks for conflicts with both currently active parking sessions and other scheduled orders.
+     * Conflicts with other scheduled orders are checked against the in-memory reservation index.
+     * Active parking sessions can only conflict when the reservation starts within
+     * {@link #MAX_SESSION_HOURS} of now, so the database is only consulted in that case.
      *
      * @param startTime The desired start time for the parking reservation.
      * @return An available slot number, or -1 if no slots are available.
      */
     public int findAvailableFutureSlot(Timestamp startTime) {
-        int DURATION_HOURS = 4;
-        LocalDateTime startDateTime = startTime.toLocalDateTime();
-        LocalDateTime endDateTime = startDateTime.plusHours(DURATION_HOURS);
-
-        List<Integer> allSlots = IntStream.rangeClosed(1, 100).boxed().collect(Collectors.toList());
-        List<Integer> busySlots = new ArrayList<>();
-
-        String activeParkingSql = "SELECT parking_space FROM activeparking WHERE ? < endParkTime AND ? > time_of_placing_an_order";
-        try (PreparedStatement stmt = currentConnection.prepareStatement(activeParkingSql)) {
-            stmt.setTimestamp(1, Timestamp.valueOf(startDateTime));
-            stmt.setTimestamp(2, Timestamp.valueOf(endDateTime));
-            ResultSet rs = stmt.executeQuery();
-            while (rs.next()) {
-                busySlots.add(rs.getInt("parking_space"));
-            }
-        } catch (SQLException e) {
-            System.err.println("Error checking active parking for future slots: " + e.getMessage());
-            return -1;
-        }
-
-        String scheduledOrdersSql = "SELECT futureParkingSpot FROM parkingorders WHERE ? < (scheduled_time + INTERVAL ? HOUR) AND ? > scheduled_time";
-        try (PreparedStatement stmt = currentConnection.prepareStatement(scheduledOrdersSql)) {
-            stmt.setTimestamp(1, startTime);
-            stmt.setInt(2, DURATION_HOURS);
-            stmt.setTimestamp(3, Timestamp.valueOf(endDateTime));
-            ResultSet rs = stmt.executeQuery();
-            while (rs.next()) {
-                String slotStr = rs.getString("futureParkingSpot").replaceAll("[^0-9]", "");
-                if (!slotStr.isEmpty()) {
-                    busySlots.add(Integer.parseInt(slotStr));
+        long start = startTime.getTime();
+        long end = start + TimeUnit.HOURS.toMillis(RESERVATION_DURATION_HOURS);
+        List<Integer> freeSlots = reservationIndex.freeSlots(start, end);
+
+        if (!freeSlots.isEmpty() && start < System.currentTimeMillis() + TimeUnit.HOURS.toMillis(MAX_SESSION_HOURS)) {
+            String activeParkingSql = "SELECT parking_space FROM activeparking WHERE ? < endParkTime AND ? > time_of_placing_an_order";
+            try (Connection conn = pool.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(activeParkingSql)) {
+                stmt.setTimestamp(1, startTime);
+                stmt.setTimestamp(2, new Timestamp(end));
+                ResultSet rs = stmt.executeQuery();
+                while (rs.next()) {
+                    freeSlots.remove(Integer.valueOf(rs.getInt("parking_space")));
                 }
+            } catch (SQLException e) {
+                System.err.println("Error checking active parking for future slots: " + e.getMessage());
+                return -1;
             }
-        } catch (SQLException e) {
-            System.err.println("Error checking scheduled orders for future slots: " + e.getMessage());
-            return -1;
         }
 
-        allSlots.removeAll(busySlots);
-
-        if (allSlots.isEmpty()) {
+        if (freeSlots.isEmpty()) {
             return -1;
         }
-
-        Collections.shuffle(allSlots);
-        return allSlots.get(0);
+        return freeSlots.get(ThreadLocalRandom.current().nextInt(freeSlots.size()));
     }
 
     /**
      * Inserts a new future parking order into the database.
+     * The reservation is first counted against the reservation capacity, which fails if
+     * concurrent bookings filled one of its time buckets, and then booked in the reservation
+     * index, which fails if a concurrent booking took an overlapping interval on the same slot
+     * since {@link #findAvailableFutureSlot}.
      *
      * @param subscriberId     The ID of the subscriber making the reservation.
      * @param scheduledTime    The scheduled time for the parking.
@@ -302,8 +728,19 @@ public class DBController {
      * @return True if the insertion was successful, false otherwise.
      */
     public boolean scheduleParking(String subscriberId, Timestamp scheduledTime, int slotNumber, String confirmationCode) {
+        ReservationIndex.Reservation reservation = newReservation(confirmationCode, subscriberId, slotNumber, scheduledTime);
+        if (!reservationCapacity.tryReserve(reservation.start, reservation.end)) {
+            System.err.println("Failed to schedule parking: reservation capacity was reached concurrently.");
+            return false;
+        }
+        if (!reservationIndex.tryAdd(reservation)) {
+            reservationCapacity.release(reservation.start, reservation.end);
+            System.err.println("Failed to schedule parking: slot " + slotNumber + " was booked concurrently.");
+            return false;
+        }
         String sql = "INSERT INTO `parkingorders` (subscriptionCode, scheduled_time, futureParkingSpot, confirmationCode, reminder_sent) VALUES (?, ?, ?, ?, 0)";
-        try (PreparedStatement stmt = currentConnection.prepareStatement(sql)) {
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setString(1, subscriberId);
             stmt.setTimestamp(2, scheduledTime);
             stmt.setInt(3, slotNumber);
@@ -311,6 +748,7 @@ public class DBController {
             stmt.executeUpdate();
             return true;
         } catch (SQLException e) {
+            forgetReservation(confirmationCode);
             if (e.getErrorCode() == 1062) {
                  System.err.println("Failed to schedule parking: Duplicate confirmation code generated. Please try again.");
             } else {
@@ -321,72 +759,98 @@ public class DBController {
     }
 
     /**
-     * Counts the total number of scheduled (future) parking orders.
+     * Checks whether a reservation starting at the given time fits within the reservation
+     * capacity, from the in-memory per-bucket counters.
      *
-     * @return The number of scheduled orders, or 999 if an error occurs.
+     * @param scheduledTime The start of the requested reservation.
+     * @return True if every time bucket the reservation covers has room for it.
      */
-    public int countScheduledOrders() {
-        String sql = "SELECT COUNT(*) FROM parkingorders";
-        try (PreparedStatement stmt = currentConnection.prepareStatement(sql);
-             ResultSet rs = stmt.executeQuery()) {
-            if (rs.next()) {
-                return rs.getInt(1);
-            }
-        } catch (SQLException e) {
-            System.err.println("Failed to count scheduled orders: " + e.getMessage());
-        }
-        return 999;
+    public boolean hasReservationCapacity(Timestamp scheduledTime) {
+        long start = scheduledTime.getTime();
+        return reservationCapacity.hasCapacity(start, start + TimeUnit.HOURS.toMillis(RESERVATION_DURATION_HOURS));
     }
 
     /**
-     * Retrieves a list of scheduled orders that are due for a reminder email.
-     * An order needs a reminder if it is scheduled within the next 16 minutes and a reminder has not been sent yet.
+     * Claims the reservations starting in the next 16 minutes whose reminder has not been sent.
+     * One UPDATE marks them as being sent ({@code reminder_sent = 2}) under a fresh claim token,
+     * then the claimed rows are read back by that token, so two sweeps can never claim the same
+     * reservation. Claims older than {@code bpark.reminders.claimTimeoutMinutes} are taken over,
+     * in case the server stopped while sending.
      *
-     * @return An ArrayList of {@link OrderInfo} objects for orders that need a reminder.
+     * @return The claimed reservations, with the subscriber's name and email.
      */
-    public ArrayList<OrderInfo> getOrdersForReminder() {
-        ArrayList<OrderInfo> orders = new ArrayList<>();
-        String sql = "SELECT po.subscriptionCode, po.scheduled_time, po.confirmationCode, s.userName, s.email " +
-                     "FROM `parkingorders` po " +
-                     "JOIN `subscriber` s ON po.subscriptionCode = s.subscriptionCode " +
-                     "WHERE po.reminder_sent = 0 AND " +
-                     "po.scheduled_time BETWEEN NOW() AND DATE_ADD(NOW(), INTERVAL 16 MINUTE)";
-        try (PreparedStatement stmt = currentConnection.prepareStatement(sql);
-             ResultSet rs = stmt.executeQuery()) {
-            while (rs.next()) {
-                Timestamp scheduledTimestamp = rs.getTimestamp("scheduled_time");
-                String scheduledTimeStr = scheduledTimestamp != null ? scheduledTimestamp.toLocalDateTime().truncatedTo(ChronoUnit.MINUTES).toString().replace("T", " ") : "N/A";
-
-                OrderInfo info = new OrderInfo(
-                    rs.getString("subscriptionCode"),
-                    rs.getString("userName"),
-                    scheduledTimeStr,
-                    null,
-                    rs.getString("confirmationCode")
-                );
-
-                info.setUserNameForEmail(rs.getString("userName"));
-                info.setUserEmailForEmail(rs.getString("email"));
-                orders.add(info);
-            }
+    public ArrayList<OrderInfo> claimOrdersForReminder() {
+        String claimSql = "UPDATE `parkingorders` SET reminder_sent = 2, reminder_claim = ?, reminder_claimed_at = NOW() " +
+                          "WHERE scheduled_time BETWEEN NOW() AND DATE_ADD(NOW(), INTERVAL 16 MINUTE) " +
+                          "AND (reminder_sent = 0 OR (reminder_sent = 2 AND reminder_claimed_at < NOW() - INTERVAL ? MINUTE))";
+        String selectSql = "SELECT po.subscriptionCode, po.scheduled_time, po.confirmationCode, s.userName, s.email " +
+                           "FROM `parkingorders` po " +
+                           "JOIN `subscriber` s ON po.subscriptionCode = s.subscriptionCode " +
+                           "WHERE po.reminder_claim = ?";
+        String token = UUID.randomUUID().toString();
+        try {
+            return transactions.execute(conn -> {
+                ArrayList<OrderInfo> orders = new ArrayList<>();
+                try (PreparedStatement claim = conn.prepareStatement(claimSql)) {
+                    claim.setString(1, token);
+                    claim.setLong(2, REMINDER_CLAIM_TIMEOUT_MINUTES);
+                    if (claim.executeUpdate() == 0) {
+                        return orders;
+                    }
+                }
+                try (PreparedStatement select = conn.prepareStatement(selectSql)) {
+                    select.setString(1, token);
+                    try (ResultSet rs = select.executeQuery()) {
+                        while (rs.next()) {
+                            OrderInfo info = new OrderInfo(
+                                rs.getString("subscriptionCode"),
+                                rs.getString("userName"),
+                                epochMillis(rs.getTimestamp("scheduled_time")),
+                                null,
+                                rs.getString("confirmationCode")
+                            );
+                            info.setUserNameForEmail(rs.getString("userName"));
+                            info.setUserEmailForEmail(rs.getString("email"));
+                            orders.add(info);
+                        }
+                    }
+                }
+                return orders;
+            });
         } catch (SQLException e) {
-            System.err.println("Error fetching orders for reminder: " + e.getMessage());
+            System.err.println("Error claiming orders for reminder: " + e.getMessage());
+            return new ArrayList<>();
         }
-        return orders;
     }
 
     /**
-     * Marks a scheduled order's reminder as having been sent.
+     * Resolves reminder claims with one batched UPDATE: sent reminders get {@code reminder_sent = 1},
+     * failed ones go back to {@code reminder_sent = 0} so the next sweep retries them.
      *
-     * @param confirmationCode The confirmation code of the order to update.
+     * @param sentCodes   The confirmation codes whose reminder was sent.
+     * @param failedCodes The confirmation codes whose reminder could not be sent.
      */
-    public void markReminderAsSent(String confirmationCode) {
-        String sql = "UPDATE `parkingorders` SET reminder_sent = 1 WHERE confirmationCode = ?";
-        try (PreparedStatement stmt = currentConnection.prepareStatement(sql)) {
-            stmt.setString(1, confirmationCode);
-            stmt.executeUpdate();
+    public void recordReminderResults(List<String> sentCodes, List<String> failedCodes) {
+        if (sentCodes.isEmpty() && failedCodes.isEmpty()) {
+            return;
+        }
+        String sql = "UPDATE `parkingorders` SET reminder_sent = ?, reminder_claim = NULL, reminder_claimed_at = NULL " +
+                     "WHERE confirmationCode = ? AND reminder_sent = 2";
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (String code : sentCodes) {
+                stmt.setInt(1, 1);
+                stmt.setString(2, code);
+                stmt.addBatch();
+            }
+            for (String code : failedCodes) {
+                stmt.setInt(1, 0);
+                stmt.setString(2, code);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
         } catch (SQLException e) {
-            System.err.println("Failed to mark reminder as sent for code " + confirmationCode + ": " + e.getMessage());
+            System.err.println("Failed to record reminder results for " + (sentCodes.size() + failedCodes.size()) + " orders: " + e.getMessage());
         }
     }
 
@@ -398,16 +862,14 @@ public class DBController {
     public ArrayList<OrderInfo> getAllScheduledOrders() {
         ArrayList<OrderInfo> orders = new ArrayList<>();
         String sql = "SELECT po.*, s.userName FROM `parkingorders` po JOIN `subscriber` s ON po.subscriptionCode = s.subscriptionCode ORDER BY po.scheduled_time ASC";
-        try (PreparedStatement stmt = currentConnection.prepareStatement(sql);
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql);
              ResultSet rs = stmt.executeQuery()) {
             while (rs.next()) {
-                Timestamp scheduledTimestamp = rs.getTimestamp("scheduled_time");
-                 String scheduledTimeStr = scheduledTimestamp != null ? scheduledTimestamp.toLocalDateTime().truncatedTo(ChronoUnit.MINUTES).toString().replace("T", " ") : "N/A";
-
                 OrderInfo info = new OrderInfo(
                     rs.getString("subscriptionCode"),
                     rs.getString("userName"),
-                    scheduledTimeStr,
+                    epochMillis(rs.getTimestamp("scheduled_time")),
                     rs.getString("futureParkingSpot"),
                     rs.getString("confirmationCode")
                 );
@@ -420,70 +882,136 @@ public class DBController {
     }
 
     /**
-     * Retrieves the activity history for a specific subscriber, ordered by most recent first.
+     * Retrieves one page of the activity history for a specific subscriber, ordered by most recent first.
+     * Pages are read with keyset pagination on (activity_timestamp, id), so each page costs
+     * one index range scan regardless of how deep into the history it is. Once the live table
+     * is exhausted, the page ends with an archive cursor if the subscriber has archived months,
+     * and only a request with that cursor reads {@link ActivityArchive}.
      *
      * @param subscriberCode The code of the subscriber.
-     * @return An ArrayList of {@link ActivityInfo} objects representing the subscriber's history.
+     * @param cursor         The cursor returned with the previous page, or null for the first page.
+     * @param pageSize       The requested number of entries; clamped to {@link #MAX_ACTIVITY_PAGE_SIZE}.
+     * @return An {@link ActivityPage} with the entries and the cursor for the next page.
      */
-    public ArrayList<ActivityInfo> getHistoryForSubscriber(String subscriberCode) {
+    public ActivityPage getHistoryPageForSubscriber(String subscriberCode, String cursor, int pageSize) {
+        if (isArchiveCursor(cursor)) {
+            return readArchivePage(subscriberCode, cursor, clampPageSize(pageSize), true);
+        }
+        String sql = "SELECT id, activity_type, details, activity_timestamp, DATE_FORMAT(activity_timestamp, '%Y-%m-%d %H:%i:%s') as formatted_timestamp " +
+                     "FROM activity_log WHERE subscriber_code = ?" +
+                     (cursor != null ? " AND (activity_timestamp < ? OR (activity_timestamp = ? AND id < ?))" : "") +
+                     " ORDER BY activity_timestamp DESC, id DESC LIMIT ?";
+        int limit = clampPageSize(pageSize);
         ArrayList<ActivityInfo> history = new ArrayList<>();
-        String sql = "SELECT activity_type, details, DATE_FORMAT(activity_timestamp, '%Y-%m-%d %H:%i:%s') as formatted_timestamp FROM activity_log WHERE subscriber_code = ? ORDER BY activity_timestamp DESC";
-        try (PreparedStatement stmt = currentConnection.prepareStatement(sql)) {
+        String nextCursor = null;
+        Timestamp lastTimestamp = null;
+        long lastId = 0;
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setString(1, subscriberCode);
+            int next = bindCursor(stmt, 2, cursor);
+            stmt.setInt(next, limit + 1);
             ResultSet rs = stmt.executeQuery();
             while (rs.next()) {
-                ActivityInfo log = new ActivityInfo(
+                if (history.size() == limit) {
+                    nextCursor = formatCursor(lastTimestamp, lastId);
+                    break;
+                }
+                history.add(new ActivityInfo(
                     rs.getString("activity_type"),
                     rs.getString("details"),
                     rs.getString("formatted_timestamp")
-                );
-                history.add(log);
+                ));
+                lastTimestamp = rs.getTimestamp("activity_timestamp");
+                lastId = rs.getLong("id");
             }
-        } catch (SQLException e) {
+        } catch (SQLException | IllegalArgumentException e) {
             System.err.println("Failed to fetch history for subscriber " + subscriberCode + ": " + e.getMessage());
+            return new ActivityPage(history, null, cursor != null);
         }
-        return history;
+        if (nextCursor == null) {
+            nextCursor = archiveCursor(subscriberCode, cursor, lastTimestamp, lastId);
+            if (nextCursor != null && history.isEmpty()) {
+                // Nothing live to show before the boundary, so this request is already paging into the archive.
+                return readArchivePage(subscriberCode, nextCursor, limit, cursor != null);
+            }
+        }
+        return new ActivityPage(history, nextCursor, cursor != null);
     }
 
     /**
-     * Retrieves all activity logs from the database, ordered by most recent first.
+     * Retrieves one page of all activity logs, ordered by most recent first.
+     * Pages are read with keyset pagination on (activity_timestamp, id). Once the live table is
+     * exhausted, the page ends with an archive cursor if there are archived months, and the
+     * archive is only read when that cursor is sent back.
      *
-     * @return An ArrayList of {@link ActivityInfo} objects for all activities.
+     * @param cursor   The cursor returned with the previous page, or null for the first page.
+     * @param pageSize The requested number of entries; clamped to {@link #MAX_ACTIVITY_PAGE_SIZE}.
+     * @return An {@link ActivityPage} with the entries and the cursor for the next page.
      */
-    public ArrayList<ActivityInfo> getAllActivities() {
-        ArrayList<ActivityInfo> history = new ArrayList<>();
-        String sql = "SELECT al.subscriber_code, s.userName, al.activity_type, al.details, DATE_FORMAT(al.activity_timestamp, '%Y-%m-%d %H:%i:%s') as formatted_timestamp FROM activity_log al LEFT JOIN subscriber s ON al.subscriber_code = s.subscriptionCode ORDER BY al.activity_timestamp DESC";
-        try (PreparedStatement stmt = currentConnection.prepareStatement(sql);
-             ResultSet rs = stmt.executeQuery()) {
+    public ActivityPage getActivitiesPage(String cursor, int pageSize) {
+        if (isArchiveCursor(cursor)) {
+            return readArchivePage(null, cursor, clampPageSize(pageSize), true);
+        }
+        String sql = "SELECT al.id, al.subscriber_code, s.userName, al.activity_type, al.details, al.activity_timestamp, " +
+                     "DATE_FORMAT(al.activity_timestamp, '%Y-%m-%d %H:%i:%s') as formatted_timestamp " +
+                     "FROM activity_log al LEFT JOIN subscriber s ON al.subscriber_code = s.subscriptionCode" +
+                     (cursor != null ? " WHERE al.activity_timestamp < ? OR (al.activity_timestamp = ? AND al.id < ?)" : "") +
+                     " ORDER BY al.activity_timestamp DESC, al.id DESC LIMIT ?";
+        int limit = clampPageSize(pageSize);
+        ArrayList<ActivityInfo> activities = new ArrayList<>();
+        String nextCursor = null;
+        Timestamp lastTimestamp = null;
+        long lastId = 0;
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            int next = bindCursor(stmt, 1, cursor);
+            stmt.setInt(next, limit + 1);
+            ResultSet rs = stmt.executeQuery();
             while (rs.next()) {
-                ActivityInfo log = new ActivityInfo(
+                if (activities.size() == limit) {
+                    nextCursor = formatCursor(lastTimestamp, lastId);
+                    break;
+                }
+                activities.add(new ActivityInfo(
                     rs.getString("subscriber_code"),
                     rs.getString("userName"),
                     rs.getString("activity_type"),
                     rs.getString("details"),
                     rs.getString("formatted_timestamp")
-                );
-                history.add(log);
+                ));
+                lastTimestamp = rs.getTimestamp("activity_timestamp");
+                lastId = rs.getLong("id");
             }
-        } catch (SQLException e) {
+        } catch (SQLException | IllegalArgumentException e) {
             System.err.println("Failed to fetch all activity logs: " + e.getMessage());
+            return new ActivityPage(activities, null, cursor != null);
+        }
+        if (nextCursor == null) {
+            nextCursor = archiveCursor(null, cursor, lastTimestamp, lastId);
+            if (nextCursor != null && activities.isEmpty()) {
+                // Nothing live to show before the boundary, so this request is already paging into the archive.
+                return readArchivePage(null, nextCursor, limit, cursor != null);
+            }
         }
-        return history;
+        return new ActivityPage(activities, nextCursor, cursor != null);
     }
 
     /**
      * Generates a monthly report of parking activities, showing the count of cars parked each day.
+     * Reads the pre-aggregated daily counts maintained by {@link ReportRollups}; used when
+     * {@link ParkingAnalytics} cannot load the month.
      *
      * @param year  The year of the report.
      * @param month The month of the report.
      * @return An ArrayList of {@link MonthlyReportData} objects.
      */
-    public ArrayList<MonthlyReportData> getMonthlyParkingReport(int year, int month) {
+    private ArrayList<MonthlyReportData> getMonthlyParkingReportFromRollups(int year, int month) {
         ArrayList<MonthlyReportData> reportData = new ArrayList<>();
-        String sql = "SELECT DATE(activity_timestamp) as park_date, COUNT(*) as daily_count FROM activity_log WHERE activity_type = 'PARK_CAR' AND YEAR(activity_timestamp) = ? AND MONTH(activity_timestamp) = ? GROUP BY DATE(activity_timestamp) ORDER BY park_date ASC";
-        try (PreparedStatement stmt = currentConnection.prepareStatement(sql)) {
-            stmt.setInt(1, year);
-            stmt.setInt(2, month);
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(MONTHLY_REPORT_SQL)) {
+            stmt.setDate(1, monthStartDate(year, month));
+            stmt.setDate(2, monthStartDate(year, month + 1));
             ResultSet rs = stmt.executeQuery();
             while (rs.next()) {
                 MonthlyReportData dailyData = new MonthlyReportData(
@@ -500,21 +1028,15 @@ public class DBController {
 
     /**
      * Logs an activity for a subscriber in the database.
+     * The entry is queued and written asynchronously in batches by {@link ActivityLogWriter},
+     * so the caller does not wait for the INSERT.
      *
      * @param subscriberCode The code of the subscriber performing the activity.
      * @param activityType   The type of activity (e.g., 'LOGIN', 'PARK_CAR').
      * @param details        A detailed description of the activity.
      */
     public void logActivity(String subscriberCode, String activityType, String details) {
-        String sql = "INSERT INTO activity_log (subscriber_code, activity_type, details) VALUES (?, ?, ?)";
-        try (PreparedStatement stmt = currentConnection.prepareStatement(sql)){
-            stmt.setString(1, subscriberCode);
-            stmt.setString(2, activityType);
-            stmt.setString(3, details);
-            stmt.executeUpdate();
-        } catch (SQLException e) {
-            System.err.println("Failed to log activity for subscriber " + subscriberCode + ": " + e.getMessage());
-        }
+        activityLogWriter.append(subscriberCode, activityType, details);
     }
 
     /**
@@ -526,40 +1048,116 @@ public class DBController {
      * @param email The subscriber's email address.
      * @param id    The subscriber's national/personal ID.
      */
-    public static void insertSubscriber(String code, String name, String phone, String email, String id) {
-        try {
-            String query = "INSERT INTO subscriber (subscriptionCode, userName, phoneNumber, email, id) VALUES (?, ?, ?, ?, ?)";
-            PreparedStatement ps = currentConnection.prepareStatement(query);
+    public void insertSubscriber(String code, String name, String phone, String email, String id) {
+        String query = "INSERT INTO subscriber (subscriptionCode, userName, phoneNumber, email, id) VALUES (?, ?, ?, ?, ?)";
+        try (Connection conn = pool.getConnection();
+             PreparedStatement ps = conn.prepareStatement(query)) {
             ps.setString(1, code);
             ps.setString(2, name);
             ps.setString(3, phone);
             ps.setString(4, email);
             ps.setString(5, id);
             ps.executeUpdate();
-            ps.close();
-            taskExecutor.submit(() -> EmailService.sendWelcomeEmail(email, code));
+            mailQueue.offer(() -> EmailService.sendWelcomeEmail(email, code));
         } catch (SQLException e) {
             e.printStackTrace();
         }
     }
 
     /**
-     * Retrieves a list of all currently occupied parking slots.
+     * Inserts a chunk of subscribers in one transaction, as a single JDBC batch. Codes that
+     * already exist are skipped and reported instead of failing the chunk. If the batch is
+     * still rejected (for example because another request registered one of the codes
+     * meanwhile), the rows are inserted one by one so that only the offending rows fail.
+     * Welcome emails are left to the caller; see {@link SubscriberImporter}.
      *
-     * @return An ArrayList of integers representing the occupied slot numbers.
+     * @param subscribers The subscribers to insert.
+     * @return For each subscriber, in order, null if it was inserted, otherwise the reason it was not.
      */
-    public static ArrayList<Integer> getOccupiedSlots() {
-        ArrayList<Integer> occupiedSlots = new ArrayList<>();
-        String query = "SELECT parking_space FROM activeparking WHERE parking_space IS NOT NULL";
-        try (PreparedStatement ps = currentConnection.prepareStatement(query);
-             ResultSet rs = ps.executeQuery()) {
-            while (rs.next()) {
-                occupiedSlots.add(rs.getInt("parking_space"));
+    public List<String> insertSubscribers(List<SubscriberInfo> subscribers) {
+        List<String> errors;
+        try {
+            errors = transactions.execute(conn -> insertSubscriberBatch(conn, subscribers));
+        } catch (SQLException e) {
+            System.err.println("Subscriber batch rejected, inserting rows one by one: " + e.getMessage());
+            errors = insertSubscribersIndividually(subscribers);
+        }
+        return errors;
+    }
+
+    private static List<String> insertSubscriberBatch(Connection conn, List<SubscriberInfo> subscribers) throws SQLException {
+        List<String> errors = new ArrayList<>(Collections.nCopies(subscribers.size(), (String) null));
+        Set<String> existing = new HashSet<>();
+        String placeholders = String.join(",", Collections.nCopies(subscribers.size(), "?"));
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT subscriptionCode FROM subscriber WHERE subscriptionCode IN (" + placeholders + ")")) {
+            for (int i = 0; i < subscribers.size(); i++) {
+                ps.setString(i + 1, subscribers.get(i).getSubscriptionCode());
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    existing.add(rs.getString(1));
+                }
             }
-        } catch (Exception e) {
-            e.printStackTrace();
         }
-        return occupiedSlots;
+        String query = "INSERT INTO subscriber (subscriptionCode, userName, phoneNumber, email, id) VALUES (?, ?, ?, ?, ?)";
+        try (PreparedStatement ps = conn.prepareStatement(query)) {
+            boolean any = false;
+            for (int i = 0; i < subscribers.size(); i++) {
+                SubscriberInfo subscriber = subscribers.get(i);
+                if (existing.contains(subscriber.getSubscriptionCode())) {
+                    errors.set(i, "Subscription code already exists");
+                    continue;
+                }
+                bindSubscriber(ps, subscriber);
+                ps.addBatch();
+                any = true;
+            }
+            if (any) {
+                ps.executeBatch();
+            }
+        }
+        return errors;
+    }
+
+    private List<String> insertSubscribersIndividually(List<SubscriberInfo> subscribers) {
+        List<String> errors = new ArrayList<>(subscribers.size());
+        String query = "INSERT INTO subscriber (subscriptionCode, userName, phoneNumber, email, id) VALUES (?, ?, ?, ?, ?)";
+        try (Connection conn = pool.getConnection();
+             PreparedStatement ps = conn.prepareStatement(query)) {
+            for (SubscriberInfo subscriber : subscribers) {
+                try {
+                    bindSubscriber(ps, subscriber);
+                    ps.executeUpdate();
+                    errors.add(null);
+                } catch (SQLException e) {
+                    errors.add(e.getMessage());
+                }
+            }
+        } catch (SQLException e) {
+            while (errors.size() < subscribers.size()) {
+                errors.add(e.getMessage());
+            }
+        }
+        return errors;
+    }
+
+    private static void bindSubscriber(PreparedStatement ps, SubscriberInfo subscriber) throws SQLException {
+        ps.setString(1, subscriber.getSubscriptionCode());
+        ps.setString(2, subscriber.getUserName());
+        ps.setString(3, subscriber.getPhoneNumber());
+        ps.setString(4, subscriber.getEmail());
+        ps.setString(5, subscriber.getId());
+    }
+
+    /**
+     * Retrieves a list of all currently occupied parking slots.
+     * Answered from the in-memory occupancy bitmap without a database query.
+     *
+     * @return An ArrayList of integers representing the occupied slot numbers.
+     */
+    public ArrayList<Integer> getOccupiedSlots() {
+        return slotOccupancy.occupiedSlots();
     }
 
     /**
@@ -573,7 +1171,8 @@ public class DBController {
      */
     public boolean updateSubscriberInfo(String subscriptionCode, String userName, String phoneNumber, String email) {
         String sql = "UPDATE subscriber SET userName = ?, phoneNumber = ?, email = ? WHERE subscriptionCode = ?";
-        try (PreparedStatement stmt = currentConnection.prepareStatement(sql)) {
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setString(1, userName);
             stmt.setString(2, phoneNumber);
             stmt.setString(3, email);
@@ -582,102 +1181,117 @@ public class DBController {
         } catch (SQLException e) {
             System.out.println("Error updating subscriber info: " + e.getMessage());
             return false;
+        } finally {
+            subscriberCache.invalidate(subscriptionCode);
         }
     }
 
     /**
-     * Retrieves the active parking order for a given subscriber ID.
+     * Retrieves the active parking order for a given subscriber ID from the in-memory order index.
      *
      * @param subscriberId The ID of the subscriber.
      * @return An {@link OrderInfo} object if an active order is found, otherwise null.
      */
-    public static OrderInfo getOrderBySubscriberId(String subscriberId) {
-        String sql = "SELECT *, DATE_FORMAT(time_of_placing_an_order, '%Y-%m-%d %H:%i:%s') as formatted_start, DATE_FORMAT(endParkTime, '%Y-%m-%d %H:%i:%s') as formatted_end FROM `activeparking` WHERE subscriber_id = ?";
-        try (PreparedStatement stmt = currentConnection.prepareStatement(sql)) {
-            stmt.setString(1, subscriberId);
-            ResultSet rs = stmt.executeQuery();
-            if (rs.next()) {
-                return new OrderInfo(
-                    rs.getString("parking_space"),
-                    rs.getString("order_number"),
-                    rs.getString("order_date"),
-                    rs.getString("confirmation_code"),
-                    rs.getString("subscriber_id"),
-                    rs.getString("formatted_start"),
-                    rs.getString("formatted_end")
-                );
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-        return null;
+    public OrderInfo getOrderBySubscriberId(String subscriberId) {
+        return orderIndex.findBySubscriberId(subscriberId);
     }
 
     /**
-     * Retrieves an active parking order by its confirmation code.
+     * Retrieves an active parking order by its confirmation code from the in-memory order index.
      *
      * @param confirmationCode The confirmation code of the order.
      * @return An {@link OrderInfo} object if found, otherwise null.
      */
     public OrderInfo getOrderByConfirmationCode(String confirmationCode) {
-        String sql = "SELECT *, DATE_FORMAT(time_of_placing_an_order, '%Y-%m-%d %H:%i:%s') as formatted_start, DATE_FORMAT(endParkTime, '%Y-%m-%d %H:%i:%s') as formatted_end FROM `activeparking` WHERE confirmation_code = ? LIMIT 1";
-        try (PreparedStatement stmt = currentConnection.prepareStatement(sql)) {
-            stmt.setString(1, confirmationCode);
-            ResultSet rs = stmt.executeQuery();
-            if (rs.next()) {
-                return new OrderInfo(
-                    rs.getString("parking_space"),
-                    rs.getString("order_number"),
-                    rs.getString("order_date"),
-                    rs.getString("confirmation_code"),
-                    rs.getString("subscriber_id"),
-                    rs.getString("formatted_start"),
-                    rs.getString("formatted_end")
-                );
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-        return null;
+        return orderIndex.findByConfirmationCode(confirmationCode);
+    }
+
+    /**
+     * Atomically claims a free parking slot in the in-memory occupancy bitmap.
+     * The claim must be followed by {@link #registerParkingSlot}, which keeps it on success
+     * and gives it back on failure.
+     *
+     * @return The claimed slot number, or -1 if the lot is full.
+     */
+    public int claimFreeSlot() {
+        return slotOccupancy.claimFreeSlot();
     }
 
     /**
-     * Registers a new active parking session in the database.
+     * Registers a new active parking session in the database for a slot obtained from
+     * {@link #claimFreeSlot()}. If the insert fails, the slot claim is released.
      *
      * @param slot             The assigned parking slot number.
      * @param confirmationCode The unique confirmation code for this session.
      * @param subscriberId     The ID of the subscriber parking the car.
+     * @return True if the session was registered, false otherwise.
      */
-    public void registerParkingSlot(int slot, String confirmationCode, String subscriberId) {
+    public boolean registerParkingSlot(int slot, String confirmationCode, String subscriberId) {
         String sql = "INSERT INTO `activeparking` (parking_space, confirmation_code, order_date, subscriber_id, time_of_placing_an_order) VALUES (?, ?, ?, ?, NOW())";
-        try (PreparedStatement stmt = currentConnection.prepareStatement(sql)) {
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setInt(1, slot);
             stmt.setString(2, confirmationCode);
             stmt.setString(3, java.time.LocalDate.now().toString());
             stmt.setString(4, subscriberId);
             stmt.executeUpdate();
+            refreshActiveOrder(conn, confirmationCode);
             System.out.println(" Registered parking slot " + slot + " for subscriber " + subscriberId + " with code " + confirmationCode);
+            return true;
         } catch (SQLException e) {
+            slotOccupancy.markFree(slot);
             System.out.println(" Failed to register parking slot: " + e.getMessage());
+            return false;
         }
     }
 
     /**
      * Deletes an active parking order from the database using its confirmation code.
-     * This method is called when a vehicle is released from the parking lot.
+     * This method is called when a vehicle is released from the parking lot. The session's
+     * hours are added to the daily report rollups in the same transaction, and the analytics
+     * chunk of the month it started in is reopened if that month was already closed.
      *
      * @param confirmationCode The confirmation code of the order to delete.
      * @return True if the deletion was successful, false otherwise.
      */
     public boolean deleteOrderByConfirmationCode(String confirmationCode) {
+        OrderInfo session = orderIndex.findByConfirmationCode(confirmationCode);
+        String slotSql = "SELECT parking_space FROM activeparking WHERE confirmation_code = ? FOR UPDATE";
         String deleteSql = "DELETE FROM activeparking WHERE confirmation_code = ?";
-        try (PreparedStatement deleteStmt = currentConnection.prepareStatement(deleteSql)) {
-            deleteStmt.setString(1, confirmationCode);
-            return deleteStmt.executeUpdate() > 0;
+        List<Integer> releasedSlots;
+        try {
+            releasedSlots = transactions.execute(conn -> {
+                List<Integer> slots = new ArrayList<>();
+                try (PreparedStatement slotStmt = conn.prepareStatement(slotSql)) {
+                    slotStmt.setString(1, confirmationCode);
+                    try (ResultSet rs = slotStmt.executeQuery()) {
+                        while (rs.next()) {
+                            slots.add(rs.getInt("parking_space"));
+                        }
+                    }
+                }
+                if (slots.isEmpty()) {
+                    return slots;
+                }
+                ReportRollups.archiveReleasedSession(conn, confirmationCode);
+                try (PreparedStatement deleteStmt = conn.prepareStatement(deleteSql)) {
+                    deleteStmt.setString(1, confirmationCode);
+                    deleteStmt.executeUpdate();
+                }
+                return slots;
+            });
         } catch (SQLException e) {
             e.printStackTrace();
             return false;
         }
+        for (int slot : releasedSlots) {
+            slotOccupancy.markFree(slot);
+        }
+        orderIndex.remove(confirmationCode);
+        if (!releasedSlots.isEmpty() && session != null && session.getTimeOfPlacingOrder() != 0) {
+            analytics.sessionArchived(session.getTimeOfPlacingOrder());
+        }
+        return !releasedSlots.isEmpty();
     }
 
     /**
@@ -686,77 +1300,135 @@ public class DBController {
      * @return An ArrayList of {@link OrderInfo} objects for all active orders.
      */
     public ArrayList<OrderInfo> getAllOrders() {
-        ArrayList<OrderInfo> orders = new ArrayList<>();
-        String sql = "SELECT *, DATE_FORMAT(time_of_placing_an_order, '%Y-%m-%d %H:%i:%s') as formatted_start, DATE_FORMAT(endParkTime, '%Y-%m-%d %H:%i:%s') as formatted_end FROM `activeparking`";
-        try (PreparedStatement stmt = currentConnection.prepareStatement(sql);
-             ResultSet rs = stmt.executeQuery()) {
-            while (rs.next()) {
-                OrderInfo info = new OrderInfo(
-                    rs.getString("parking_space"),
-                    rs.getString("order_number"),
-                    rs.getString("order_date"),
-                    rs.getString("confirmation_code"),
-                    rs.getString("subscriber_id"),
-                    rs.getString("formatted_start"),
-                    rs.getString("formatted_end")
-                );
-                orders.add(info);
-            }
+        try {
+            return new ArrayList<>(readActiveOrders());
         } catch (SQLException e) {
             System.out.println("Failed to fetch orders: " + e.getMessage());
+            return new ArrayList<>();
         }
-        return orders;
     }
 
     /**
-     * Increments a subscriber's late count. If the late count reaches 2 or more,
-     * the subscriber's account is frozen. This operation is performed within a transaction.
+     * Increments a subscriber's late count and freezes the account once the count reaches
+     * {@link #LATE_FREEZE_THRESHOLD}, in a single autocommitted UPDATE, so no row lock is held
+     * across round trips.
+     * <p>
+     * The statement also stores the new late count and the previous frozen flag in the session
+     * variables {@code @bpark_late_count} and {@code @bpark_was_frozen}, which are then read back
+     * on the same connection. Session variables belong to the connection, so the values are the
+     * ones this UPDATE wrote even if other connections penalize the same subscriber meanwhile.
+     * They are only read when the UPDATE matched the row, so values left on a pooled
+     * connection by an earlier call are never used.
      *
-     * @param subscriberId The ID of the subscriber who was late.
+     * @param subscriberId The subscription code of the subscriber who was late.
+     * @return The new late count and frozen state, or null if the subscriber does not exist or the update failed.
      */
-    public void incrementLateCountAndFreeze(String subscriberId) {
-        try {
-            currentConnection.setAutoCommit(false);
-            String incrementSql = "UPDATE subscriber SET timesLate = timesLate + 1 WHERE subscriptionCode = ?";
-            try (PreparedStatement stmt = currentConnection.prepareStatement(incrementSql)) {
-                stmt.setString(1, subscriberId);
-                stmt.executeUpdate();
+    public PenaltyResult incrementLateCountAndFreeze(String subscriberId) {
+        // Assignments are applied left to right, so timesLate in the isFrozen expression is already incremented.
+        String updateSql = "UPDATE subscriber SET timesLate = (@bpark_late_count := timesLate + 1), " +
+                           "isFrozen = IF((@bpark_was_frozen := isFrozen) = 1 OR timesLate >= ?, 1, 0) " +
+                           "WHERE subscriptionCode = ?";
+        String readSql = "SELECT @bpark_late_count, @bpark_was_frozen";
+        PenaltyResult result = null;
+        try (Connection conn = pool.getConnection()) {
+            try (PreparedStatement update = conn.prepareStatement(updateSql)) {
+                update.setInt(1, LATE_FREEZE_THRESHOLD);
+                update.setString(2, subscriberId);
+                if (update.executeUpdate() == 0) {
+                    return null;
+                }
             }
-
-            String selectSql = "SELECT timesLate FROM subscriber WHERE subscriptionCode = ?";
-            int lateCount = 0;
-            try (PreparedStatement stmt = currentConnection.prepareStatement(selectSql)) {
-                stmt.setString(1, subscriberId);
-                ResultSet rs = stmt.executeQuery();
+            try (PreparedStatement read = conn.prepareStatement(readSql);
+                 ResultSet rs = read.executeQuery()) {
                 if (rs.next()) {
-                    lateCount = rs.getInt("timesLate");
+                    int lateCount = rs.getInt(1);
+                    boolean wasFrozen = rs.getInt(2) == 1;
+                    boolean frozen = wasFrozen || lateCount >= LATE_FREEZE_THRESHOLD;
+                    result = new PenaltyResult(lateCount, frozen, frozen && !wasFrozen);
                 }
             }
+        } catch (SQLException e) {
+            System.err.println("DB Error in incrementLateCountAndFreeze: " + e.getMessage());
+            return null;
+        } finally {
+            subscriberCache.invalidate(subscriberId);
+        }
+        if (result != null && result.isNewlyFrozen()) {
+            logActivity(subscriberId, "ACCOUNT_FROZEN", "Account frozen due to reaching " + result.getLateCount() + " late incidents.");
+        }
+        return result;
+    }
 
-            if (lateCount >= 2) {
-                String freezeSql = "UPDATE subscriber SET isFrozen = 1 WHERE subscriptionCode = ?";
-                try (PreparedStatement stmt = currentConnection.prepareStatement(freezeSql)) {
-                    stmt.setString(1, subscriberId);
-                    stmt.executeUpdate();
-                    logActivity(subscriberId, "ACCOUNT_FROZEN", "Account frozen due to reaching " + lateCount + " late incidents.");
-                }
+    /**
+     * Applies one late penalty per entry to a set of subscribers in a single transaction:
+     * one {@code SELECT ... FOR UPDATE} with an {@code IN (...)} list reads and locks the
+     * affected rows, and one batched UPDATE writes the new late counts and frozen flags.
+     * A subscriber listed more than once receives one penalty per occurrence.
+     *
+     * @param subscriberIds The subscription codes of the subscribers who were late.
+     * @return The outcome for each existing subscriber, keyed by subscription code; empty if the transaction failed.
+     */
+    public Map<String, PenaltyResult> applyLatePenalties(List<String> subscriberIds) {
+        Map<String, Integer> penalties = new LinkedHashMap<>();
+        for (String subscriberId : subscriberIds) {
+            if (subscriberId != null) {
+                penalties.merge(subscriberId, 1, Integer::sum);
             }
-
-            currentConnection.commit();
+        }
+        if (penalties.isEmpty()) {
+            return new HashMap<>();
+        }
+        String placeholders = String.join(",", Collections.nCopies(penalties.size(), "?"));
+        String selectSql = "SELECT subscriptionCode, timesLate, isFrozen FROM subscriber " +
+                           "WHERE subscriptionCode IN (" + placeholders + ") FOR UPDATE";
+        String updateSql = "UPDATE subscriber SET timesLate = ?, isFrozen = ? WHERE subscriptionCode = ?";
+        Map<String, PenaltyResult> results;
+        try {
+            results = transactions.execute(conn -> {
+                Map<String, PenaltyResult> applied = new HashMap<>();
+                try (PreparedStatement select = conn.prepareStatement(selectSql)) {
+                    int index = 1;
+                    for (String subscriberId : penalties.keySet()) {
+                        select.setString(index++, subscriberId);
+                    }
+                    try (ResultSet rs = select.executeQuery()) {
+                        while (rs.next()) {
+                            String code = rs.getString("subscriptionCode");
+                            boolean wasFrozen = rs.getInt("isFrozen") == 1;
+                            int lateCount = rs.getInt("timesLate") + penalties.get(code);
+                            boolean frozen = wasFrozen || lateCount >= LATE_FREEZE_THRESHOLD;
+                            applied.put(code, new PenaltyResult(lateCount, frozen, frozen && !wasFrozen));
+                        }
+                    }
+                }
+                if (applied.isEmpty()) {
+                    return applied;
+                }
+                try (PreparedStatement update = conn.prepareStatement(updateSql)) {
+                    for (Map.Entry<String, PenaltyResult> entry : applied.entrySet()) {
+                        update.setInt(1, entry.getValue().getLateCount());
+                        update.setInt(2, entry.getValue().isFrozen() ? 1 : 0);
+                        update.setString(3, entry.getKey());
+                        update.addBatch();
+                    }
+                    update.executeBatch();
+                }
+                return applied;
+            });
         } catch (SQLException e) {
-            System.err.println("Transaction failed in incrementLateCountAndFreeze: " + e.getMessage());
-            try {
-                currentConnection.rollback();
-            } catch (SQLException ex) {
-                System.err.println("Rollback failed: " + ex.getMessage());
-            }
+            System.err.println("DB Error in applyLatePenalties: " + e.getMessage());
+            return new HashMap<>();
         } finally {
-            try {
-                currentConnection.setAutoCommit(true);
-            } catch (SQLException e) {
-                System.err.println("Failed to reset auto-commit: " + e.getMessage());
+            for (String subscriberId : penalties.keySet()) {
+                subscriberCache.invalidate(subscriberId);
             }
         }
+        for (Map.Entry<String, PenaltyResult> entry : results.entrySet()) {
+            if (entry.getValue().isNewlyFrozen()) {
+                logActivity(entry.getKey(), "ACCOUNT_FROZEN", "Account frozen due to reaching " + entry.getValue().getLateCount() + " late incidents.");
+            }
+        }
+        return results;
     }
 
     /**
@@ -768,25 +1440,34 @@ public class DBController {
      */
     public boolean setFreezeStatus(String subscriberId, boolean freeze) {
         String sql = "UPDATE subscriber SET isFrozen = ? WHERE subscriptionCode = ?";
-        try (PreparedStatement stmt = currentConnection.prepareStatement(sql)) {
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setInt(1, freeze ? 1 : 0);
             stmt.setString(2, subscriberId);
             return stmt.executeUpdate() > 0;
         } catch (SQLException e) {
             System.err.println("DB Error setting freeze status for " + subscriberId + ": " + e.getMessage());
             return false;
+        } finally {
+            subscriberCache.invalidate(subscriberId);
         }
     }
 
     /**
      * Finds a subscriber by their subscription code.
+     * Served from the subscriber cache when possible; a miss reads the database.
      *
      * @param subscriptionCode The code of the subscriber to find.
      * @return A {@link SubscriberInfo} object if found, otherwise null.
      */
-    public static SubscriberInfo findSubscriberByCode(String subscriptionCode) {
+    public SubscriberInfo findSubscriberByCode(String subscriptionCode) {
+        return subscriberCache.get(subscriptionCode, DBController::loadSubscriberByCode);
+    }
+
+    private static SubscriberInfo loadSubscriberByCode(String subscriptionCode) {
         String sql = "SELECT * FROM subscriber WHERE subscriptionCode = ?";
-        try (PreparedStatement stmt = currentConnection.prepareStatement(sql)) {
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setString(1, subscriptionCode);
             ResultSet rs = stmt.executeQuery();
             if (rs.next()) {
@@ -813,7 +1494,8 @@ public class DBController {
      */
     public ArrayList<SubscriberInfo> getAllSubscribers() {
         ArrayList<SubscriberInfo> subscribers = new ArrayList<>();
-        try (PreparedStatement stmt = currentConnection.prepareStatement("SELECT * FROM subscriber");
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT * FROM subscriber");
              ResultSet rs = stmt.executeQuery()) {
             while (rs.next()) {
                 subscribers.add(new SubscriberInfo(
@@ -832,145 +1514,107 @@ public class DBController {
         return subscribers;
     }
 
-    /**
-     * Checks if a specific parking slot is currently occupied.
-     *
-     * @param slotNumber The slot number to check.
-     * @return True if the slot is occupied, false otherwise.
-     */
-    private synchronized boolean isSlotOccupied(int slotNumber) {
-        String sql = "SELECT COUNT(*) FROM activeparking WHERE parkingSpace = ?";
-        try (PreparedStatement pstmt = currentConnection.prepareStatement(sql)) {
-            pstmt.setInt(1, slotNumber);
-            ResultSet rs = pstmt.executeQuery();
-            if (rs.next()) {
-                return rs.getInt(1) > 0;
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-        return false;
-    }
-
-    /**
-     * Finds the next available parking slot number by checking which slots are not in the activeparking table.
-     *
-     * @return The number of the next available slot, or -1 if the lot is full or a database error occurs.
-     */
-    private synchronized int findNextAvailableSlot() {
-        String sql = "SELECT parkingSpace FROM activeparking";
-        List<Integer> occupiedSlots = new ArrayList<>();
-        try (Statement stmt = currentConnection.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
-            while (rs.next()) {
-                occupiedSlots.add(rs.getInt("parkingSpace"));
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return -1;
-        }
-
-        for (int i = 1; i <= 100; i++) {
-            if (!occupiedSlots.contains(i)) {
-                return i;
-            }
-        }
-        return -1;
-    }
-
     /**
      * Manages the process of parking a car with a prior reservation.
      * It validates the reservation, checks for lateness, handles slot conflicts,
-     * and updates the database tables within a transaction.
+     * and updates the database tables within a transaction. The transaction only inserts the
+     * session if its delete removed the reservation row, so of two terminals claiming the same
+     * code, or a claim racing the no-show sweep, exactly one succeeds. The late penalty is
+     * applied once the claim has committed.
      *
      * @param confirmationCode The reservation confirmation code.
      * @param subscriberId     The ID of the subscriber.
      * @return The assigned parking slot number on success. Returns negative integers for specific errors:
      * -1 for a general DB error, -2 for arriving too early, -3 if no slots are available,
-     * -4 for an invalid reservation code or mismatched subscriber.
+     * -4 for an invalid reservation code or mismatched subscriber, or a reservation that was
+     * claimed or cancelled concurrently.
      */
     public int parkWithReservation(String confirmationCode, String subscriberId) {
-        String findOrderSql = "SELECT * FROM parkingorders WHERE confirmationCode = ? AND subscriptionCode = ?";
-        try (PreparedStatement findStmt = currentConnection.prepareStatement(findOrderSql)) {
-            findStmt.setString(1, confirmationCode);
-            findStmt.setString(2, subscriberId);
-            ResultSet rs = findStmt.executeQuery();
-
-            if (!rs.next()) {
-                return -4;
-            }
-
-            Timestamp scheduledTime = rs.getTimestamp("scheduled_time");
-            int reservedSlot = rs.getInt("futureParkingSpot");
+        ReservationIndex.Reservation reservation = reservationIndex.find(confirmationCode);
+        if (reservation == null || !subscriberId.equals(reservation.subscriberCode)) {
+            return -4;
+        }
+        Timestamp scheduledTime = new Timestamp(reservation.start);
+        int reservedSlot = reservation.slot;
 
-            if (LocalDateTime.now().isBefore(scheduledTime.toLocalDateTime().minusMinutes(1))) {
-                return -2;
-            }
+        if (LocalDateTime.now().isBefore(scheduledTime.toLocalDateTime().minusMinutes(1))) {
+            return -2;
+        }
 
-            if (LocalDateTime.now().isAfter(scheduledTime.toLocalDateTime().plusMinutes(15))) {
-                incrementLateCountAndFreeze(subscriberId);
-            }
+        boolean late = LocalDateTime.now().isAfter(scheduledTime.toLocalDateTime().plusMinutes(15));
 
-            if (isSlotOccupied(reservedSlot)) {
-                int newSlot = findNextAvailableSlot();
-                if (newSlot == -1) {
-                    return -3;
-                }
-                reservedSlot = newSlot;
+        // Claim the reserved slot, or any free slot if someone else is parked in it.
+        if (!slotOccupancy.markOccupied(reservedSlot)) {
+            int newSlot = slotOccupancy.claimFreeSlot();
+            if (newSlot == -1) {
+                return -3;
             }
+            reservedSlot = newSlot;
+        }
 
-            currentConnection.setAutoCommit(false);
-
-            try {
-                String deleteSql = "DELETE FROM parkingorders WHERE confirmationCode = ?";
-                try (PreparedStatement deleteStmt = currentConnection.prepareStatement(deleteSql)) {
+        String deleteSql = "DELETE FROM parkingorders WHERE confirmationCode = ?";
+        String insertSql = "INSERT INTO activeparking (parking_space, confirmation_code, order_date, subscriber_id, time_of_placing_an_order, endParkTime) " +
+                           "VALUES (?, ?, ?, ?, NOW(), DATE_ADD(NOW(), INTERVAL 4 HOUR))";
+        int slot = reservedSlot;
+        boolean claimed;
+        try {
+            claimed = transactions.execute(conn -> {
+                // The row lock makes the delete the single point where a reservation is claimed:
+                // a concurrent claim or no-show sweep that got there first leaves nothing to delete.
+                try (PreparedStatement deleteStmt = conn.prepareStatement(deleteSql)) {
                     deleteStmt.setString(1, confirmationCode);
-                    deleteStmt.executeUpdate();
+                    if (deleteStmt.executeUpdate() != 1) {
+                        conn.rollback();
+                        return false;
+                    }
                 }
-
-                String insertSql = "INSERT INTO activeparking (parking_space, confirmation_code, order_date, subscriber_id, time_of_placing_an_order, endParkTime) " +
-                                   "VALUES (?, ?, ?, ?, NOW(), DATE_ADD(NOW(), INTERVAL 4 HOUR))";
-                try (PreparedStatement insertStmt = currentConnection.prepareStatement(insertSql)) {
-                    insertStmt.setInt(1, reservedSlot);
+                try (PreparedStatement insertStmt = conn.prepareStatement(insertSql)) {
+                    insertStmt.setInt(1, slot);
                     insertStmt.setString(2, confirmationCode);
                     insertStmt.setString(3, java.time.LocalDate.now().toString());
                     insertStmt.setString(4, subscriberId);
                     insertStmt.executeUpdate();
                 }
-
-                currentConnection.commit();
-                logActivity(subscriberId, "PARK_WITH_RESERVATION", "Parked in slot " + reservedSlot + " with code " + confirmationCode);
-                return reservedSlot;
-
-            } catch (SQLException e) {
-                currentConnection.rollback();
-                System.err.println("Transaction failed in parkWithReservation: " + e.getMessage());
-                return -1;
-            } finally {
-                currentConnection.setAutoCommit(true);
-            }
-
+                return true;
+            });
         } catch (SQLException e) {
-            System.err.println("DB Error in parkWithReservation: " + e.getMessage());
+            slotOccupancy.markFree(reservedSlot);
+            System.err.println("Transaction failed in parkWithReservation: " + e.getMessage());
             return -1;
         }
+        if (!claimed) {
+            slotOccupancy.markFree(reservedSlot);
+            return -4;
+        }
+        forgetReservation(confirmationCode);
+        if (late) {
+            incrementLateCountAndFreeze(subscriberId);
+        }
+        try (Connection conn = pool.getConnection()) {
+            refreshActiveOrder(conn, confirmationCode);
+        } catch (SQLException e) {
+            System.err.println("DB Error in parkWithReservation: " + e.getMessage());
+        }
+
+        logActivity(subscriberId, "PARK_WITH_RESERVATION", "Parked in slot " + reservedSlot + " with code " + confirmationCode);
+        return reservedSlot;
     }
 
     /**
-     * Calculates the total parking hours for each subscriber for a given month and year.
+     * Calculates the total parking hours for each subscriber for a given month and year from
+     * the daily rollups; used when {@link ParkingAnalytics} cannot load the month.
+     * Sessions are counted by their start date once they have been released.
      *
      * @param year  The year of the report.
      * @param month The month of the report.
      * @return An ArrayList of {@link SubscriberParkingData} objects, sorted by total hours.
      */
-    public ArrayList<SubscriberParkingData> getTotalParkingHoursPerSubscriber(int year, int month) {
+    private ArrayList<SubscriberParkingData> getTotalParkingHoursPerSubscriberFromRollups(int year, int month) {
         ArrayList<SubscriberParkingData> subscriberReports = new ArrayList<>();
-        String query = "SELECT ap.subscriber_id, s.userName, SUM(TIMESTAMPDIFF(HOUR, ap.time_of_placing_an_order, ap.endParkTime)) AS total_parked_hours " +
-                       "FROM activeparking ap JOIN subscriber s ON ap.subscriber_id = s.subscriptionCode " +
-                       "WHERE YEAR(ap.time_of_placing_an_order) = ? AND MONTH(ap.time_of_placing_an_order) = ? " +
-                       "GROUP BY ap.subscriber_id, s.userName ORDER BY total_parked_hours DESC";
-        try (PreparedStatement stmt = currentConnection.prepareStatement(query)) {
-            stmt.setInt(1, year);
-            stmt.setInt(2, month);
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(SUBSCRIBER_HOURS_REPORT_SQL)) {
+            stmt.setDate(1, monthStartDate(year, month));
+            stmt.setDate(2, monthStartDate(year, month + 1));
             ResultSet rs = stmt.executeQuery();
             while (rs.next()) {
                 String subscriberId = rs.getString("subscriber_id");
@@ -985,21 +1629,20 @@ public class DBController {
     }
 
     /**
-     * Calculates the total occupancy hours for each parking slot for a given month and year.
+     * Calculates the total occupancy hours for each parking slot for a given month and year from
+     * the daily rollups; used when {@link ParkingAnalytics} cannot load the month.
+     * Sessions are counted by their start date once they have been released.
      *
      * @param year  The year of the report.
      * @param month The month of the report.
      * @return An ArrayList of {@link SlotOccupancyData} objects, sorted by total hours.
      */
-    public ArrayList<SlotOccupancyData> getTotalParkingHoursPerSlot(int year, int month) {
+    private ArrayList<SlotOccupancyData> getTotalParkingHoursPerSlotFromRollups(int year, int month) {
         ArrayList<SlotOccupancyData> slotReports = new ArrayList<>();
-        String query = "SELECT parking_space, SUM(TIMESTAMPDIFF(HOUR, time_of_placing_an_order, endParkTime)) AS total_occupied_hours " +
-                       "FROM activeparking " +
-                       "WHERE YEAR(time_of_placing_an_order) = ? AND MONTH(time_of_placing_an_order) = ? " +
-                       "GROUP BY parking_space ORDER BY total_occupied_hours DESC";
-        try (PreparedStatement stmt = currentConnection.prepareStatement(query)) {
-            stmt.setInt(1, year);
-            stmt.setInt(2, month);
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(SLOT_HOURS_REPORT_SQL)) {
+            stmt.setDate(1, monthStartDate(year, month));
+            stmt.setDate(2, monthStartDate(year, month + 1));
             ResultSet rs = stmt.executeQuery();
             while (rs.next()) {
                 String parkingSpace = rs.getString("parking_space");
@@ -1014,18 +1657,19 @@ public class DBController {
 
     /**
      * Retrieves data for a daily lateness report for a specific month and year.
-     * It counts the number of late car retrievals for each day.
+     * It counts the number of late car retrievals for each day, from the daily rollup counts;
+     * used when {@link ParkingAnalytics} cannot load the month.
      *
      * @param year  The year for the report.
      * @param month The month for the report.
      * @return An ArrayList of {@link DailyLateData} containing the number of late incidents per day.
      */
-    public ArrayList<DailyLateData> getDailyLatenessReport(int year, int month) {
+    private ArrayList<DailyLateData> getDailyLatenessReportFromRollups(int year, int month) {
         ArrayList<DailyLateData> reportData = new ArrayList<>();
-        String sql = "SELECT DATE(activity_timestamp) as late_date, COUNT(*) as daily_count FROM activity_log WHERE activity_type = 'LATE_CAR_RETRIEVAL' AND YEAR(activity_timestamp) = ? AND MONTH(activity_timestamp) = ? GROUP BY DATE(activity_timestamp) ORDER BY late_date ASC";
-        try (PreparedStatement stmt = currentConnection.prepareStatement(sql)) {
-            stmt.setInt(1, year);
-            stmt.setInt(2, month);
+        try (Connection conn = pool.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(LATENESS_REPORT_SQL)) {
+            stmt.setDate(1, monthStartDate(year, month));
+            stmt.setDate(2, monthStartDate(year, month + 1));
             ResultSet rs = stmt.executeQuery();
             while (rs.next()) {
             	DailyLateData dailyData = new DailyLateData(
@@ -1039,4 +1683,226 @@ public class DBController {
         }
         return reportData;
     }
-}
\ No newline at end of file
+
+    @Override
+    public ArrayList<MonthlyReportData> getMonthlyParkingReport(int year, int month) {
+        ArrayList<MonthlyReportData> report = analytics.dailyActivityCounts(year, month, "PARK_CAR", MonthlyReportData::new);
+        return report != null ? report : getMonthlyParkingReportFromRollups(year, month);
+    }
+
+    @Override
+    public ArrayList<DailyLateData> getDailyLatenessReport(int year, int month) {
+        ArrayList<DailyLateData> report = analytics.dailyActivityCounts(year, month, "LATE_CAR_RETRIEVAL", DailyLateData::new);
+        return report != null ? report : getDailyLatenessReportFromRollups(year, month);
+    }
+
+    @Override
+    public ArrayList<SubscriberParkingData> getTotalParkingHoursPerSubscriber(int year, int month) {
+        ArrayList<SubscriberParkingData> report = analytics.hoursPerSubscriber(year, month);
+        return report != null ? report : getTotalParkingHoursPerSubscriberFromRollups(year, month);
+    }
+
+    @Override
+    public ArrayList<SlotOccupancyData> getTotalParkingHoursPerSlot(int year, int month) {
+        ArrayList<SlotOccupancyData> report = analytics.hoursPerSlot(year, month);
+        return report != null ? report : getTotalParkingHoursPerSlotFromRollups(year, month);
+    }
+
+    @Override
+    public ArrayList<UsageSliceData> getUsageSlice(int year, int month, ParkingAnalytics.SliceDimension dimension, int slotFrom, int slotTo) {
+        ArrayList<UsageSliceData> slice = analytics.usageSlice(year, month, dimension, slotFrom, slotTo);
+        return slice != null ? slice : new ArrayList<>();
+    }
+
+    /**
+     * Appends a month's completed sessions from 'parking_history' and its activity events to an
+     * analytics chunk. Events of months moved out of activity_log are read from the archive file.
+     */
+    private void refreshAnalyticsMonth(YearMonth month, ParkingAnalytics.MonthChunk chunk) throws SQLException, IOException {
+        Timestamp from = Timestamp.valueOf(month.atDay(1).atStartOfDay());
+        Timestamp to = Timestamp.valueOf(month.plusMonths(1).atDay(1).atStartOfDay());
+        try (Connection conn = pool.getConnection()) {
+            try (PreparedStatement stmt = conn.prepareStatement(ANALYTICS_SESSIONS_SQL)) {
+                stmt.setTimestamp(1, from);
+                stmt.setTimestamp(2, to);
+                stmt.setLong(3, chunk.getLastSessionId());
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        chunk.appendSession(rs.getLong("id"), rs.getInt("parking_space"), rs.getString("subscriber_code"),
+                            rs.getTimestamp("start_time").getTime(), rs.getTimestamp("end_time").getTime());
+                    }
+                }
+            }
+            if (activityArchive.contains(month)) {
+                if (chunk.getLastActivityId() == 0) {
+                    activityArchive.forEachInMonth(month, record ->
+                        chunk.appendActivity(record.id, record.activityType, record.timestamp.getTime()));
+                }
+                return;
+            }
+            try (PreparedStatement stmt = conn.prepareStatement(ANALYTICS_ACTIVITY_SQL)) {
+                stmt.setTimestamp(1, from);
+                stmt.setTimestamp(2, to);
+                stmt.setLong(3, chunk.getLastActivityId());
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        chunk.appendActivity(rs.getLong("id"), rs.getString("activity_type"), rs.getTimestamp("activity_timestamp").getTime());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the report rollups from the activity log and the parking session history.
+     *
+     * @throws SQLException If the rebuild fails.
+     */
+    public void backfillReportRollups() throws SQLException {
+        try (Connection conn = pool.getConnection()) {
+            ReportRollups.backfillActivityCounts(conn);
+            ReportRollups.backfillSessionHours(conn);
+        }
+    }
+
+    /**
+     * Runs EXPLAIN on every report statement for the current month.
+     *
+     * @return One line per plan problem found; empty if every report uses an index range scan.
+     * @throws SQLException If a statement cannot be explained.
+     */
+    public List<String> checkReportQueryPlans() throws SQLException {
+        try (Connection conn = pool.getConnection()) {
+            return ReportQueryPlans.check(conn, YearMonth.now());
+        }
+    }
+
+    /**
+     * Builds the cursor that continues a history into {@link ActivityArchive} after the live
+     * table ran out of rows. Archived months are all older than the live ones, so the keyset
+     * position carries over unchanged. The archive is not read; its subscriber index only
+     * tells whether there is anything to continue with.
+     *
+     * @param subscriberCode Only this subscriber's entries, or null for all entries.
+     * @param cursor         The cursor the page was requested with, or null for the first page.
+     * @param lastTimestamp  The timestamp of the last live entry on the page, or null if there was none.
+     * @param lastId         The id of the last live entry on the page.
+     * @return The archive cursor, or null if the archive holds no older entries.
+     */
+    private String archiveCursor(String subscriberCode, String cursor, Timestamp lastTimestamp, long lastId) {
+        long beforeMillis = Long.MAX_VALUE;
+        long beforeId = Long.MAX_VALUE;
+        if (lastTimestamp != null) {
+            beforeMillis = lastTimestamp.getTime();
+            beforeId = lastId;
+        } else if (cursor != null) {
+            long[] position = parseCursor(cursor);
+            beforeMillis = position[0];
+            beforeId = position[1];
+        }
+        if (!activityArchive.hasRowsBefore(subscriberCode, beforeMillis)) {
+            return null;
+        }
+        return ARCHIVE_CURSOR_PREFIX + beforeMillis + "_" + beforeId;
+    }
+
+    /**
+     * Reads one page of archived entries for an archive cursor.
+     *
+     * @param subscriberCode Only this subscriber's entries, or null for all entries, which are then listed with the subscriber's name.
+     * @param cursor         An archive cursor.
+     * @param limit          The page size.
+     * @param continuation   Whether the page continues a page already shown to the client.
+     * @return An {@link ActivityPage} with the entries and the archive cursor for the next page.
+     */
+    private ActivityPage readArchivePage(String subscriberCode, String cursor, int limit, boolean continuation) {
+        ArrayList<ActivityInfo> page = new ArrayList<>();
+        long[] position;
+        try {
+            position = parseCursor(cursor.substring(ARCHIVE_CURSOR_PREFIX.length()));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Failed to read archived activity: " + e.getMessage());
+            return new ActivityPage(page, null, continuation);
+        }
+        String nextCursor = null;
+        Timestamp lastTimestamp = null;
+        long lastId = 0;
+        for (ActivityArchive.Record record : activityArchive.readPage(subscriberCode, position[0], position[1], limit + 1)) {
+            if (page.size() == limit) {
+                nextCursor = ARCHIVE_CURSOR_PREFIX + formatCursor(lastTimestamp, lastId);
+                break;
+            }
+            String timestamp = record.timestamp.toLocalDateTime().format(ARCHIVE_TIMESTAMP_FORMAT);
+            if (subscriberCode != null) {
+                page.add(new ActivityInfo(record.activityType, record.details, timestamp));
+            } else {
+                SubscriberInfo subscriber = record.subscriberCode == null ? null : findSubscriberByCode(record.subscriberCode);
+                page.add(new ActivityInfo(record.subscriberCode, subscriber == null ? null : subscriber.getUserName(),
+                    record.activityType, record.details, timestamp));
+            }
+            lastTimestamp = record.timestamp;
+            lastId = record.id;
+        }
+        return new ActivityPage(page, nextCursor, continuation);
+    }
+
+    private static boolean isArchiveCursor(String cursor) {
+        return cursor != null && cursor.startsWith(ARCHIVE_CURSOR_PREFIX);
+    }
+
+    private static int clampPageSize(int pageSize) {
+        if (pageSize <= 0) {
+            return DEFAULT_ACTIVITY_PAGE_SIZE;
+        }
+        return Math.min(pageSize, MAX_ACTIVITY_PAGE_SIZE);
+    }
+
+    /**
+     * Encodes the keyset position of the last entry on a page as "epochMillis_id".
+     */
+    private static String formatCursor(Timestamp timestamp, long id) {
+        return timestamp.getTime() + "_" + id;
+    }
+
+    /**
+     * Binds the (timestamp, timestamp, id) parameters of a keyset condition, if there is a cursor.
+     *
+     * @return The index of the next parameter to bind.
+     * @throws IllegalArgumentException If the cursor is malformed.
+     */
+    private static int bindCursor(PreparedStatement stmt, int index, String cursor) throws SQLException {
+        if (cursor == null) {
+            return index;
+        }
+        long[] position = parseCursor(cursor);
+        Timestamp timestamp = new Timestamp(position[0]);
+        stmt.setTimestamp(index, timestamp);
+        stmt.setTimestamp(index + 1, timestamp);
+        stmt.setLong(index + 2, position[1]);
+        return index + 3;
+    }
+
+    /**
+     * @return The {epochMillis, id} keyset position encoded in a cursor.
+     * @throws IllegalArgumentException If the cursor is malformed.
+     */
+    private static long[] parseCursor(String cursor) {
+        String[] parts = cursor.split("_", 2);
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Malformed activity cursor: " + cursor);
+        }
+        return new long[] { Long.parseLong(parts[0]), Long.parseLong(parts[1]) };
+    }
+
+    /**
+     * Returns the first day of a month, for half-open {@code [start, next start)} range filters
+     * that can use the date column of the rollup tables. A month of 13 rolls over into January.
+     *
+     * @param year  The year.
+     * @param month The month (1-12, or 13 for January of the following year).
+     * @return The first day of the month.
+     */
+    private static java.sql.Date monthStartDate(int year, int month) {
+        return java.sql.Date.valueOf(LocalDate.of(year, 1, 1).plusMonths(month - 1));
+    }
+}
@@ -0,0 +1,329 @@
+package backend;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Per-method latency, row-count and error metrics for the storage layer, plus a slow-query log.
+ * <p>
+ * {@link #instrument(BParkRepository)} wraps a repository in a proxy that times every call and
+ * records it under the method name, as the {@code db.method.<name>} metric. {@link ConnectionPool}
+ * wraps every statement it hands out with {@link #wrapStatement}, which counts the rows read and
+ * written and the failed statements, and attributes them to the repository method running on the
+ * same thread; statements run by background components (the activity log writer, the archiver,
+ * the analytics refresh) are recorded under {@code db.method.background}. SQL errors are counted
+ * even when the repository method catches them and returns an empty result.
+ * <p>
+ * Any statement slower than {@code bpark.db.slowQueryMs} is written to the slow-query log on
+ * System.err with its SQL and bind values, and counted in the {@code db.slowQueries} metric.
+ */
+public final class DbInstrumentation {
+    /** Whether the repository and its statements are instrumented at all. */
+    public static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("bpark.db.instrumentation", "true"));
+    private static final long SLOW_QUERY_NANOS = TimeUnit.MILLISECONDS.toNanos(Long.getLong("bpark.db.slowQueryMs", 200L));
+    private static final int MAX_LOGGED_VALUE_LENGTH = 100;
+    private static final String BACKGROUND = "background";
+
+    private static final Map<String, MethodStats> methods = new ConcurrentHashMap<>();
+    private static final ThreadLocal<MethodStats> currentMethod = new ThreadLocal<>();
+    private static final AtomicLong slowQueries = new AtomicLong();
+    private static final AtomicReference<String> slowestQuery = new AtomicReference<>();
+    private static final AtomicLong slowestNanos = new AtomicLong();
+
+    static {
+        ServerMetrics.register("db.slowQueries", DbInstrumentation::describeSlowQueries);
+    }
+
+    private DbInstrumentation() {
+    }
+
+    /**
+     * The metrics of one repository method.
+     */
+    private static final class MethodStats {
+        final String name;
+        final LatencyHistogram latency = new LatencyHistogram();
+        final AtomicLong errors = new AtomicLong();
+        final AtomicLong rowsRead = new AtomicLong();
+        final AtomicLong rowsWritten = new AtomicLong();
+        final AtomicLong statements = new AtomicLong();
+
+        MethodStats(String name) {
+            this.name = name;
+        }
+
+        String describe() {
+            return String.format("calls=%d errors=%d statements=%d rowsRead=%d rowsWritten=%d %s",
+                latency.count(), errors.get(), statements.get(), rowsRead.get(), rowsWritten.get(), latency.describe());
+        }
+    }
+
+    /**
+     * Wraps a repository so that every call is timed and recorded under its method name.
+     *
+     * @param repository The repository to wrap.
+     * @return The instrumented repository, or the same repository if instrumentation is disabled.
+     */
+    public static BParkRepository instrument(BParkRepository repository) {
+        if (!ENABLED) {
+            return repository;
+        }
+        return (BParkRepository) Proxy.newProxyInstance(
+            BParkRepository.class.getClassLoader(),
+            new Class<?>[] { BParkRepository.class },
+            new RepositoryHandler(repository)
+        );
+    }
+
+    /**
+     * Wraps a statement so that its executions are counted, timed against the slow-query
+     * threshold and attributed to the repository method on the current thread.
+     *
+     * @param statement The statement created by the driver.
+     * @param type      The JDBC interface the caller expects.
+     * @param sql       The SQL of a prepared statement, or null for a plain statement.
+     * @return The wrapped statement.
+     */
+    static Statement wrapStatement(Statement statement, Class<? extends Statement> type, String sql) {
+        return (Statement) Proxy.newProxyInstance(
+            Statement.class.getClassLoader(),
+            new Class<?>[] { type },
+            new StatementHandler(statement, sql)
+        );
+    }
+
+    /**
+     * @param methodName The name of a repository method.
+     * @return Its metrics, registered with {@link ServerMetrics} the first time they are needed.
+     */
+    private static MethodStats statsFor(String methodName) {
+        MethodStats stats = methods.get(methodName);
+        if (stats == null) {
+            stats = methods.computeIfAbsent(methodName, name -> {
+                MethodStats created = new MethodStats(name);
+                ServerMetrics.register("db.method." + name, created::describe);
+                return created;
+            });
+        }
+        return stats;
+    }
+
+    private static MethodStats currentStats() {
+        MethodStats stats = currentMethod.get();
+        return stats != null ? stats : statsFor(BACKGROUND);
+    }
+
+    private static String describeSlowQueries() {
+        String slowest = slowestQuery.get();
+        return String.format("thresholdMs=%d count=%d%s", TimeUnit.NANOSECONDS.toMillis(SLOW_QUERY_NANOS), slowQueries.get(),
+            slowest == null ? "" : String.format(" slowestMs=%.1f slowest=%s", slowestNanos.get() / 1_000_000.0, slowest));
+    }
+
+    private static void logSlowQuery(String methodName, String sql, List<Object> binds, int batchSize, long nanos) {
+        slowQueries.incrementAndGet();
+        String query = singleLine(sql);
+        StringBuilder sb = new StringBuilder("Slow query (")
+            .append(TimeUnit.NANOSECONDS.toMillis(nanos)).append(" ms) in ").append(methodName).append(": ").append(query);
+        if (binds != null && !binds.isEmpty()) {
+            sb.append(" binds=[");
+            for (int i = 0; i < binds.size(); i++) {
+                sb.append(i == 0 ? "" : ", ").append(renderValue(binds.get(i)));
+            }
+            sb.append(']');
+        }
+        if (batchSize > 1) {
+            sb.append(" batch=").append(batchSize).append(" (binds of the last row)");
+        }
+        System.err.println(sb);
+        long previous;
+        do {
+            previous = slowestNanos.get();
+            if (nanos <= previous) {
+                return;
+            }
+        } while (!slowestNanos.compareAndSet(previous, nanos));
+        slowestQuery.set(methodName + ": " + query);
+    }
+
+    private static String renderValue(Object value) {
+        if (value == null) {
+            return "NULL";
+        }
+        String text = value instanceof String ? "'" + value + "'" : String.valueOf(value);
+        return text.length() > MAX_LOGGED_VALUE_LENGTH ? text.substring(0, MAX_LOGGED_VALUE_LENGTH) + "..." : text;
+    }
+
+    private static String singleLine(String sql) {
+        return sql == null ? "?" : sql.replaceAll("\\s+", " ").trim();
+    }
+
+    private static Object invokeTarget(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Times repository calls and makes the method visible to the statements it runs.
+     */
+    private static final class RepositoryHandler implements InvocationHandler {
+        private final BParkRepository target;
+
+        RepositoryHandler(BParkRepository target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                return invokeTarget(target, method, args);
+            }
+            MethodStats stats = statsFor(method.getName());
+            MethodStats outer = currentMethod.get();
+            currentMethod.set(stats);
+            long start = System.nanoTime();
+            try {
+                return invokeTarget(target, method, args);
+            } catch (Throwable t) {
+                stats.errors.incrementAndGet();
+                throw t;
+            } finally {
+                stats.latency.record(System.nanoTime() - start);
+                if (outer == null) {
+                    currentMethod.remove();
+                } else {
+                    currentMethod.set(outer);
+                }
+            }
+        }
+    }
+
+    /**
+     * Records bind values and measures executions of one statement.
+     */
+    private static final class StatementHandler implements InvocationHandler {
+        private final Statement target;
+        private final String sql;
+        private final List<Object> binds = new ArrayList<>();
+        private int batchSize;
+
+        StatementHandler(Statement target, String sql) {
+            this.target = target;
+            this.sql = sql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                bind((Integer) args[0], name.equals("setNull") ? null : args[1]);
+                return invokeTarget(target, method, args);
+            }
+            switch (name) {
+                case "clearParameters":
+                    binds.clear();
+                    return invokeTarget(target, method, args);
+                case "addBatch":
+                    batchSize++;
+                    return invokeTarget(target, method, args);
+                case "clearBatch":
+                    batchSize = 0;
+                    return invokeTarget(target, method, args);
+                case "getResultSet":
+                    return countRows((ResultSet) invokeTarget(target, method, args), currentStats());
+                case "execute":
+                case "executeQuery":
+                case "executeUpdate":
+                case "executeLargeUpdate":
+                case "executeBatch":
+                case "executeLargeBatch":
+                    return execute(name, method, args);
+                default:
+                    return invokeTarget(target, method, args);
+            }
+        }
+
+        private void bind(int index, Object value) {
+            while (binds.size() < index) {
+                binds.add(null);
+            }
+            binds.set(index - 1, value);
+        }
+
+        private Object execute(String name, Method method, Object[] args) throws Throwable {
+            MethodStats stats = currentStats();
+            String statementSql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : sql;
+            int batchRows = batchSize;
+            stats.statements.incrementAndGet();
+            long start = System.nanoTime();
+            Object result;
+            try {
+                result = invokeTarget(target, method, args);
+            } catch (SQLException e) {
+                stats.errors.incrementAndGet();
+                throw e;
+            } finally {
+                long elapsed = System.nanoTime() - start;
+                if (elapsed >= SLOW_QUERY_NANOS) {
+                    logSlowQuery(stats.name, statementSql, statementSql == sql ? binds : null, batchRows, elapsed);
+                }
+                if (name.endsWith("Batch")) {
+                    batchSize = 0;
+                }
+            }
+            switch (name) {
+                case "executeQuery":
+                    return countRows((ResultSet) result, stats);
+                case "executeUpdate":
+                    stats.rowsWritten.addAndGet(Math.max(0, (Integer) result));
+                    return result;
+                case "executeLargeUpdate":
+                    stats.rowsWritten.addAndGet(Math.max(0, (Long) result));
+                    return result;
+                case "executeBatch":
+                    for (int count : (int[]) result) {
+                        stats.rowsWritten.addAndGet(count == Statement.SUCCESS_NO_INFO ? 1 : Math.max(0, count));
+                    }
+                    return result;
+                case "executeLargeBatch":
+                    for (long count : (long[]) result) {
+                        stats.rowsWritten.addAndGet(count == Statement.SUCCESS_NO_INFO ? 1 : Math.max(0, count));
+                    }
+                    return result;
+                default:
+                    return result;
+            }
+        }
+
+        private static ResultSet countRows(ResultSet resultSet, MethodStats stats) {
+            if (resultSet == null) {
+                return null;
+            }
+            return (ResultSet) Proxy.newProxyInstance(
+                ResultSet.class.getClassLoader(),
+                new Class<?>[] { ResultSet.class },
+                (proxy, method, args) -> {
+                    Object result = invokeTarget(resultSet, method, args);
+                    if ("next".equals(method.getName()) && Boolean.TRUE.equals(result)) {
+                        stats.rowsRead.incrementAndGet();
+                    }
+                    return result;
+                }
+            );
+        }
+    }
+}
@@ -3,28 +3,33 @@ package backend;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.sql.Timestamp;
+import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import javafx.application.Platform;
 
-import common.ActivityInfo;
+import common.ActivityPage;
 import common.DailyLateData;
 import common.MonthlyReportData;
 import common.OrderInfo;
 import common.SlotOccupancyData;
 import common.SubscriberInfo;
 import common.SubscriberParkingData;
+import common.UsageSliceData;
 import gui.ServerUi;
 import ocsf.server.*;
 
@@ -32,15 +37,63 @@ import ocsf.server.*;
  * Represents the EchoServer class.
  */
 public class EchoServer extends AbstractServer {
-    private DBController db;
+    private final BParkRepository db;
     private final Map<ConnectionToClient, SubscriberInfo> loggedInSubscribers = new ConcurrentHashMap<>();
+    private static final DateTimeFormatter EMAIL_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
     private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final ExecutorService reminderSenders = Executors.newFixedThreadPool(Integer.getInteger("bpark.reminders.senderThreads", 8));
+    private final ReportCache reportCache = new ReportCache(TimeUnit.SECONDS.toMillis(Long.getLong("bpark.reportCache.ttlSeconds", 60L)));
 
+    /**
+     * Creates the server on the storage backend selected by the {@code bpark.storage} system
+     * property: {@code mysql} (the default) or {@code memory}.
+     * @param port the port to listen on
+     */
     public EchoServer(int port) {
+        this(port, createRepository(System.getProperty("bpark.storage", "mysql")));
+    }
+
+    /**
+     * Creates the server on the given storage backend.
+     * @param port the port to listen on
+     * @param repository the storage backend
+     */
+    public EchoServer(int port, BParkRepository repository) {
         super(port);
-        db = new DBController();
+        db = repository;
+        ServerMetrics.register("cache.reports", reportCache::describe);
         startReminderService();
         startCancellationService();
+        startSlotReconciliationService();
+    }
+
+    /**
+     * startSlotReconciliationService method.
+     * Periodically checks the in-memory slot occupancy, reservation capacity counters and the
+     * indexes of active sessions and reservations against the activeparking and parkingorders tables.
+     * The interval can be set with the {@code bpark.slots.reconcileIntervalSeconds} system property.
+     */
+    private void startSlotReconciliationService() {
+        long intervalSeconds = Long.getLong("bpark.slots.reconcileIntervalSeconds", 60L);
+        Runnable reconcileTask = () -> {
+            try {
+                int repaired = db.reconcileSlotOccupancy();
+                if (repaired > 0) {
+                    System.out.println("Slot reconciliation: repaired " + repaired + " slots from the database.");
+                }
+                int repairedBuckets = db.reconcileReservationCapacity();
+                if (repairedBuckets > 0) {
+                    System.out.println("Reservation capacity reconciliation: repaired " + repairedBuckets + " time buckets from the database.");
+                }
+                int repairedEntries = db.reconcileSessionIndexes();
+                if (repairedEntries > 0) {
+                    System.out.println("Session index reconciliation: repaired " + repairedEntries + " sessions and reservations from the database.");
+                }
+            } catch (Exception e) {
+                System.err.println("Error in slot reconciliation service: " + e.getMessage());
+            }
+        };
+        scheduler.scheduleAtFixedRate(reconcileTask, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
     }
     /**
      * startCancellationService method.
@@ -54,27 +107,30 @@ public class EchoServer extends AbstractServer {
                 if (!cancelledOrders.isEmpty()) {
                     System.out.println("Cancellation service: Found and cancelled " + cancelledOrders.size() + " late reservations.");
 
-                    // Loop through each cancelled order to send an email and handle penalties
+                    // Apply all penalties in one batched transaction
+                    List<String> lateSubscribers = new ArrayList<>();
+                    for (OrderInfo order : cancelledOrders) {
+                        lateSubscribers.add(order.getSubscriberId());
+                    }
+                    Map<String, PenaltyResult> penalties = db.applyLatePenalties(lateSubscribers);
+
                     for (OrderInfo order : cancelledOrders) {
                         // Send the cancellation email
                         EmailService.sendLateReservationCancellationEmail(
                             order.getUserEmailForEmail(),
                             order.getUserNameForEmail(),
                             order.getConfirmationCode(),
-                            order.getScheduledTime()
+                            formatForEmail(order.getScheduledTime())
                         );
-
-                        // Apply penalty: Increment late count and potentially freeze the account
-                        db.incrementLateCountAndFreeze(order.getSubscriberId());
-
-                        // Check if the user was frozen as a result of this cancellation
-                        SubscriberInfo subInfo = DBController.findSubscriberByCode(order.getSubscriberId());
-                        if (subInfo != null && subInfo.isFrozen()) {
-                            // If frozen, send the account frozen notification email
+                    }
+                    // Notify each frozen subscriber once per sweep, with their final late count
+                    for (OrderInfo order : cancelledOrders) {
+                        PenaltyResult penalty = penalties.remove(order.getSubscriberId());
+                        if (penalty != null && penalty.isFrozen()) {
                             EmailService.sendAccountFrozenEmail(
-                                subInfo.getEmail(),
-                                subInfo.getUserName(),
-                                subInfo.getLateCount()
+                                order.getUserEmailForEmail(),
+                                order.getUserName(),
+                                penalty.getLateCount()
                             );
                         }
                     }
@@ -90,23 +146,43 @@ public class EchoServer extends AbstractServer {
     
     /**
      * startReminderService method.
+     * Every minute, claims all reminders that are due in one statement and sends them in
+     * parallel on the reminder sender pool, so a slow SMTP send does not delay the others.
+     * Once every send has finished, the results are recorded in one batch; failed reminders
+     * are released and retried by the next sweep.
      */
     private void startReminderService() {
         Runnable reminderTask = () -> {
             try {
                 System.out.println("Reminder service running...");
-                ArrayList<OrderInfo> ordersToRemind = db.getOrdersForReminder();
+                ArrayList<OrderInfo> ordersToRemind = db.claimOrdersForReminder();
                 if (!ordersToRemind.isEmpty()) {
                     System.out.println("Found " + ordersToRemind.size() + " orders needing a reminder.");
-                    for (OrderInfo order : ordersToRemind) {
-                        EmailService.sendReminderEmail(
-                            order.getUserEmailForEmail(),
-                            order.getUserNameForEmail(),
-                            order.getConfirmationCode(),
-                            order.getScheduledTime()
-                        );
-                        db.markReminderAsSent(order.getConfirmationCode());
+                    List<String> sent = Collections.synchronizedList(new ArrayList<>());
+                    List<String> failed = Collections.synchronizedList(new ArrayList<>());
+                    CompletableFuture<?>[] sends = new CompletableFuture<?>[ordersToRemind.size()];
+                    for (int i = 0; i < sends.length; i++) {
+                        OrderInfo order = ordersToRemind.get(i);
+                        sends[i] = CompletableFuture.runAsync(() -> {
+                            boolean ok = false;
+                            try {
+                                ok = EmailService.sendReminderEmail(
+                                    order.getUserEmailForEmail(),
+                                    order.getUserNameForEmail(),
+                                    order.getConfirmationCode(),
+                                    formatForEmail(order.getScheduledTime())
+                                );
+                            } finally {
+                                (ok ? sent : failed).add(order.getConfirmationCode());
+                            }
+                        }, reminderSenders);
                     }
+                    CompletableFuture.allOf(sends).whenComplete((ignored, error) -> {
+                        db.recordReminderResults(new ArrayList<>(sent), new ArrayList<>(failed));
+                        if (!failed.isEmpty()) {
+                            System.err.println("Reminder service: " + failed.size() + " reminders failed and will be retried.");
+                        }
+                    });
                 }
             } catch (Exception e) {
                 System.err.println("Error in reminder service: " + e.getMessage());
@@ -191,23 +267,55 @@ public class EchoServer extends AbstractServer {
     protected void serverStopped() {
         System.out.println("Server has stopped listening for connections.");
         scheduler.shutdownNow();
+        reminderSenders.shutdown();
+    }
+
+    /**
+     * formatForEmail method.
+     * @param epochMillis a time from an {@link OrderInfo}
+     * @return the time as 'yyyy-MM-dd HH:mm' in the server's time zone, or "N/A" if not set
+     */
+    private static String formatForEmail(long epochMillis) {
+        if (epochMillis == 0) {
+            return "N/A";
+        }
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault()).format(EMAIL_TIME_FORMAT);
+    }
+
+    /**
+     * createRepository method.
+     * @param storage "memory" for the in-memory backend, anything else for MySQL
+     * @return the storage backend, instrumented with per-method metrics
+     */
+    private static BParkRepository createRepository(String storage) {
+        if ("memory".equalsIgnoreCase(storage)) {
+            System.out.println("Using in-memory storage; no data will be persisted.");
+            return DbInstrumentation.instrument(new InMemoryRepository());
+        }
+        return DbInstrumentation.instrument(new DBController());
     }
 
     /**
      * main method.
+     * Usage: {@code EchoServer [port] [--in-memory]}
      * @param args the args
      */
     public static void main(String[] args) {
         int port = 5555;
-        if (args.length > 0) {
+        String storage = System.getProperty("bpark.storage", "mysql");
+        for (String arg : args) {
+            if ("--in-memory".equals(arg)) {
+                storage = "memory";
+                continue;
+            }
             try {
-                port = Integer.parseInt(args[0]);
+                port = Integer.parseInt(arg);
             } catch (Throwable t) {
                 System.out.println("Invalid port number. Using default 5555.");
             }
         }
         System.out.println("Open server on port " + port);
-        EchoServer server = new EchoServer(port);
+        EchoServer server = new EchoServer(port, createRepository(storage));
         try {
             server.listen();
         } catch (Exception ex) {
@@ -291,7 +399,7 @@ public class EchoServer extends AbstractServer {
                 handleGetAllSubscribers(client);
                 break;
             case "GET_ALL_ACTIVITY_LOGS":
-                handleGetAllActivityLogs(client);
+                handleGetAllActivityLogs(payload, client);
                 break;
             case "SET_FREEZE_STATUS":
                 handleSetFreezeStatus(payload);
@@ -308,6 +416,12 @@ public class EchoServer extends AbstractServer {
             case "GET_SLOT_OCCUPANCY_REPORT":
                 handleGetSlotOccupancyReport(payload, client);
                 break;
+            case "GET_USAGE_SLICE":
+                handleGetUsageSlice(payload, client);
+                break;
+            case "GET_SERVER_METRICS":
+                handleGetServerMetrics(client);
+                break;
             default:
                 System.err.println("Unknown command received: " + parts[0]);
                 break;
@@ -324,7 +438,7 @@ public class EchoServer extends AbstractServer {
     private void handleLogin(String payload, ConnectionToClient client) {
         String subscriptionId = payload.trim();
         System.out.println("Trying to login with subscriptionId: " + subscriptionId);
-        SubscriberInfo info = DBController.findSubscriberByCode(subscriptionId);
+        SubscriberInfo info = db.findSubscriberByCode(subscriptionId);
         try {
             if (info != null) {
                 if (info.isFrozen()) {
@@ -353,7 +467,7 @@ public class EchoServer extends AbstractServer {
         if (subInfo != null) {
             db.logActivity(subInfo.getSubscriptionCode(), "VIEW_SLOTS", "Viewed parking lot status");
         }
-        ArrayList<Integer> occupied = DBController.getOccupiedSlots();
+        ArrayList<Integer> occupied = db.getOccupiedSlots();
         try {
             client.sendToClient("show_slots");
             client.sendToClient(occupied);
@@ -370,7 +484,7 @@ public class EchoServer extends AbstractServer {
         SubscriberInfo subInfo = getLoggedInSubscriber(client, "PARK");
         if (subInfo == null) return;
 
-        OrderInfo existingOrder = DBController.getOrderBySubscriberId(subInfo.getSubscriptionCode());
+        OrderInfo existingOrder = db.getOrderBySubscriberId(subInfo.getSubscriptionCode());
         if (existingOrder != null) {
             try {
                 client.sendToClient("PARK_FAILED:You already have an active parking session.");
@@ -379,22 +493,23 @@ public class EchoServer extends AbstractServer {
             return;
         }
 
-        ArrayList<Integer> occupied = DBController.getOccupiedSlots();
-        int totalSlots = 100;
-        ArrayList<Integer> allSlots = new ArrayList<>();
-        for (int i = 1; i <= totalSlots; i++) allSlots.add(i);
-
-        allSlots.removeAll(occupied);
-        if (allSlots.isEmpty()) {
+        int assignedSlot = db.claimFreeSlot();
+        if (assignedSlot == -1) {
             try {
                 client.sendToClient("PARK_FULL");
             } catch (IOException e) {
                 System.out.println("Error sending PARK_FULL: " + e.getMessage());
             }
         } else {
-            int assignedSlot = allSlots.get(new java.util.Random().nextInt(allSlots.size()));
             String confirmationCode = generateRandomCode(6);
-            db.registerParkingSlot(assignedSlot, confirmationCode, subInfo.getSubscriptionCode());
+            if (!db.registerParkingSlot(assignedSlot, confirmationCode, subInfo.getSubscriptionCode())) {
+                try {
+                    client.sendToClient("PARK_FAILED:Could not register the parking session. Please try again.");
+                } catch (IOException e) {
+                    System.out.println("Error sending PARK_FAILED: " + e.getMessage());
+                }
+                return;
+            }
             db.logActivity(subInfo.getSubscriptionCode(), "PARK_CAR", "Parked in slot " + assignedSlot + ". Code: " + confirmationCode);
             try {
                 client.sendToClient("PARK_CONFIRMED:" + assignedSlot + ":" + confirmationCode);
@@ -454,24 +569,23 @@ public class EchoServer extends AbstractServer {
                 return;
             }
 
-            // Lateness Check
-            Timestamp endParkTime = Timestamp.valueOf(orderToRelease.getEndParkTime());
-            boolean isLate = LocalDateTime.now().isAfter(endParkTime.toLocalDateTime());
+            // Lateness Check; an end time of 0 means it is NULL in the database, so the session cannot be late.
+            boolean isLate = orderToRelease.getEndParkTime() != 0 && System.currentTimeMillis() > orderToRelease.getEndParkTime();
 
             boolean success = db.deleteOrderByConfirmationCode(code);
 
             if (success) {
+                reportCache.sessionArchived(orderToRelease.getTimeOfPlacingOrder());
                 if (isLate) {
                     db.logActivity(orderToRelease.getSubscriberId(), "LATE_CAR_RETRIEVAL", "Car was taken late from slot " + orderToRelease.getParkingSpace());
-                    db.incrementLateCountAndFreeze(orderToRelease.getSubscriberId());
+                    PenaltyResult penalty = db.incrementLateCountAndFreeze(orderToRelease.getSubscriberId());
                     
                     // Send appropriate email
-                    SubscriberInfo subInfoForEmail = DBController.findSubscriberByCode(orderToRelease.getSubscriberId());
-                    if (subInfoForEmail != null) {
-                        if (subInfoForEmail.isFrozen()) {
-                            EmailService.sendAccountFrozenEmail(subInfoForEmail.getEmail(), subInfoForEmail.getUserName(), subInfoForEmail.getLateCount());
+                    if (penalty != null) {
+                        if (penalty.isFrozen()) {
+                            EmailService.sendAccountFrozenEmail(requestingSub.getEmail(), requestingSub.getUserName(), penalty.getLateCount());
                         } else {
-                            EmailService.sendLateRetrievalEmail(subInfoForEmail.getEmail(), subInfoForEmail.getUserName());
+                            EmailService.sendLateRetrievalEmail(requestingSub.getEmail(), requestingSub.getUserName());
                         }
                     }
                 } else {
@@ -500,10 +614,9 @@ public class EchoServer extends AbstractServer {
         
         try {
             // NEW: First, check if the user is already late.
-            OrderInfo currentOrder = DBController.getOrderBySubscriberId(subInfo.getSubscriptionCode());
-            if (currentOrder != null && currentOrder.getEndParkTime() != null) {
-                Timestamp endParkTime = Timestamp.valueOf(currentOrder.getEndParkTime());
-                if (LocalDateTime.now().isAfter(endParkTime.toLocalDateTime())) {
+            OrderInfo currentOrder = db.getOrderBySubscriberId(subInfo.getSubscriptionCode());
+            if (currentOrder != null && currentOrder.getEndParkTime() != 0) {
+                if (System.currentTimeMillis() > currentOrder.getEndParkTime()) {
                     client.sendToClient("EXTEND_FAILED;Cannot extend, your parking session has expired.");
                     db.logActivity(subInfo.getSubscriptionCode(), "EXTEND_ATTEMPT_DENIED", "Denied: Parking session already expired.");
                     return;
@@ -553,7 +666,7 @@ public class EchoServer extends AbstractServer {
         SubscriberInfo subInfo = getLoggedInSubscriber(client, "FORGOT_CODE");
         if (subInfo == null) return;
 
-        OrderInfo activeOrder = DBController.getOrderBySubscriberId(subInfo.getSubscriptionCode());
+        OrderInfo activeOrder = db.getOrderBySubscriberId(subInfo.getSubscriptionCode());
         if (activeOrder != null && activeOrder.getConfirmationCode() != null && !activeOrder.getConfirmationCode().isEmpty()) {
             EmailService.sendConfirmationCodeEmail(subInfo.getEmail(), activeOrder.getConfirmationCode(), subInfo.getUserName());
             db.logActivity(subInfo.getSubscriptionCode(), "FORGOT_CODE", "Requested confirmation code reminder via email.");
@@ -587,14 +700,6 @@ public class EchoServer extends AbstractServer {
         }
 
         try {
-            int scheduledCount = db.countScheduledOrders();
-            int futureCapacityLimit = 40; // 40% of 100 slots
-            if (scheduledCount >= futureCapacityLimit) {
-                client.sendToClient("FUTURE_PARK_FAILED;Future reservations are currently full. Please try parking upon arrival.");
-                db.logActivity(subInfo.getSubscriptionCode(), "FUTURE_PARK_FAIL", "Booking failed, future reservation capacity is full.");
-                return;
-            }
-
             String dateTimeStr = parts[0] + " " + parts[1];
             ZoneId clientInputZone = ZoneId.of("Asia/Jerusalem");
             LocalDateTime ldt = LocalDateTime.parse(dateTimeStr, DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm"));
@@ -613,6 +718,12 @@ public class EchoServer extends AbstractServer {
             }
             
             Timestamp scheduledTimestamp = Timestamp.from(clientZonedDateTime.toInstant());
+            // At most 40% of the slots may be reserved at any one time; checked in memory per time bucket.
+            if (!db.hasReservationCapacity(scheduledTimestamp)) {
+                client.sendToClient("FUTURE_PARK_FAILED;Future reservations are currently full. Please try parking upon arrival.");
+                db.logActivity(subInfo.getSubscriptionCode(), "FUTURE_PARK_FAIL", "Booking failed, future reservation capacity is full.");
+                return;
+            }
             int availableSlot = db.findAvailableFutureSlot(scheduledTimestamp);
 
             if (availableSlot == -1) {
@@ -670,7 +781,7 @@ public class EchoServer extends AbstractServer {
             try {
                 if (success) {
                     db.logActivity(code, "UPDATE_INFO", "Updated personal details.");
-                    SubscriberInfo updatedInfo = DBController.findSubscriberByCode(code);
+                    SubscriberInfo updatedInfo = db.findSubscriberByCode(code);
                     if (updatedInfo != null) {
                         client.sendToClient("UPDATE_SUCCESS");
                         client.sendToClient(updatedInfo);
@@ -697,7 +808,7 @@ public class EchoServer extends AbstractServer {
         if (parts.length == 5) {
             String code = parts[0], name = parts[1], phone = parts[2], email = parts[3], id = parts[4];
             System.out.println("Registering subscriber: " + name + ", " + email);
-            DBController.insertSubscriber(code, name, phone, email, id);
+            db.insertSubscriber(code, name, phone, email, id);
         } else {
             System.err.println("Malformed REGISTER_SUBSCRIBER message: " + payload);
         }
@@ -709,10 +820,14 @@ public class EchoServer extends AbstractServer {
      * @param client the client
      */
     private void handleGetHistory(String payload, ConnectionToClient client) {
-        String subCode = payload.trim();
+        // Payload: subscriberCode[;cursor[;pageSize]]
+        String[] parts = payload.split(";");
+        String subCode = parts[0].trim();
+        String cursor = pageCursor(parts, 1);
+        int pageSize = pageSize(parts, 2);
         try {
-            ArrayList<ActivityInfo> history = db.getHistoryForSubscriber(subCode);
-            client.sendToClient(history);
+            ActivityPage page = db.getHistoryPageForSubscriber(subCode, cursor, pageSize);
+            client.sendToClient(page);
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -789,14 +904,48 @@ public class EchoServer extends AbstractServer {
      * handleGetAllActivityLogs method.
      * @param client the client
      */
-    private void handleGetAllActivityLogs(ConnectionToClient client) {
+    private void handleGetAllActivityLogs(String payload, ConnectionToClient client) {
+        // Payload: [cursor[;pageSize]]
+        String[] parts = payload.split(";");
+        String cursor = pageCursor(parts, 0);
+        int pageSize = pageSize(parts, 1);
         try {
-            ArrayList<ActivityInfo> allActivities = db.getAllActivities();
-            client.sendToClient(allActivities);
+            ActivityPage page = db.getActivitiesPage(cursor, pageSize);
+            client.sendToClient(page);
         } catch (IOException e) {
             System.err.println("Failed to send all activity logs to manager: " + e.getMessage());
         }
     }
+
+    /**
+     * Reads an optional page cursor from a split payload.
+     * @param parts the payload parts
+     * @param index the position of the cursor
+     * @return the cursor, or null for the first page
+     */
+    private static String pageCursor(String[] parts, int index) {
+        if (parts.length <= index || parts[index].trim().isEmpty()) {
+            return null;
+        }
+        return parts[index].trim();
+    }
+
+    /**
+     * Reads an optional page size from a split payload.
+     * @param parts the payload parts
+     * @param index the position of the page size
+     * @return the requested page size, or 0 for the server default
+     */
+    private static int pageSize(String[] parts, int index) {
+        if (parts.length <= index) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(parts[index].trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
     
     /**
      * handleSetFreezeStatus method.
@@ -831,7 +980,7 @@ public class EchoServer extends AbstractServer {
             try {
                 int year = Integer.parseInt(parts[0]);
                 int month = Integer.parseInt(parts[1]);
-                ArrayList<MonthlyReportData> reportData = db.getMonthlyParkingReport(year, month);
+                ArrayList<MonthlyReportData> reportData = reportCache.get(ReportCache.ReportType.MONTHLY_PARKING, year, month, () -> db.getMonthlyParkingReport(year, month));
                 client.sendToClient(reportData);
             } catch (NumberFormatException e) {
                 System.err.println("Invalid year/month format in report request: " + payload);
@@ -852,7 +1001,7 @@ public class EchoServer extends AbstractServer {
             try {
                 int year = Integer.parseInt(parts[0]);
                 int month = Integer.parseInt(parts[1]);
-                ArrayList<DailyLateData> reportData = db.getDailyLatenessReport(year, month);
+                ArrayList<DailyLateData> reportData = reportCache.get(ReportCache.ReportType.DAILY_LATENESS, year, month, () -> db.getDailyLatenessReport(year, month));
                 client.sendToClient(reportData);
             } catch (NumberFormatException e) {
                 System.err.println("Invalid year/month format in lateness report request: " + payload);
@@ -874,7 +1023,7 @@ public class EchoServer extends AbstractServer {
             try {
                 int year = Integer.parseInt(parts[0]);
                 int month = Integer.parseInt(parts[1]);
-                ArrayList<SubscriberParkingData> reportData = db.getTotalParkingHoursPerSubscriber(year, month);
+                ArrayList<SubscriberParkingData> reportData = reportCache.get(ReportCache.ReportType.SUBSCRIBER_HOURS, year, month, () -> db.getTotalParkingHoursPerSubscriber(year, month));
                 client.sendToClient(reportData);
                 System.out.println("Sent subscriber parking report to client for " + year + "-" + month);
             } catch (Exception e) {
@@ -895,7 +1044,7 @@ public class EchoServer extends AbstractServer {
             try {
                 int year = Integer.parseInt(parts[0]);
                 int month = Integer.parseInt(parts[1]);
-                ArrayList<SlotOccupancyData> reportData = db.getTotalParkingHoursPerSlot(year, month);
+                ArrayList<SlotOccupancyData> reportData = reportCache.get(ReportCache.ReportType.SLOT_HOURS, year, month, () -> db.getTotalParkingHoursPerSlot(year, month));
                 client.sendToClient(reportData);
                 System.out.println("Sent slot occupancy report to client for " + year + "-" + month);
             } catch (Exception e) {
@@ -904,6 +1053,46 @@ public class EchoServer extends AbstractServer {
         }
     }
 
+    /**
+     * Handles GET_USAGE_SLICE with payload "year;month;dimension[;slotFrom;slotTo]", where the
+     * dimension is HOUR_OF_DAY, WEEKDAY, DAY_OF_MONTH or SLOT. Sends a list of {@link UsageSliceData}.
+     * @param payload the payload
+     * @param client the client
+     */
+    private void handleGetUsageSlice(String payload, ConnectionToClient client) {
+        String[] parts = payload.split(";");
+        if (parts.length != 3 && parts.length != 5) {
+            System.err.println("Invalid usage slice request: " + payload);
+            return;
+        }
+        try {
+            int year = Integer.parseInt(parts[0]);
+            int month = Integer.parseInt(parts[1]);
+            ParkingAnalytics.SliceDimension dimension = ParkingAnalytics.SliceDimension.valueOf(parts[2].trim().toUpperCase());
+            int slotFrom = parts.length == 5 ? Integer.parseInt(parts[3]) : 1;
+            int slotTo = parts.length == 5 ? Integer.parseInt(parts[4]) : DBController.TOTAL_SLOTS;
+            ArrayList<UsageSliceData> slice = db.getUsageSlice(year, month, dimension, slotFrom, slotTo);
+            client.sendToClient(slice);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid usage slice request: " + payload);
+        } catch (IOException e) {
+            System.err.println("Failed to send usage slice to client: " + e.getMessage());
+        }
+    }
+
+    /**
+     * handleGetServerMetrics method.
+     * Sends the current server metrics (connection pool state, etc.) as plain text.
+     * @param client the client
+     */
+    private void handleGetServerMetrics(ConnectionToClient client) {
+        try {
+            client.sendToClient("SERVER_METRICS;" + ServerMetrics.describe());
+        } catch (IOException e) {
+            System.err.println("Failed to send server metrics: " + e.getMessage());
+        }
+    }
+
     // --- General Utility Methods ---
 
     /**
@@ -930,7 +1119,7 @@ public class EchoServer extends AbstractServer {
     private String generateRandomCode(int length) {
         String chars = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
         StringBuilder code = new StringBuilder();
-        java.util.Random rand = new java.util.Random();
+        java.util.concurrent.ThreadLocalRandom rand = java.util.concurrent.ThreadLocalRandom.current();
         for (int i = 0; i < length; i++) {
             code.append(chars.charAt(rand.nextInt(chars.length())));
         }
@@ -953,6 +1142,7 @@ public class EchoServer extends AbstractServer {
             }
             Thread.sleep(200);
             close();
+            db.shutdown();
             System.out.println("Server shut down gracefully.");
         } catch (Exception e) {
             System.out.println("Error during shutdown: " + e.getMessage());
@@ -26,8 +26,9 @@ public class EmailService {
      *
      * @param toEmail       The email address of the new subscriber.
      * @param subscriptionId The new subscriber's subscription ID.
+     * @return True if the email was handed to the mail server, false if sending failed.
      */
-    public static void sendWelcomeEmail(String toEmail, String subscriptionId) {
+    public static boolean sendWelcomeEmail(String toEmail, String subscriptionId) {
         System.out.println("📧 ENTERED sendWelcomeEmail");
         Properties props = new Properties();
         props.put("mail.smtp.auth", "true");
@@ -49,9 +50,11 @@ public class EmailService {
             message.setText("Dear New Subscriber,\n\nWelcome to BPark!\n\nYour new subscription ID is: " + subscriptionId + "\n\nYou can use this code to log in to the client application.\n\nThank you for joining us!\n\nThe BPark Team");
             Transport.send(message);
             System.out.println("Welcome email sent successfully to " + toEmail);
+            return true;
         } catch (MessagingException e) {
             System.err.println("Failed to send welcome email to " + toEmail);
             e.printStackTrace();
+            return false;
         }
     }
 
@@ -121,8 +124,9 @@ public class EmailService {
      * @param userName        The subscriber's name.
      * @param confirmationCode The reservation's confirmation code.
      * @param scheduledTime   The reservation's scheduled time.
+     * @return True if the email was handed to the mail server, false if sending failed.
      */
-    public static void sendReminderEmail(String toEmail, String userName, String confirmationCode, String scheduledTime) {
+    public static boolean sendReminderEmail(String toEmail, String userName, String confirmationCode, String scheduledTime) {
         System.out.println("📧 ENTERED sendReminderEmail");
         Session session = createSession();
         try {
@@ -137,9 +141,11 @@ public class EmailService {
                     + "The BPark Team");
             Transport.send(message);
             System.out.println("Reservation reminder sent successfully to " + toEmail);
+            return true;
         } catch (MessagingException e) {
             System.err.println("Failed to send reminder email to " + toEmail);
             e.printStackTrace();
+            return false;
         }
     }
 
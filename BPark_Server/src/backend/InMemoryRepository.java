@@ -0,0 +1,522 @@
+package backend;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import common.ActivityInfo;
+import common.ActivityPage;
+import common.DailyLateData;
+import common.MonthlyReportData;
+import common.OrderInfo;
+import common.SlotOccupancyData;
+import common.SubscriberInfo;
+import common.SubscriberParkingData;
+import common.UsageSliceData;
+
+/**
+ * A {@link BParkRepository} that keeps all data in concurrent in-memory structures.
+ * It follows the same rules as {@link DBController} (slot claims, reservation overlap,
+ * late-count freezing) and computes the reports with {@link ParkingAnalytics}, but never
+ * touches a database, so the server's request path can be load-tested on its own. Nothing survives a restart, and no
+ * welcome email is sent for new subscribers.
+ * <p>
+ * Start the server with {@code --in-memory} or {@code -Dbpark.storage=memory} to use it.
+ */
+public class InMemoryRepository implements BParkRepository {
+
+    /** The initial length of a session registered at the gate, like a claimed reservation. */
+    private static final int SESSION_HOURS = DBController.RESERVATION_DURATION_HOURS;
+    private static final DateTimeFormatter DATE_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final ZoneId zone = ZoneId.systemDefault();
+
+    private final Map<String, SubscriberInfo> subscribers = new ConcurrentHashMap<>();
+    private final SlotOccupancy slots = new SlotOccupancy(DBController.TOTAL_SLOTS);
+    private final OrderIndex activeOrders = new OrderIndex();
+    private final ReservationIndex reservations = new ReservationIndex(DBController.TOTAL_SLOTS);
+    private final ReservationCapacity capacity = new ReservationCapacity(DBController.RESERVATION_CAPACITY_PER_BUCKET,
+        TimeUnit.MINUTES.toMillis(DBController.RESERVATION_CAPACITY_BUCKET_MINUTES));
+    private final Set<String> remindedReservations = ConcurrentHashMap.newKeySet();
+    private final Set<String> claimedReminders = ConcurrentHashMap.newKeySet();
+    private final AtomicLong orderNumbers = new AtomicLong();
+
+    private final ReadWriteLock activityLock = new ReentrantReadWriteLock();
+    private final List<ActivityRecord> activityLog = new ArrayList<>();
+
+    private final ParkingAnalytics analytics = new ParkingAnalytics(DBController.TOTAL_SLOTS, null, 0, 0, codes -> {
+        Map<String, String> names = new HashMap<>();
+        for (String code : codes) {
+            SubscriberInfo subscriber = subscribers.get(code);
+            if (subscriber != null) {
+                names.put(code, subscriber.getUserName());
+            }
+        }
+        return names;
+    });
+
+    public InMemoryRepository() {
+        ServerMetrics.register("slots.occupancy", slots::describe);
+        ServerMetrics.register("slots.reservations", reservations::describe);
+        ServerMetrics.register("orders.index", activeOrders::describe);
+        ServerMetrics.register("analytics", analytics::describe);
+    }
+
+    // --- Subscribers ---
+
+    @Override
+    public void insertSubscriber(String code, String name, String phone, String email, String id) {
+        subscribers.putIfAbsent(code, new SubscriberInfo(code, name, phone, email, id, 0, false));
+    }
+
+    @Override
+    public List<String> insertSubscribers(List<SubscriberInfo> batch) {
+        List<String> errors = new ArrayList<>(batch.size());
+        for (SubscriberInfo subscriber : batch) {
+            boolean inserted = subscribers.putIfAbsent(subscriber.getSubscriptionCode(), subscriber) == null;
+            errors.add(inserted ? null : "Subscription code already exists");
+        }
+        return errors;
+    }
+
+    @Override
+    public SubscriberInfo findSubscriberByCode(String subscriptionCode) {
+        return subscriptionCode == null ? null : subscribers.get(subscriptionCode);
+    }
+
+    @Override
+    public ArrayList<SubscriberInfo> getAllSubscribers() {
+        return new ArrayList<>(subscribers.values());
+    }
+
+    @Override
+    public boolean updateSubscriberInfo(String subscriptionCode, String userName, String phoneNumber, String email) {
+        return subscribers.computeIfPresent(subscriptionCode, (code, old) ->
+            new SubscriberInfo(code, userName, phoneNumber, email, old.getId(), old.getLateCount(), old.isFrozen())) != null;
+    }
+
+    @Override
+    public boolean setFreezeStatus(String subscriberId, boolean freeze) {
+        return subscribers.computeIfPresent(subscriberId, (code, old) ->
+            new SubscriberInfo(code, old.getUserName(), old.getPhoneNumber(), old.getEmail(), old.getId(), old.getLateCount(), freeze)) != null;
+    }
+
+    @Override
+    public PenaltyResult incrementLateCountAndFreeze(String subscriberId) {
+        boolean[] wasFrozen = new boolean[1];
+        SubscriberInfo updated = subscribers.computeIfPresent(subscriberId, (code, old) -> {
+            int lateCount = old.getLateCount() + 1;
+            wasFrozen[0] = old.isFrozen();
+            return new SubscriberInfo(code, old.getUserName(), old.getPhoneNumber(), old.getEmail(), old.getId(),
+                lateCount, old.isFrozen() || lateCount >= DBController.LATE_FREEZE_THRESHOLD);
+        });
+        if (updated == null) {
+            return null;
+        }
+        PenaltyResult result = new PenaltyResult(updated.getLateCount(), updated.isFrozen(), updated.isFrozen() && !wasFrozen[0]);
+        if (result.isNewlyFrozen()) {
+            logActivity(subscriberId, "ACCOUNT_FROZEN", "Account frozen due to reaching " + updated.getLateCount() + " late incidents.");
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, PenaltyResult> applyLatePenalties(List<String> subscriberIds) {
+        Map<String, PenaltyResult> results = new HashMap<>();
+        for (String subscriberId : subscriberIds) {
+            PenaltyResult result = incrementLateCountAndFreeze(subscriberId);
+            if (result != null) {
+                PenaltyResult previous = results.get(subscriberId);
+                boolean newlyFrozen = result.isNewlyFrozen() || (previous != null && previous.isNewlyFrozen());
+                results.put(subscriberId, new PenaltyResult(result.getLateCount(), result.isFrozen(), newlyFrozen));
+            }
+        }
+        return results;
+    }
+
+    // --- Active parking sessions ---
+
+    @Override
+    public ArrayList<Integer> getOccupiedSlots() {
+        return slots.occupiedSlots();
+    }
+
+    @Override
+    public int claimFreeSlot() {
+        return slots.claimFreeSlot();
+    }
+
+    @Override
+    public boolean registerParkingSlot(int slot, String confirmationCode, String subscriberId) {
+        LocalDateTime now = LocalDateTime.now();
+        // OrderIndex synchronizes its writes on itself, so this check-then-put is atomic.
+        synchronized (activeOrders) {
+            if (activeOrders.findByConfirmationCode(confirmationCode) != null) {
+                slots.markFree(slot);
+                return false;
+            }
+            activeOrders.put(newSession(slot, confirmationCode, subscriberId, now, now.plusHours(SESSION_HOURS)));
+        }
+        return true;
+    }
+
+    @Override
+    public OrderInfo getOrderBySubscriberId(String subscriberId) {
+        return activeOrders.findBySubscriberId(subscriberId);
+    }
+
+    @Override
+    public OrderInfo getOrderByConfirmationCode(String confirmationCode) {
+        return activeOrders.findByConfirmationCode(confirmationCode);
+    }
+
+    @Override
+    public ArrayList<OrderInfo> getAllOrders() {
+        return new ArrayList<>(activeOrders.snapshot());
+    }
+
+    @Override
+    public boolean deleteOrderByConfirmationCode(String confirmationCode) {
+        OrderInfo order = activeOrders.remove(confirmationCode);
+        if (order == null) {
+            return false;
+        }
+        analytics.recordSession(Integer.parseInt(order.getParkingSpace()), order.getSubscriberId(), order.getTimeOfPlacingOrder(), order.getEndParkTime());
+        slots.markFree(Integer.parseInt(order.getParkingSpace()));
+        return true;
+    }
+
+    @Override
+    public boolean extendParkingTime(String subscriberId, int hours) {
+        synchronized (activeOrders) {
+            OrderInfo order = activeOrders.findBySubscriberId(subscriberId);
+            if (order == null) {
+                return false;
+            }
+            long end = order.getEndParkTime() + TimeUnit.HOURS.toMillis(hours);
+            activeOrders.put(new OrderInfo(order.getParkingSpace(), order.getOrderNumber(), order.getOrderDate(),
+                order.getConfirmationCode(), order.getSubscriberId(), order.getTimeOfPlacingOrder(), end));
+        }
+        return true;
+    }
+
+    @Override
+    public int getMaximumAllowedExtension(String subscriberId) {
+        return DBController.maximumExtensionHours(activeOrders.findBySubscriberId(subscriberId), reservations);
+    }
+
+    // --- Scheduled reservations ---
+
+    @Override
+    public int findAvailableFutureSlot(Timestamp startTime) {
+        long start = startTime.getTime();
+        List<Integer> free = reservations.freeSlots(start, start + TimeUnit.HOURS.toMillis(DBController.RESERVATION_DURATION_HOURS));
+        return free.isEmpty() ? -1 : free.get(ThreadLocalRandom.current().nextInt(free.size()));
+    }
+
+    @Override
+    public boolean scheduleParking(String subscriberId, Timestamp scheduledTime, int slotNumber, String confirmationCode) {
+        long start = scheduledTime.getTime();
+        long end = start + TimeUnit.HOURS.toMillis(DBController.RESERVATION_DURATION_HOURS);
+        if (!capacity.tryReserve(start, end)) {
+            return false;
+        }
+        if (!reservations.tryAdd(new ReservationIndex.Reservation(confirmationCode, subscriberId, slotNumber, start, end))) {
+            capacity.release(start, end);
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int parkWithReservation(String confirmationCode, String subscriberId) {
+        ReservationIndex.Reservation reservation = reservations.find(confirmationCode);
+        if (reservation == null || !subscriberId.equals(reservation.subscriberCode)) {
+            return -4;
+        }
+        LocalDateTime scheduledTime = toLocalDateTime(reservation.start);
+        LocalDateTime now = LocalDateTime.now();
+        if (now.isBefore(scheduledTime.minusMinutes(1))) {
+            return -2;
+        }
+        int slot = reservation.slot;
+        if (!slots.markOccupied(slot)) {
+            slot = slots.claimFreeSlot();
+            if (slot == -1) {
+                return -3;
+            }
+        }
+        if (!reservations.remove(confirmationCode)) {
+            // Claimed or cancelled concurrently.
+            slots.markFree(slot);
+            return -4;
+        }
+        capacity.release(reservation.start, reservation.end);
+        remindedReservations.remove(confirmationCode);
+        if (now.isAfter(scheduledTime.plusMinutes(15))) {
+            incrementLateCountAndFreeze(subscriberId);
+        }
+        activeOrders.put(newSession(slot, confirmationCode, subscriberId, now, now.plusHours(DBController.RESERVATION_DURATION_HOURS)));
+        logActivity(subscriberId, "PARK_WITH_RESERVATION", "Parked in slot " + slot + " with code " + confirmationCode);
+        return slot;
+    }
+
+    @Override
+    public List<OrderInfo> checkAndCancelLateReservations() {
+        List<OrderInfo> cancelled = new ArrayList<>();
+        long deadline = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(15);
+        for (ReservationIndex.Reservation reservation : reservations.snapshot()) {
+            if (reservation.start >= deadline) {
+                break;
+            }
+            if (!reservations.remove(reservation.confirmationCode)) {
+                continue;
+            }
+            capacity.release(reservation.start, reservation.end);
+            remindedReservations.remove(reservation.confirmationCode);
+            SubscriberInfo subscriber = findSubscriberByCode(reservation.subscriberCode);
+            OrderInfo order = new OrderInfo(reservation.subscriberCode, subscriber != null ? subscriber.getUserName() : null,
+                reservation.start, null, reservation.confirmationCode);
+            if (subscriber != null) {
+                order.setUserNameForEmail(subscriber.getUserName());
+                order.setUserEmailForEmail(subscriber.getEmail());
+            }
+            cancelled.add(order);
+            logActivity(reservation.subscriberCode, "Reservation Canceled", "Canceled due to no-show for code " + reservation.confirmationCode);
+        }
+        return cancelled;
+    }
+
+    @Override
+    public boolean hasReservationCapacity(Timestamp scheduledTime) {
+        long start = scheduledTime.getTime();
+        return capacity.hasCapacity(start, start + TimeUnit.HOURS.toMillis(DBController.RESERVATION_DURATION_HOURS));
+    }
+
+    @Override
+    public ArrayList<OrderInfo> getAllScheduledOrders() {
+        ArrayList<OrderInfo> orders = new ArrayList<>();
+        for (ReservationIndex.Reservation reservation : reservations.snapshot()) {
+            SubscriberInfo subscriber = findSubscriberByCode(reservation.subscriberCode);
+            orders.add(new OrderInfo(reservation.subscriberCode, subscriber != null ? subscriber.getUserName() : null,
+                reservation.start, String.valueOf(reservation.slot), reservation.confirmationCode));
+        }
+        return orders;
+    }
+
+    @Override
+    public ArrayList<Integer> getOccupiedSlotsForDate(String date) {
+        LocalDate day = LocalDate.parse(date);
+        ArrayList<Integer> reserved = new ArrayList<>();
+        for (ReservationIndex.Reservation reservation : reservations.snapshot()) {
+            if (toLocalDateTime(reservation.start).toLocalDate().equals(day)) {
+                reserved.add(reservation.slot);
+            }
+        }
+        return reserved;
+    }
+
+    @Override
+    public ArrayList<OrderInfo> claimOrdersForReminder() {
+        ArrayList<OrderInfo> orders = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        long until = now + TimeUnit.MINUTES.toMillis(16);
+        for (ReservationIndex.Reservation reservation : reservations.snapshot()) {
+            if (reservation.start > until) {
+                break;
+            }
+            if (reservation.start < now || remindedReservations.contains(reservation.confirmationCode)) {
+                continue;
+            }
+            SubscriberInfo subscriber = findSubscriberByCode(reservation.subscriberCode);
+            if (subscriber == null || !claimedReminders.add(reservation.confirmationCode)) {
+                continue;
+            }
+            OrderInfo order = new OrderInfo(reservation.subscriberCode, subscriber.getUserName(),
+                reservation.start, null, reservation.confirmationCode);
+            order.setUserNameForEmail(subscriber.getUserName());
+            order.setUserEmailForEmail(subscriber.getEmail());
+            orders.add(order);
+        }
+        return orders;
+    }
+
+    @Override
+    public void recordReminderResults(List<String> sentCodes, List<String> failedCodes) {
+        for (String confirmationCode : sentCodes) {
+            if (reservations.find(confirmationCode) != null) {
+                remindedReservations.add(confirmationCode);
+            }
+            claimedReminders.remove(confirmationCode);
+        }
+        claimedReminders.removeAll(failedCodes);
+    }
+
+    // --- Activity log ---
+
+    @Override
+    public void logActivity(String subscriberCode, String activityType, String details) {
+        long now = System.currentTimeMillis();
+        activityLock.writeLock().lock();
+        try {
+            activityLog.add(new ActivityRecord(activityLog.size() + 1, subscriberCode, activityType, details, now));
+        } finally {
+            activityLock.writeLock().unlock();
+        }
+        analytics.recordActivity(activityType, now);
+    }
+
+    @Override
+    public ActivityPage getHistoryPageForSubscriber(String subscriberCode, String cursor, int pageSize) {
+        return readActivityPage(subscriberCode, cursor, pageSize);
+    }
+
+    @Override
+    public ActivityPage getActivitiesPage(String cursor, int pageSize) {
+        return readActivityPage(null, cursor, pageSize);
+    }
+
+    /**
+     * Reads a page of the log newest first. Records are appended in id order, so the cursor's
+     * id is also the position to continue from.
+     */
+    private ActivityPage readActivityPage(String subscriberCode, String cursor, int pageSize) {
+        int limit = pageSize <= 0 ? DBController.DEFAULT_ACTIVITY_PAGE_SIZE : Math.min(pageSize, DBController.MAX_ACTIVITY_PAGE_SIZE);
+        ArrayList<ActivityInfo> page = new ArrayList<>();
+        String nextCursor = null;
+        activityLock.readLock().lock();
+        try {
+            int index = activityLog.size() - 1;
+            if (cursor != null) {
+                String[] parts = cursor.split("_", 2);
+                try {
+                    index = (int) Math.min(index, Long.parseLong(parts[parts.length - 1]) - 2);
+                } catch (NumberFormatException e) {
+                    System.err.println("Malformed activity cursor: " + cursor);
+                    return new ActivityPage(page, null, true);
+                }
+            }
+            ActivityRecord last = null;
+            for (; index >= 0; index--) {
+                ActivityRecord record = activityLog.get(index);
+                if (subscriberCode != null && !subscriberCode.equals(record.subscriberCode)) {
+                    continue;
+                }
+                if (page.size() == limit) {
+                    nextCursor = last.timestamp + "_" + last.id;
+                    break;
+                }
+                String timestamp = toLocalDateTime(record.timestamp).format(DATE_TIME);
+                if (subscriberCode != null) {
+                    page.add(new ActivityInfo(record.activityType, record.details, timestamp));
+                } else {
+                    SubscriberInfo subscriber = findSubscriberByCode(record.subscriberCode);
+                    page.add(new ActivityInfo(record.subscriberCode, subscriber != null ? subscriber.getUserName() : null,
+                        record.activityType, record.details, timestamp));
+                }
+                last = record;
+            }
+        } finally {
+            activityLock.readLock().unlock();
+        }
+        return new ActivityPage(page, nextCursor, cursor != null);
+    }
+
+    // --- Reports ---
+
+    @Override
+    public ArrayList<MonthlyReportData> getMonthlyParkingReport(int year, int month) {
+        return orEmpty(analytics.dailyActivityCounts(year, month, "PARK_CAR", MonthlyReportData::new));
+    }
+
+    @Override
+    public ArrayList<DailyLateData> getDailyLatenessReport(int year, int month) {
+        return orEmpty(analytics.dailyActivityCounts(year, month, "LATE_CAR_RETRIEVAL", DailyLateData::new));
+    }
+
+    @Override
+    public ArrayList<SubscriberParkingData> getTotalParkingHoursPerSubscriber(int year, int month) {
+        return orEmpty(analytics.hoursPerSubscriber(year, month));
+    }
+
+    @Override
+    public ArrayList<SlotOccupancyData> getTotalParkingHoursPerSlot(int year, int month) {
+        return orEmpty(analytics.hoursPerSlot(year, month));
+    }
+
+    @Override
+    public ArrayList<UsageSliceData> getUsageSlice(int year, int month, ParkingAnalytics.SliceDimension dimension, int slotFrom, int slotTo) {
+        return orEmpty(analytics.usageSlice(year, month, dimension, slotFrom, slotTo));
+    }
+
+    private static <T> ArrayList<T> orEmpty(ArrayList<T> report) {
+        return report != null ? report : new ArrayList<>();
+    }
+
+    // --- Maintenance ---
+
+    @Override
+    public int reconcileSlotOccupancy() {
+        // The bitmap is the only copy of the occupancy, so there is nothing to drift from.
+        return 0;
+    }
+
+    @Override
+    public int reconcileReservationCapacity() {
+        return capacity.reconcile(reservations.snapshot(), System.currentTimeMillis());
+    }
+
+    @Override
+    public int reconcileSessionIndexes() {
+        // The indexes are the only copy of the sessions and reservations.
+        return 0;
+    }
+
+    @Override
+    public void shutdown() {
+        // Nothing to flush.
+    }
+
+    private OrderInfo newSession(int slot, String confirmationCode, String subscriberId, LocalDateTime start, LocalDateTime end) {
+        return new OrderInfo(String.valueOf(slot), String.valueOf(orderNumbers.incrementAndGet()), start.toLocalDate().toString(),
+            confirmationCode, subscriberId, toMillis(start), toMillis(end));
+    }
+
+    private LocalDateTime toLocalDateTime(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), zone);
+    }
+
+    private long toMillis(LocalDateTime time) {
+        return time.atZone(zone).toInstant().toEpochMilli();
+    }
+
+    private static final class ActivityRecord {
+        final long id;
+        final String subscriberCode;
+        final String activityType;
+        final String details;
+        final long timestamp;
+
+        ActivityRecord(long id, String subscriberCode, String activityType, String details, long timestamp) {
+            this.id = id;
+            this.subscriberCode = subscriberCode;
+            this.activityType = activityType;
+            this.details = details;
+            this.timestamp = timestamp;
+        }
+    }
+}
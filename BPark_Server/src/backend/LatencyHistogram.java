@@ -0,0 +1,95 @@
+package backend;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free latency histogram with logarithmic buckets, for percentiles in the server metrics.
+ * Durations are recorded in microseconds; below 32 µs every value has its own bucket, above
+ * that each power of two is split into 16 buckets, so a reported percentile is at most about
+ * 6% above the true value. Memory use is fixed, whatever the number of recordings.
+ */
+public class LatencyHistogram {
+    private static final int LINEAR_BUCKETS = 32;
+    private static final int SUB_BUCKETS = 16;
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKETS = LINEAR_BUCKETS + (MAX_EXPONENT - 5) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    /**
+     * @param nanos A duration in nanoseconds.
+     */
+    public void record(long nanos) {
+        long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+        counts.incrementAndGet(bucketOf(micros));
+        total.incrementAndGet();
+        maxMicros.accumulateAndGet(micros, Math::max);
+    }
+
+    /**
+     * @return The number of recorded durations.
+     */
+    public long count() {
+        return total.get();
+    }
+
+    /**
+     * @param percentile A percentile between 0 and 100.
+     * @return The duration at the percentile in milliseconds, or 0 if nothing was recorded.
+     */
+    public double percentileMillis(double percentile) {
+        long n = total.get();
+        if (n == 0) {
+            return 0.0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(n * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBoundMicros(i), maxMicros.get()) / 1000.0;
+            }
+        }
+        return maxMicros.get() / 1000.0;
+    }
+
+    /**
+     * @return The longest recorded duration in milliseconds.
+     */
+    public double maxMillis() {
+        return maxMicros.get() / 1000.0;
+    }
+
+    /**
+     * @return The p50, p95, p99 and max durations, for the server metrics output.
+     */
+    public String describe() {
+        return String.format("p50Ms=%.2f p95Ms=%.2f p99Ms=%.2f maxMs=%.2f",
+            percentileMillis(50), percentileMillis(95), percentileMillis(99), maxMillis());
+    }
+
+    private static int bucketOf(long micros) {
+        if (micros < LINEAR_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent >= MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int sub = (int) (micros >>> (exponent - 4)) & (SUB_BUCKETS - 1);
+        return LINEAR_BUCKETS + (exponent - 5) * SUB_BUCKETS + sub;
+    }
+
+    private static long upperBoundMicros(int bucket) {
+        if (bucket < LINEAR_BUCKETS) {
+            return bucket;
+        }
+        int exponent = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + 5;
+        int sub = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + sub + 1) << (exponent - 4)) - 1;
+    }
+}
@@ -0,0 +1,171 @@
+package backend;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, rate-limited queue for outgoing emails.
+ * A fixed number of worker threads take send tasks from a bounded queue and start at most
+ * {@code perSecond} of them per second, so a burst of work (such as a bulk subscriber
+ * import) cannot open thousands of threads or SMTP sessions at once.
+ * <p>
+ * Request threads use {@link #offer}, which never blocks and drops the email if the queue is
+ * full; bulk jobs use {@link #put}, which waits for space and so slows the job down to the
+ * rate the mail server accepts.
+ */
+public class MailQueue {
+
+    /**
+     * Sends one email.
+     */
+    @FunctionalInterface
+    public interface Send {
+        /**
+         * @return True if the email was handed to the mail server, false if sending failed.
+         */
+        boolean send();
+    }
+
+    private final BlockingQueue<Send> queue;
+    private final long intervalNanos;
+    private final Thread[] workers;
+    private volatile boolean running = true;
+    private long nextSendNanos = System.nanoTime();
+
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * Creates the queue and starts its worker threads.
+     *
+     * @param capacity  The maximum number of emails waiting to be sent.
+     * @param threads   The number of concurrent senders.
+     * @param perSecond The maximum number of emails started per second.
+     */
+    public MailQueue(int capacity, int threads, double perSecond) {
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / Math.max(0.01, perSecond));
+        this.workers = new Thread[Math.max(1, threads)];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Thread(this::runWorker, "mail-sender-" + (i + 1));
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * Queues an email without waiting.
+     *
+     * @param send The task that sends the email.
+     * @return True if it was queued, false if the queue is full and the email was dropped.
+     */
+    public boolean offer(Send send) {
+        if (running && queue.offer(send)) {
+            queued.incrementAndGet();
+            return true;
+        }
+        dropped.incrementAndGet();
+        System.err.println("Mail queue is full, dropping an email.");
+        return false;
+    }
+
+    /**
+     * Queues an email, waiting for space if the queue is full.
+     *
+     * @param send The task that sends the email.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public void put(Send send) throws InterruptedException {
+        queue.put(send);
+        queued.incrementAndGet();
+    }
+
+    /**
+     * Stops accepting emails and waits for the queued ones to be sent.
+     *
+     * @param timeoutMillis How long to wait before giving up on the remaining emails.
+     */
+    public void shutdown(long timeoutMillis) {
+        running = false;
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        for (Thread worker : workers) {
+            try {
+                worker.join(Math.max(1, deadline - System.currentTimeMillis()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (!queue.isEmpty()) {
+            System.err.println("Mail queue: " + queue.size() + " emails were not sent before shutdown.");
+        }
+    }
+
+    /**
+     * Stops accepting emails and waits, without a time limit, until every queued email has
+     * been attempted. Used by bulk jobs that must not exit with emails still queued.
+     *
+     * @throws InterruptedException If interrupted while waiting; the remaining emails are still sent in the background.
+     */
+    public void drain() throws InterruptedException {
+        running = false;
+        for (Thread worker : workers) {
+            worker.join();
+        }
+    }
+
+    /**
+     * @return A one-line summary of the queue for the server metrics output.
+     */
+    public String describe() {
+        return "pending=" + queue.size() + " queued=" + queued.get() + " sent=" + sent.get()
+            + " failed=" + failed.get() + " dropped=" + dropped.get();
+    }
+
+    private void runWorker() {
+        while (running || !queue.isEmpty()) {
+            Send send;
+            try {
+                send = queue.poll(200, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (send == null) {
+                continue;
+            }
+            try {
+                awaitPermit();
+            } catch (InterruptedException e) {
+                return;
+            }
+            boolean ok;
+            try {
+                ok = send.send();
+            } catch (RuntimeException e) {
+                System.err.println("Failed to send email: " + e.getMessage());
+                ok = false;
+            }
+            (ok ? sent : failed).incrementAndGet();
+        }
+    }
+
+    /**
+     * Waits for the next send slot; slots are spaced evenly at the configured rate across all workers.
+     */
+    private void awaitPermit() throws InterruptedException {
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            long slot = Math.max(now, nextSendNanos);
+            nextSendNanos = slot + intervalNanos;
+            waitNanos = slot - now;
+        }
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+}
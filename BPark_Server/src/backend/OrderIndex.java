@@ -0,0 +1,151 @@
+package backend;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import common.OrderInfo;
+
+/**
+ * An in-memory index of the active parking sessions in 'activeparking', by confirmation code
+ * and by subscriber ID. It is loaded at startup and refreshed by {@link DBController} after
+ * every write to the table, so gate operations can resolve a code or a subscriber's session
+ * without a query. A refresh that fails after its write committed leaves the index out of
+ * date, so it is also compared with the table periodically by {@link #reconcile}.
+ * Scheduled reservations are indexed separately by {@link ReservationIndex}.
+ * <p>
+ * Lookups read the concurrent maps without locking; writes are serialized so both maps
+ * always describe the same set of sessions.
+ */
+public class OrderIndex {
+
+    private final Map<String, OrderInfo> byConfirmationCode = new ConcurrentHashMap<>();
+    private final Map<String, OrderInfo> bySubscriberId = new ConcurrentHashMap<>();
+    // Codes that differed from the database in the previous reconcile pass; guarded by the monitor.
+    private Set<String> suspects = new HashSet<>();
+
+    /**
+     * Replaces the index contents with the given sessions. Used for the initial load.
+     *
+     * @param orders The active sessions read from 'activeparking'.
+     */
+    public synchronized void load(List<OrderInfo> orders) {
+        byConfirmationCode.clear();
+        bySubscriberId.clear();
+        for (OrderInfo order : orders) {
+            put(order);
+        }
+    }
+
+    /**
+     * @param confirmationCode The confirmation code of the session.
+     * @return The active session, or null if there is none.
+     */
+    public OrderInfo findByConfirmationCode(String confirmationCode) {
+        return confirmationCode == null ? null : byConfirmationCode.get(confirmationCode);
+    }
+
+    /**
+     * @param subscriberId The subscription code of the subscriber.
+     * @return The subscriber's active session, or null if there is none.
+     */
+    public OrderInfo findBySubscriberId(String subscriberId) {
+        return subscriberId == null ? null : bySubscriberId.get(subscriberId);
+    }
+
+    /**
+     * @return All indexed sessions.
+     */
+    public List<OrderInfo> snapshot() {
+        return new ArrayList<>(byConfirmationCode.values());
+    }
+
+    /**
+     * Adds or replaces a session, keyed by its confirmation code and subscriber ID.
+     *
+     * @param order The session as it is now stored in the database.
+     */
+    public synchronized void put(OrderInfo order) {
+        OrderInfo previous = order.getConfirmationCode() == null ? null : byConfirmationCode.put(order.getConfirmationCode(), order);
+        if (previous != null && previous.getSubscriberId() != null && !previous.getSubscriberId().equals(order.getSubscriberId())) {
+            bySubscriberId.remove(previous.getSubscriberId(), previous);
+        }
+        if (order.getSubscriberId() != null) {
+            bySubscriberId.put(order.getSubscriberId(), order);
+        }
+    }
+
+    /**
+     * Removes a session after it was released.
+     *
+     * @param confirmationCode The confirmation code of the session.
+     * @return The removed session, or null if none was indexed under this code.
+     */
+    public synchronized OrderInfo remove(String confirmationCode) {
+        OrderInfo removed = byConfirmationCode.remove(confirmationCode);
+        if (removed != null && removed.getSubscriberId() != null) {
+            bySubscriberId.remove(removed.getSubscriberId(), removed);
+        }
+        return removed;
+    }
+
+    /**
+     * Compares the index with the sessions in the database and repairs the codes that differed
+     * in the previous pass too, the same way {@link SlotOccupancy#reconcile} does, so a write
+     * that was in flight while the table was read is not mistaken for drift.
+     *
+     * @param orders The active sessions read from 'activeparking'.
+     * @return The number of sessions added, replaced or removed.
+     */
+    public synchronized int reconcile(List<OrderInfo> orders) {
+        Map<String, OrderInfo> expected = new HashMap<>();
+        for (OrderInfo order : orders) {
+            if (order.getConfirmationCode() != null) {
+                expected.put(order.getConfirmationCode(), order);
+            }
+        }
+        Set<String> codes = new HashSet<>(byConfirmationCode.keySet());
+        codes.addAll(expected.keySet());
+
+        Set<String> mismatched = new HashSet<>();
+        int fixed = 0;
+        for (String code : codes) {
+            OrderInfo want = expected.get(code);
+            if (sameSession(byConfirmationCode.get(code), want)) {
+                continue;
+            }
+            if (!suspects.contains(code)) {
+                mismatched.add(code);
+            } else if (want == null) {
+                remove(code);
+                fixed++;
+            } else {
+                put(want);
+                fixed++;
+            }
+        }
+        suspects = mismatched;
+        return fixed;
+    }
+
+    private static boolean sameSession(OrderInfo indexed, OrderInfo stored) {
+        if (indexed == null || stored == null) {
+            return indexed == stored;
+        }
+        return Objects.equals(indexed.getSubscriberId(), stored.getSubscriberId())
+            && Objects.equals(indexed.getParkingSpace(), stored.getParkingSpace())
+            && indexed.getEndParkTime() == stored.getEndParkTime();
+    }
+
+    /**
+     * @return A one-line summary of the index for the server metrics output.
+     */
+    public String describe() {
+        return "activeSessions=" + byConfirmationCode.size();
+    }
+}
@@ -0,0 +1,550 @@
+package backend;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.format.TextStyle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.BiFunction;
+
+import common.SlotOccupancyData;
+import common.SubscriberParkingData;
+import common.UsageSliceData;
+
+/**
+ * An in-process columnar store of completed parking sessions and activity events, used to
+ * compute the manager reports and ad-hoc usage slices without a query per report.
+ * <p>
+ * Data is kept in one {@link MonthChunk} per calendar month. Each chunk stores its rows as
+ * parallel primitive arrays (slot, subscriber, hours, start day/hour/weekday for sessions;
+ * activity type and day for events), with activity types and subscriber codes
+ * dictionary-encoded to {@code int}s. Every report is a single pass over the arrays of one
+ * month that fills a small counter array, which takes well under a millisecond per
+ * thousand rows.
+ * <p>
+ * Chunks are filled either by pushing rows with {@link #recordSession}/{@link #recordActivity}
+ * (used by {@link InMemoryRepository}), or by a {@link Source} that appends a month's rows on
+ * demand (used by {@link DBController}). With a source, a chunk is refreshed at most once per
+ * refresh interval until its month is closed, and at most {@code maxMonths} chunks are kept.
+ * A car picked up late can still add a session to a closed month; {@link #sessionArchived}
+ * reopens that month's chunk so the next report reloads it.
+ */
+public class ParkingAnalytics {
+
+    /**
+     * Loads the rows of a month into a chunk.
+     */
+    public interface Source {
+        /**
+         * Appends the month's rows that are newer than the chunk's high-water marks
+         * ({@link MonthChunk#getLastSessionId()}, {@link MonthChunk#getLastActivityId()}).
+         *
+         * @param month The month to load.
+         * @param chunk The chunk to append to.
+         * @throws Exception If the rows cannot be read; the chunk keeps what was appended.
+         */
+        void refresh(YearMonth month, MonthChunk chunk) throws Exception;
+    }
+
+    /**
+     * Resolves subscription codes to subscriber names for {@link #hoursPerSubscriber}.
+     */
+    public interface NameResolver {
+        /**
+         * Resolves every code of one report at once, so a database can answer with one query.
+         *
+         * @param codes The subscription codes.
+         * @return The names of the codes that exist, keyed by code.
+         * @throws Exception If the names cannot be read; the report is then not produced.
+         */
+        Map<String, String> namesOf(Collection<String> codes) throws Exception;
+    }
+
+    /**
+     * The dimensions a usage slice can be grouped by.
+     */
+    public enum SliceDimension {
+        HOUR_OF_DAY, WEEKDAY, DAY_OF_MONTH, SLOT
+    }
+
+    /** How long after a month ends before its data is treated as final; see {@link ReportCache}. */
+    private static final long CLOSE_GRACE_HOURS = DBController.MAX_SESSION_HOURS + 1;
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final int totalSlots;
+    private final Source source;
+    private final long refreshIntervalMillis;
+    private final NameResolver subscriberNames;
+    private final ZoneId zone = ZoneId.systemDefault();
+
+    private final Dictionary activityTypes = new Dictionary();
+    private final Dictionary subscribers = new Dictionary();
+    private final Map<YearMonth, MonthChunk> chunks;
+
+    /**
+     * @param totalSlots            The number of slots in the lot, numbered 1..totalSlots.
+     * @param source                Loads months on demand, or null if rows are pushed with the record methods.
+     * @param refreshIntervalMillis How often a month that is not closed is refreshed from the source.
+     * @param maxMonths             The number of months kept when there is a source; ignored without one.
+     * @param subscriberNames       Resolves subscription codes to the subscribers' names.
+     */
+    public ParkingAnalytics(int totalSlots, Source source, long refreshIntervalMillis, int maxMonths, NameResolver subscriberNames) {
+        this.totalSlots = totalSlots;
+        this.source = source;
+        this.refreshIntervalMillis = refreshIntervalMillis;
+        this.subscriberNames = subscriberNames;
+        this.chunks = new LinkedHashMap<YearMonth, MonthChunk>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<YearMonth, MonthChunk> eldest) {
+                return ParkingAnalytics.this.source != null && size() > Math.max(1, maxMonths);
+            }
+        };
+    }
+
+    // --- Ingestion ---
+
+    /**
+     * Adds a completed session to the month it started in.
+     */
+    public void recordSession(int slot, String subscriberCode, long startMillis, long endMillis) {
+        YearMonth month = YearMonth.from(Instant.ofEpochMilli(startMillis).atZone(zone));
+        MonthChunk chunk = chunk(month);
+        synchronized (chunk) {
+            chunk.appendSession(0, slot, subscriberCode, startMillis, endMillis);
+        }
+    }
+
+    /**
+     * Adds an activity event to the month it happened in.
+     */
+    public void recordActivity(String activityType, long timestampMillis) {
+        YearMonth month = YearMonth.from(Instant.ofEpochMilli(timestampMillis).atZone(zone));
+        MonthChunk chunk = chunk(month);
+        synchronized (chunk) {
+            chunk.appendActivity(0, activityType, timestampMillis);
+        }
+    }
+
+    /**
+     * Reopens the chunk of the month a released session started in, if it was already loaded
+     * as complete, so the next report reads the month from the source again. Without a source
+     * the session is pushed with {@link #recordSession} instead and nothing needs reopening.
+     *
+     * @param startMillis The start of the released session, in epoch milliseconds.
+     */
+    public void sessionArchived(long startMillis) {
+        if (source == null) {
+            return;
+        }
+        YearMonth month = YearMonth.from(Instant.ofEpochMilli(startMillis).atZone(zone));
+        MonthChunk chunk;
+        synchronized (chunks) {
+            chunk = chunks.get(month);
+        }
+        if (chunk != null) {
+            synchronized (chunk) {
+                chunk.complete = false;
+                chunk.refreshedAt = 0;
+            }
+        }
+    }
+
+    // --- Reports ---
+
+    /**
+     * Counts the events of one activity type per day of a month.
+     *
+     * @param year         The year.
+     * @param month        The month (1-12).
+     * @param activityType The activity type, e.g. "PARK_CAR".
+     * @param row          Builds a report row from the date ("YYYY-MM-DD") and the count.
+     * @return One row per day with at least one event, in date order, or null if the month could not be loaded.
+     */
+    public <T> ArrayList<T> dailyActivityCounts(int year, int month, String activityType, BiFunction<String, Integer, T> row) {
+        YearMonth yearMonth = monthOf(year, month);
+        MonthChunk chunk = loadedChunk(yearMonth);
+        if (chunk == null) {
+            return null;
+        }
+        int typeCode = activityTypes.find(activityType);
+        int[] perDay = new int[32];
+        synchronized (chunk) {
+            int[] types = chunk.activityType;
+            byte[] days = chunk.activityDay;
+            for (int i = 0, n = chunk.activityCount; i < n; i++) {
+                if (types[i] == typeCode) {
+                    perDay[days[i]]++;
+                }
+            }
+        }
+        ArrayList<T> report = new ArrayList<>();
+        for (int day = 1; day <= yearMonth.lengthOfMonth(); day++) {
+            if (perDay[day] > 0) {
+                report.add(row.apply(yearMonth.atDay(day).toString(), perDay[day]));
+            }
+        }
+        return report;
+    }
+
+    /**
+     * Sums the parked hours per slot for the sessions that started in a month.
+     *
+     * @return The slots with parked hours, most hours first, or null if the month could not be loaded.
+     */
+    public ArrayList<SlotOccupancyData> hoursPerSlot(int year, int month) {
+        MonthChunk chunk = loadedChunk(monthOf(year, month));
+        if (chunk == null) {
+            return null;
+        }
+        long[] hours = new long[totalSlots + 1];
+        boolean[] seen = new boolean[totalSlots + 1];
+        synchronized (chunk) {
+            int[] slots = chunk.sessionSlot;
+            int[] sessionHours = chunk.sessionHours;
+            for (int i = 0, n = chunk.sessionCount; i < n; i++) {
+                int slot = slots[i];
+                if (slot >= 1 && slot <= totalSlots) {
+                    hours[slot] += sessionHours[i];
+                    seen[slot] = true;
+                }
+            }
+        }
+        ArrayList<SlotOccupancyData> report = new ArrayList<>();
+        for (int slot = 1; slot <= totalSlots; slot++) {
+            if (seen[slot]) {
+                report.add(new SlotOccupancyData(String.valueOf(slot), (int) hours[slot]));
+            }
+        }
+        report.sort((a, b) -> Integer.compare(b.getTotalOccupiedHours(), a.getTotalOccupiedHours()));
+        return report;
+    }
+
+    /**
+     * Sums the parked hours per subscriber for the sessions that started in a month.
+     * The names of all the month's subscribers are resolved in one call; subscribers whose
+     * name cannot be resolved are left out.
+     *
+     * @return The subscribers with parked hours, most hours first, or null if the month or the names could not be loaded.
+     */
+    public ArrayList<SubscriberParkingData> hoursPerSubscriber(int year, int month) {
+        MonthChunk chunk = loadedChunk(monthOf(year, month));
+        if (chunk == null) {
+            return null;
+        }
+        long[] hours = new long[subscribers.size()];
+        boolean[] seen = new boolean[hours.length];
+        synchronized (chunk) {
+            int[] codes = chunk.sessionSubscriber;
+            int[] sessionHours = chunk.sessionHours;
+            for (int i = 0, n = chunk.sessionCount; i < n; i++) {
+                int code = codes[i];
+                if (code < hours.length) {
+                    hours[code] += sessionHours[i];
+                    seen[code] = true;
+                }
+            }
+        }
+        List<String> subscriberCodes = new ArrayList<>();
+        for (int code = 0; code < hours.length; code++) {
+            String subscriberCode = subscribers.value(code);
+            if (seen[code] && subscriberCode != null) {
+                subscriberCodes.add(subscriberCode);
+            }
+        }
+        Map<String, String> names;
+        try {
+            names = subscriberCodes.isEmpty() ? new HashMap<>() : subscriberNames.namesOf(subscriberCodes);
+        } catch (Exception e) {
+            System.err.println("Analytics: could not resolve subscriber names for " + monthOf(year, month) + ": " + e.getMessage());
+            return null;
+        }
+        ArrayList<SubscriberParkingData> report = new ArrayList<>();
+        for (int code = 0; code < hours.length; code++) {
+            String subscriberCode = subscribers.value(code);
+            if (!seen[code] || subscriberCode == null) {
+                continue;
+            }
+            String name = names.get(subscriberCode);
+            if (name != null) {
+                report.add(new SubscriberParkingData(subscriberCode, name, (int) hours[code]));
+            }
+        }
+        report.sort((a, b) -> Integer.compare(b.getTotalParkedHours(), a.getTotalParkedHours()));
+        return report;
+    }
+
+    /**
+     * Groups the sessions that started in a month by a dimension, counting sessions and parked hours per bucket.
+     *
+     * @param year      The year.
+     * @param month     The month (1-12).
+     * @param dimension The grouping.
+     * @param slotFrom  The lowest slot to include.
+     * @param slotTo    The highest slot to include.
+     * @return One row per bucket of the dimension, including empty ones, or null if the month could not be loaded.
+     */
+    public ArrayList<UsageSliceData> usageSlice(int year, int month, SliceDimension dimension, int slotFrom, int slotTo) {
+        YearMonth yearMonth = monthOf(year, month);
+        MonthChunk chunk = loadedChunk(yearMonth);
+        if (chunk == null) {
+            return null;
+        }
+        int low = Math.max(1, slotFrom);
+        int high = Math.min(totalSlots, slotTo);
+        int buckets;
+        switch (dimension) {
+            case HOUR_OF_DAY: buckets = 24; break;
+            case WEEKDAY: buckets = 8; break;
+            case DAY_OF_MONTH: buckets = 32; break;
+            default: buckets = totalSlots + 1; break;
+        }
+        int[] sessions = new int[buckets];
+        long[] hours = new long[buckets];
+        synchronized (chunk) {
+            int[] slots = chunk.sessionSlot;
+            int[] sessionHours = chunk.sessionHours;
+            byte[] key;
+            switch (dimension) {
+                case HOUR_OF_DAY: key = chunk.sessionHour; break;
+                case WEEKDAY: key = chunk.sessionWeekday; break;
+                case DAY_OF_MONTH: key = chunk.sessionDay; break;
+                default: key = null; break;
+            }
+            for (int i = 0, n = chunk.sessionCount; i < n; i++) {
+                int slot = slots[i];
+                if (slot < low || slot > high) {
+                    continue;
+                }
+                int bucket = key == null ? slot : key[i];
+                sessions[bucket]++;
+                hours[bucket] += sessionHours[i];
+            }
+        }
+
+        ArrayList<UsageSliceData> slice = new ArrayList<>();
+        switch (dimension) {
+            case HOUR_OF_DAY:
+                for (int hour = 0; hour < 24; hour++) {
+                    slice.add(new UsageSliceData(String.format("%02d:00", hour), sessions[hour], hours[hour]));
+                }
+                break;
+            case WEEKDAY:
+                for (DayOfWeek day : DayOfWeek.values()) {
+                    int bucket = day.getValue();
+                    slice.add(new UsageSliceData(day.getDisplayName(TextStyle.FULL, Locale.ENGLISH), sessions[bucket], hours[bucket]));
+                }
+                break;
+            case DAY_OF_MONTH:
+                for (int day = 1; day <= yearMonth.lengthOfMonth(); day++) {
+                    slice.add(new UsageSliceData(yearMonth.atDay(day).toString(), sessions[day], hours[day]));
+                }
+                break;
+            default:
+                for (int slot = low; slot <= high; slot++) {
+                    slice.add(new UsageSliceData(String.valueOf(slot), sessions[slot], hours[slot]));
+                }
+                break;
+        }
+        return slice;
+    }
+
+    /**
+     * @return A one-line summary of the store for the server metrics output.
+     */
+    public String describe() {
+        int months;
+        long sessionRows = 0;
+        long activityRows = 0;
+        synchronized (chunks) {
+            months = chunks.size();
+            for (MonthChunk chunk : chunks.values()) {
+                sessionRows += chunk.sessionCount;
+                activityRows += chunk.activityCount;
+            }
+        }
+        return "months=" + months + " sessions=" + sessionRows + " activities=" + activityRows
+            + " activityTypes=" + activityTypes.size() + " subscribers=" + subscribers.size();
+    }
+
+    private MonthChunk chunk(YearMonth month) {
+        synchronized (chunks) {
+            return chunks.computeIfAbsent(month, m -> new MonthChunk(m));
+        }
+    }
+
+    private static YearMonth monthOf(int year, int month) {
+        return month >= 1 && month <= 12 ? YearMonth.of(year, month) : null;
+    }
+
+    /**
+     * @return The month's chunk, refreshed from the source if it is due, or null if the month
+     *         is invalid or the source failed.
+     */
+    private MonthChunk loadedChunk(YearMonth month) {
+        if (month == null) {
+            return null;
+        }
+        MonthChunk chunk = chunk(month);
+        if (source == null) {
+            return chunk;
+        }
+        synchronized (chunk) {
+            long now = System.currentTimeMillis();
+            if (chunk.complete || (chunk.loaded && now - chunk.refreshedAt < refreshIntervalMillis)) {
+                return chunk;
+            }
+            boolean closed = LocalDateTime.now().isAfter(month.plusMonths(1).atDay(1).atStartOfDay().plusHours(CLOSE_GRACE_HOURS));
+            if (closed && chunk.loaded) {
+                // Incremental refreshes can miss a row committed out of id order; the final load reads the month again.
+                chunk.reset();
+            }
+            try {
+                source.refresh(month, chunk);
+            } catch (Exception e) {
+                System.err.println("Analytics: could not load " + month + ": " + e.getMessage());
+                return null;
+            }
+            chunk.loaded = true;
+            chunk.complete = closed;
+            chunk.refreshedAt = now;
+            return chunk;
+        }
+    }
+
+    /**
+     * The columns of one month. All access must hold the chunk's monitor.
+     */
+    public final class MonthChunk {
+        private final YearMonth month;
+        private boolean loaded;
+        private boolean complete;
+        private long refreshedAt;
+        private long lastSessionId;
+        private long lastActivityId;
+
+        private int sessionCount;
+        private int[] sessionSlot = new int[INITIAL_CAPACITY];
+        private int[] sessionSubscriber = new int[INITIAL_CAPACITY];
+        private int[] sessionHours = new int[INITIAL_CAPACITY];
+        private byte[] sessionDay = new byte[INITIAL_CAPACITY];
+        private byte[] sessionHour = new byte[INITIAL_CAPACITY];
+        private byte[] sessionWeekday = new byte[INITIAL_CAPACITY];
+
+        private int activityCount;
+        private int[] activityType = new int[INITIAL_CAPACITY];
+        private byte[] activityDay = new byte[INITIAL_CAPACITY];
+
+        private MonthChunk(YearMonth month) {
+            this.month = month;
+        }
+
+        private void reset() {
+            sessionCount = 0;
+            activityCount = 0;
+            lastSessionId = 0;
+            lastActivityId = 0;
+        }
+
+        /** @return The highest source id of the sessions in the chunk. */
+        public long getLastSessionId() {
+            return lastSessionId;
+        }
+
+        /** @return The highest source id of the activity events in the chunk. */
+        public long getLastActivityId() {
+            return lastActivityId;
+        }
+
+        /**
+         * Appends a session that started in this month.
+         *
+         * @param id The source id, used as the high-water mark for the next refresh; 0 if there is none.
+         */
+        public void appendSession(long id, int slot, String subscriberCode, long startMillis, long endMillis) {
+            LocalDateTime start = Instant.ofEpochMilli(startMillis).atZone(zone).toLocalDateTime();
+            if (!YearMonth.from(start).equals(month)) {
+                return;
+            }
+            if (sessionCount == sessionSlot.length) {
+                int capacity = sessionCount * 2;
+                sessionSlot = Arrays.copyOf(sessionSlot, capacity);
+                sessionSubscriber = Arrays.copyOf(sessionSubscriber, capacity);
+                sessionHours = Arrays.copyOf(sessionHours, capacity);
+                sessionDay = Arrays.copyOf(sessionDay, capacity);
+                sessionHour = Arrays.copyOf(sessionHour, capacity);
+                sessionWeekday = Arrays.copyOf(sessionWeekday, capacity);
+            }
+            int i = sessionCount;
+            sessionSlot[i] = slot;
+            sessionSubscriber[i] = subscribers.code(subscriberCode);
+            sessionHours[i] = (int) ((endMillis - startMillis) / 3_600_000L);
+            sessionDay[i] = (byte) start.getDayOfMonth();
+            sessionHour[i] = (byte) start.getHour();
+            sessionWeekday[i] = (byte) start.getDayOfWeek().getValue();
+            sessionCount++;
+            lastSessionId = Math.max(lastSessionId, id);
+        }
+
+        /**
+         * Appends an activity event that happened in this month.
+         *
+         * @param id The source id, used as the high-water mark for the next refresh; 0 if there is none.
+         */
+        public void appendActivity(long id, String type, long timestampMillis) {
+            LocalDateTime time = Instant.ofEpochMilli(timestampMillis).atZone(zone).toLocalDateTime();
+            if (type == null || !YearMonth.from(time).equals(month)) {
+                return;
+            }
+            if (activityCount == activityType.length) {
+                int capacity = activityCount * 2;
+                activityType = Arrays.copyOf(activityType, capacity);
+                activityDay = Arrays.copyOf(activityDay, capacity);
+            }
+            activityType[activityCount] = activityTypes.code(type);
+            activityDay[activityCount] = (byte) time.getDayOfMonth();
+            activityCount++;
+            lastActivityId = Math.max(lastActivityId, id);
+        }
+    }
+
+    /**
+     * Maps strings to dense {@code int} codes and back.
+     */
+    private static final class Dictionary {
+        private final Map<String, Integer> codes = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        synchronized int code(String value) {
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = values.size();
+                codes.put(value, code);
+                values.add(value);
+            }
+            return code;
+        }
+
+        /** @return The code of a value, or -1 if it was never seen. */
+        synchronized int find(String value) {
+            Integer code = codes.get(value);
+            return code == null ? -1 : code;
+        }
+
+        synchronized String value(int code) {
+            return values.get(code);
+        }
+
+        synchronized int size() {
+            return values.size();
+        }
+    }
+}
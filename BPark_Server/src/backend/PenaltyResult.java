@@ -0,0 +1,35 @@
+package backend;
+
+/**
+ * The outcome of applying a late penalty to a subscriber: the late count after the
+ * increment and whether the account is frozen, so callers can pick the right
+ * notification without reading the subscriber again.
+ */
+public final class PenaltyResult {
+    private final int lateCount;
+    private final boolean frozen;
+    private final boolean newlyFrozen;
+
+    /**
+     * @param lateCount   The subscriber's late count after this penalty.
+     * @param frozen      Whether the account is frozen after this penalty.
+     * @param newlyFrozen Whether this penalty is what froze the account.
+     */
+    public PenaltyResult(int lateCount, boolean frozen, boolean newlyFrozen) {
+        this.lateCount = lateCount;
+        this.frozen = frozen;
+        this.newlyFrozen = newlyFrozen;
+    }
+
+    public int getLateCount() {
+        return lateCount;
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    public boolean isNewlyFrozen() {
+        return newlyFrozen;
+    }
+}
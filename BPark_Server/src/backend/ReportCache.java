@@ -0,0 +1,151 @@
+package backend;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Caches the results of the manager reports by (report type, year, month).
+ * <p>
+ * A month is closed once it ended more than {@link DBController#MAX_SESSION_HOURS} hours (plus
+ * a grace period for the delayed activity log writes) ago, and its reports are then kept
+ * indefinitely. A car can still be picked up late after that, which adds a session to the
+ * month it started in, so releases report the session start with {@link #sessionArchived}
+ * and the cached reports of a closed month are dropped. Reports of the current or a future
+ * month are kept for a short time-to-live. Empty results are also only
+ * kept for the time-to-live, since a failed query is reported as an empty list.
+ * <p>
+ * Concurrent requests for the same report wait for a single computation instead of each
+ * running the query.
+ */
+public class ReportCache {
+
+    /**
+     * The reports that can be cached.
+     */
+    public enum ReportType {
+        MONTHLY_PARKING, DAILY_LATENESS, SUBSCRIBER_HOURS, SLOT_HOURS
+    }
+
+    /** How long after a month ends before its reports are treated as final. */
+    private static final long CLOSE_GRACE_HOURS = DBController.MAX_SESSION_HOURS + 1;
+
+    private final long ttlMillis;
+    private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param ttlMillis How long reports of months that are not yet closed are kept.
+     */
+    public ReportCache(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * Returns the cached report, computing it on a miss. The returned list is shared and must not be modified.
+     *
+     * @param type   The report.
+     * @param year   The year of the report.
+     * @param month  The month of the report.
+     * @param loader Computes the report from the database.
+     * @param <T>    The type of the report rows.
+     * @return The report rows.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> ArrayList<T> get(ReportType type, int year, int month, Supplier<ArrayList<T>> loader) {
+        if (month < 1 || month > 12) {
+            return loader.get();
+        }
+        Entry entry = entries.computeIfAbsent(new Key(type, year, month), key -> new Entry());
+        synchronized (entry) {
+            long now = System.currentTimeMillis();
+            if (entry.value != null && now < entry.expiresAt) {
+                hits.incrementAndGet();
+                return (ArrayList<T>) entry.value;
+            }
+            misses.incrementAndGet();
+            ArrayList<T> value = loader.get();
+            entry.value = value;
+            entry.expiresAt = isClosed(year, month) && !value.isEmpty() ? Long.MAX_VALUE : now + ttlMillis;
+            return value;
+        }
+    }
+
+    /**
+     * Drops the cached reports of the month a released session started in, if that month is
+     * already closed; reports of open months pick the session up when their time-to-live ends.
+     * A computation that is running for the month finishes first and is then discarded.
+     *
+     * @param startMillis The start of the released session, in epoch milliseconds.
+     */
+    public void sessionArchived(long startMillis) {
+        YearMonth month = YearMonth.from(Instant.ofEpochMilli(startMillis).atZone(ZoneId.systemDefault()));
+        if (!isClosed(month.getYear(), month.getMonthValue())) {
+            return;
+        }
+        for (ReportType type : ReportType.values()) {
+            Entry entry = entries.get(new Key(type, month.getYear(), month.getMonthValue()));
+            if (entry != null) {
+                synchronized (entry) {
+                    entry.value = null;
+                    entry.expiresAt = 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return A one-line summary of the cache for the server metrics output.
+     */
+    public String describe() {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        return String.format("entries=%d hits=%d misses=%d hitRate=%.1f%%",
+            entries.size(), hitCount, misses.get(), total == 0 ? 0.0 : 100.0 * hitCount / total);
+    }
+
+    private static boolean isClosed(int year, int month) {
+        LocalDateTime closesAt = YearMonth.of(year, month).plusMonths(1).atDay(1).atStartOfDay().plusHours(CLOSE_GRACE_HOURS);
+        return LocalDateTime.now().isAfter(closesAt);
+    }
+
+    private static final class Entry {
+        Object value;
+        long expiresAt;
+    }
+
+    private static final class Key {
+        final ReportType type;
+        final int year;
+        final int month;
+
+        Key(ReportType type, int year, int month) {
+            this.type = type;
+            this.year = year;
+            this.month = month;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return type == other.type && year == other.year && month == other.month;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(type, year, month);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package backend;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Checks with EXPLAIN that the manager report statements are answered by an index range scan
+ * rather than a full table scan. Each statement is explained with the bounds of a real month;
+ * the check fails if any table in a plan is read with {@code type=ALL} or a full index scan
+ * ({@code type=index}), or if the report's main table is not read through a range or key lookup.
+ * <p>
+ * The optimizer may prefer a table scan on a nearly empty table, so the check is meant for a
+ * database with representative data. A scan of a table that EXPLAIN estimates at no more than
+ * {@value #TINY_TABLE_ROWS} row is printed as not verifiable instead of failing the check.
+ * <p>
+ * Usage: {@code java backend.ReportQueryPlans}. Exits with status 1 if a plan problem is found.
+ * It only opens a connection pool, so it can run next to the live server, but it does not
+ * migrate the schema: run it against a database the server has already migrated.
+ */
+public final class ReportQueryPlans {
+
+    /** Access types that read only the rows matching the month bounds or a key. */
+    private static final List<String> INDEXED_ACCESS = Arrays.asList("range", "ref", "eq_ref", "const", "system", "index_merge");
+
+    /** The largest row estimate at which a full scan says nothing about the plan on real data. */
+    private static final long TINY_TABLE_ROWS = 1;
+
+    /**
+     * One report statement and the table its month bounds apply to.
+     */
+    private static final class Report {
+        final String name;
+        final String sql;
+        final String mainTable;
+        final boolean timestampBounds;
+        final boolean afterId;
+
+        Report(String name, String sql, String mainTable, boolean timestampBounds, boolean afterId) {
+            this.name = name;
+            this.sql = sql;
+            this.mainTable = mainTable;
+            this.timestampBounds = timestampBounds;
+            this.afterId = afterId;
+        }
+    }
+
+    private static final List<Report> REPORTS = Arrays.asList(
+        new Report("monthly parking report", DBController.MONTHLY_REPORT_SQL, "activity_daily_counts", false, false),
+        new Report("daily lateness report", DBController.LATENESS_REPORT_SQL, "activity_daily_counts", false, false),
+        // The subscriber hours report aliases its tables; EXPLAIN lists them by alias.
+        new Report("subscriber hours report", DBController.SUBSCRIBER_HOURS_REPORT_SQL, "h", false, false),
+        new Report("slot hours report", DBController.SLOT_HOURS_REPORT_SQL, "slot_daily_hours", false, false),
+        new Report("analytics sessions", DBController.ANALYTICS_SESSIONS_SQL, "parking_history", true, true),
+        new Report("analytics activity", DBController.ANALYTICS_ACTIVITY_SQL, "activity_log", true, true)
+    );
+
+    private ReportQueryPlans() {
+    }
+
+    /**
+     * Explains every report statement for one month.
+     *
+     * @param conn  A connection to the migrated database.
+     * @param month The month whose bounds are bound to the statements.
+     * @return One line per plan problem found; empty if every report uses an index range scan.
+     * @throws SQLException If a statement cannot be explained.
+     */
+    static List<String> check(Connection conn, YearMonth month) throws SQLException {
+        List<String> problems = new ArrayList<>();
+        for (Report report : REPORTS) {
+            try (PreparedStatement stmt = conn.prepareStatement("EXPLAIN " + report.sql)) {
+                if (report.timestampBounds) {
+                    stmt.setTimestamp(1, Timestamp.valueOf(month.atDay(1).atStartOfDay()));
+                    stmt.setTimestamp(2, Timestamp.valueOf(month.plusMonths(1).atDay(1).atStartOfDay()));
+                } else {
+                    stmt.setDate(1, Date.valueOf(month.atDay(1)));
+                    stmt.setDate(2, Date.valueOf(month.plusMonths(1).atDay(1)));
+                }
+                if (report.afterId) {
+                    stmt.setLong(3, 0);
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    boolean sawMainTable = false;
+                    while (rs.next()) {
+                        String table = rs.getString("table");
+                        String type = rs.getString("type");
+                        String key = rs.getString("key");
+                        String extra = rs.getString("Extra");
+                        long rows = rs.getLong("rows");
+                        boolean rowsKnown = !rs.wasNull();
+                        System.out.println(report.name + ": table=" + table + " type=" + type + " key=" + key
+                            + " rows=" + (rowsKnown ? String.valueOf(rows) : "NULL") + (extra == null ? "" : " extra=" + extra));
+                        if (table == null || type == null) {
+                            // e.g. "no matching row in const table": the optimizer did not need to read anything.
+                            System.out.println(report.name + ": plan not checked, the optimizer found no rows to read" + (extra == null ? "" : " (" + extra + ")"));
+                            sawMainTable = true;
+                            continue;
+                        }
+                        if (("ALL".equals(type) || "index".equals(type)) && rowsKnown && rows <= TINY_TABLE_ROWS) {
+                            System.out.println(report.name + ": plan not checked, " + table + " is estimated at " + rows
+                                + " rows; run the check on representative data after ANALYZE TABLE");
+                        } else if ("ALL".equals(type) || "index".equals(type)) {
+                            problems.add(report.name + ": full " + ("ALL".equals(type) ? "table" : "index") + " scan of " + table);
+                        } else if (table.equals(report.mainTable) && !INDEXED_ACCESS.contains(type)) {
+                            problems.add(report.name + ": " + table + " is read with type=" + type + " instead of an index range scan");
+                        }
+                        sawMainTable |= table.equals(report.mainTable);
+                    }
+                    if (!sawMainTable) {
+                        problems.add(report.name + ": the plan does not read " + report.mainTable);
+                    }
+                }
+            }
+        }
+        return problems;
+    }
+
+    /**
+     * Checks the report plans of the current month against the configured database.
+     *
+     * @param args unused
+     */
+    public static void main(String[] args) {
+        DBController db = DBController.openForTool();
+        List<String> problems;
+        try {
+            problems = db.checkReportQueryPlans();
+        } catch (SQLException e) {
+            System.err.println("Failed to explain the report queries: " + e.getMessage());
+            problems = Arrays.asList(e.getMessage());
+        } finally {
+            db.shutdown();
+        }
+        if (!problems.isEmpty()) {
+            for (String problem : problems) {
+                System.err.println("Plan problem: " + problem);
+            }
+            System.exit(1);
+        }
+        System.out.println("Every report query uses an index range scan.");
+    }
+}
@@ -0,0 +1,215 @@
+package backend;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maintains the daily rollup tables that back the manager reports:
+ * <ul>
+ *   <li>'activity_daily_counts' - number of activity_log rows per activity type and day,</li>
+ *   <li>'slot_daily_hours' - parked hours per slot and day,</li>
+ *   <li>'subscriber_daily_hours' - parked hours per subscriber and day.</li>
+ * </ul>
+ * The counts are updated in the same transaction that writes a batch of activity_log rows.
+ * Releasing a parking session appends it to the 'parking_history' table and adds its hours
+ * from there, in the releasing transaction, so a monthly report reads at most one
+ * pre-aggregated row per day and never touches the live 'activeparking' table.
+ * Running this class rebuilds all rollups from activity_log and parking_history.
+ */
+public final class ReportRollups {
+
+    private static final String UPSERT_ACTIVITY_COUNT =
+        "INSERT INTO activity_daily_counts (activity_type, activity_date, activity_count) VALUES (?, ?, ?) " +
+        "ON DUPLICATE KEY UPDATE activity_count = activity_count + VALUES(activity_count)";
+
+    private static final String INSERT_HISTORY =
+        "INSERT INTO parking_history (confirmation_code, parking_space, subscriber_code, start_time, end_time, released_at) " +
+        "SELECT confirmation_code, parking_space, subscriber_id, time_of_placing_an_order, endParkTime, NOW() " +
+        "FROM activeparking WHERE confirmation_code = ? AND time_of_placing_an_order IS NOT NULL AND endParkTime IS NOT NULL";
+
+    private static final String UPSERT_SLOT_HOURS =
+        "INSERT INTO slot_daily_hours (usage_date, parking_space, total_hours) " +
+        "SELECT DATE(start_time), parking_space, TIMESTAMPDIFF(HOUR, start_time, end_time) " +
+        "FROM parking_history WHERE id = ? " +
+        "ON DUPLICATE KEY UPDATE total_hours = total_hours + VALUES(total_hours)";
+
+    private static final String UPSERT_SUBSCRIBER_HOURS =
+        "INSERT INTO subscriber_daily_hours (usage_date, subscriber_code, total_hours) " +
+        "SELECT DATE(start_time), subscriber_code, TIMESTAMPDIFF(HOUR, start_time, end_time) " +
+        "FROM parking_history WHERE id = ? " +
+        "ON DUPLICATE KEY UPDATE total_hours = total_hours + VALUES(total_hours)";
+
+    private static final String BACKFILL_SLOT_HOURS =
+        "INSERT INTO slot_daily_hours (usage_date, parking_space, total_hours) " +
+        "SELECT DATE(start_time), parking_space, SUM(TIMESTAMPDIFF(HOUR, start_time, end_time)) " +
+        "FROM parking_history GROUP BY DATE(start_time), parking_space";
+
+    private static final String BACKFILL_SUBSCRIBER_HOURS =
+        "INSERT INTO subscriber_daily_hours (usage_date, subscriber_code, total_hours) " +
+        "SELECT DATE(start_time), subscriber_code, SUM(TIMESTAMPDIFF(HOUR, start_time, end_time)) " +
+        "FROM parking_history GROUP BY DATE(start_time), subscriber_code";
+
+    /** Rebuilds 'activity_daily_counts' from the raw activity log. Also run by schema migration 2. */
+    static final String BACKFILL_ACTIVITY_COUNTS =
+        "INSERT INTO activity_daily_counts (activity_type, activity_date, activity_count) " +
+        "SELECT activity_type, DATE(activity_timestamp), COUNT(*) FROM activity_log " +
+        "WHERE activity_type IS NOT NULL GROUP BY activity_type, DATE(activity_timestamp)";
+
+    private static final String BACKFILL_LIVE_ACTIVITY_COUNTS =
+        "INSERT INTO activity_daily_counts (activity_type, activity_date, activity_count) " +
+        "SELECT activity_type, DATE(activity_timestamp), COUNT(*) FROM activity_log " +
+        "WHERE activity_timestamp >= ? AND activity_type IS NOT NULL GROUP BY activity_type, DATE(activity_timestamp)";
+
+    /** The first day after the newest month that {@link ActivityLogArchiver} moved out of activity_log. */
+    private static final String FIRST_LIVE_DAY =
+        "SELECT COALESCE(DATE_ADD(MAX(archive_month), INTERVAL 1 MONTH), DATE('1000-01-01')) FROM activity_log_archive";
+
+    private ReportRollups() {
+    }
+
+    /**
+     * Adds a batch of newly written activity log entries to the daily counts.
+     * Must be called on the connection and transaction that inserted the entries.
+     *
+     * @param conn    The connection holding the activity_log insert transaction.
+     * @param entries The entries that were inserted.
+     * @throws SQLException If the upsert fails.
+     */
+    static void addActivityCounts(Connection conn, List<ActivityLogWriter.Entry> entries) throws SQLException {
+        Map<String, Map<LocalDate, Integer>> counts = new HashMap<>();
+        for (ActivityLogWriter.Entry entry : entries) {
+            if (entry.activityType == null) {
+                continue;
+            }
+            LocalDate day = entry.timestamp.toLocalDateTime().toLocalDate();
+            counts.computeIfAbsent(entry.activityType, type -> new HashMap<>()).merge(day, 1, Integer::sum);
+        }
+        if (counts.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(UPSERT_ACTIVITY_COUNT)) {
+            for (Map.Entry<String, Map<LocalDate, Integer>> byType : counts.entrySet()) {
+                for (Map.Entry<LocalDate, Integer> byDay : byType.getValue().entrySet()) {
+                    stmt.setString(1, byType.getKey());
+                    stmt.setDate(2, Date.valueOf(byDay.getKey()));
+                    stmt.setInt(3, byDay.getValue());
+                    stmt.addBatch();
+                }
+            }
+            stmt.executeBatch();
+        }
+    }
+
+    /**
+     * Appends an active parking session to 'parking_history' and adds its hours to the slot
+     * and subscriber rollups. Must be called on the releasing transaction, before the
+     * activeparking row is deleted.
+     *
+     * @param conn             The connection holding the release transaction.
+     * @param confirmationCode The confirmation code of the session being released.
+     * @throws SQLException If the insert or an upsert fails.
+     */
+    static void archiveReleasedSession(Connection conn, String confirmationCode) throws SQLException {
+        try (PreparedStatement historyStmt = conn.prepareStatement(INSERT_HISTORY, Statement.RETURN_GENERATED_KEYS);
+             PreparedStatement slotStmt = conn.prepareStatement(UPSERT_SLOT_HOURS);
+             PreparedStatement subscriberStmt = conn.prepareStatement(UPSERT_SUBSCRIBER_HOURS)) {
+            historyStmt.setString(1, confirmationCode);
+            if (historyStmt.executeUpdate() == 0) {
+                return;
+            }
+            try (ResultSet keys = historyStmt.getGeneratedKeys()) {
+                while (keys.next()) {
+                    long historyId = keys.getLong(1);
+                    slotStmt.setLong(1, historyId);
+                    slotStmt.executeUpdate();
+                    subscriberStmt.setLong(1, historyId);
+                    subscriberStmt.executeUpdate();
+                }
+            }
+        }
+    }
+
+    /**
+     * Recomputes 'activity_daily_counts' from activity_log in one transaction. Counts of
+     * archived months are kept as they are, since their rows are no longer in the table.
+     * Intended to be run while the server is stopped, since concurrent writes during the
+     * rebuild are not reflected in it.
+     *
+     * @param conn A connection to the database.
+     * @throws SQLException If the rebuild fails; the previous counts are kept in that case.
+     */
+    static void backfillActivityCounts(Connection conn) throws SQLException {
+        conn.setAutoCommit(false);
+        try (Statement stmt = conn.createStatement()) {
+            Date firstLiveDay;
+            try (ResultSet rs = stmt.executeQuery(FIRST_LIVE_DAY)) {
+                rs.next();
+                firstLiveDay = rs.getDate(1);
+            }
+            try (PreparedStatement delete = conn.prepareStatement("DELETE FROM activity_daily_counts WHERE activity_date >= ?");
+                 PreparedStatement insert = conn.prepareStatement(BACKFILL_LIVE_ACTIVITY_COUNTS)) {
+                delete.setDate(1, firstLiveDay);
+                delete.executeUpdate();
+                insert.setDate(1, firstLiveDay);
+                insert.executeUpdate();
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Recomputes 'slot_daily_hours' and 'subscriber_daily_hours' from 'parking_history' in
+     * one transaction. Like {@link #backfillActivityCounts}, it should be run while the
+     * server is stopped.
+     *
+     * @param conn A connection to the database.
+     * @throws SQLException If the rebuild fails; the previous rollups are kept in that case.
+     */
+    static void backfillSessionHours(Connection conn) throws SQLException {
+        conn.setAutoCommit(false);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("DELETE FROM slot_daily_hours");
+            stmt.executeUpdate("DELETE FROM subscriber_daily_hours");
+            stmt.executeUpdate(BACKFILL_SLOT_HOURS);
+            stmt.executeUpdate(BACKFILL_SUBSCRIBER_HOURS);
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Rebuilds the report rollups from the existing history.
+     * Only a connection pool is opened, so it can run next to the live server.
+     * Usage: {@code java backend.ReportRollups}
+     *
+     * @param args unused
+     */
+    public static void main(String[] args) {
+        DBController db = DBController.openForTool();
+        try {
+            db.backfillReportRollups();
+            System.out.println("Report rollups rebuilt.");
+        } catch (SQLException e) {
+            System.err.println("Failed to rebuild report rollups: " + e.getMessage());
+        } finally {
+            db.shutdown();
+        }
+    }
+}
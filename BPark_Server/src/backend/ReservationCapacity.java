@@ -0,0 +1,192 @@
+package backend;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the scheduled reservations per time bucket, so admitting a new booking is a check of
+ * the few buckets it covers instead of a {@code COUNT(*)} over 'parkingorders'.
+ * <p>
+ * A reservation counts against every bucket its [start, end) interval touches, and no bucket
+ * may hold more than {@code limitPerBucket} reservations. {@link #tryReserve} increments the
+ * buckets with compare-and-set and undoes its own increments if one of them is full, so
+ * concurrent bookings can never push a bucket over the limit; at worst a racing booking is
+ * rejected while another one is being rolled back.
+ * <p>
+ * The counters are updated when a reservation is scheduled, claimed or cancelled, and a
+ * periodic {@link #reconcile} compares them with the reservations in the database. Like
+ * {@link SlotOccupancy}, a bucket is only repaired once it differs in two consecutive passes,
+ * since a single mismatch is usually a booking whose insert and counter update have not both
+ * happened yet.
+ */
+public class ReservationCapacity {
+    private final int limitPerBucket;
+    private final long bucketMillis;
+    private final Map<Long, AtomicInteger> buckets = new ConcurrentHashMap<>();
+
+    // Buckets that differed from the database in the previous reconcile pass; only touched by reconcile().
+    private Set<Long> suspects = new HashSet<>();
+
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong reconcileFixes = new AtomicLong();
+
+    /**
+     * @param limitPerBucket The most reservations allowed in any one bucket.
+     * @param bucketMillis   The length of a bucket in milliseconds.
+     */
+    public ReservationCapacity(int limitPerBucket, long bucketMillis) {
+        if (bucketMillis <= 0) {
+            throw new IllegalArgumentException("Bucket length must be positive: " + bucketMillis);
+        }
+        this.limitPerBucket = limitPerBucket;
+        this.bucketMillis = bucketMillis;
+    }
+
+    /**
+     * @param start The reservation start, in epoch milliseconds.
+     * @param end   The reservation end, in epoch milliseconds.
+     * @return Whether every bucket of the interval has room for one more reservation.
+     */
+    public boolean hasCapacity(long start, long end) {
+        for (long bucket = firstBucket(start); bucket <= lastBucket(start, end); bucket++) {
+            AtomicInteger count = buckets.get(bucket);
+            if (count != null && count.get() >= limitPerBucket) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Counts a new reservation if every bucket of its interval has room.
+     *
+     * @param start The reservation start, in epoch milliseconds.
+     * @param end   The reservation end, in epoch milliseconds.
+     * @return True if the reservation was counted, false if a bucket is full.
+     */
+    public boolean tryReserve(long start, long end) {
+        long first = firstBucket(start);
+        long last = lastBucket(start, end);
+        for (long bucket = first; bucket <= last; bucket++) {
+            AtomicInteger count = buckets.computeIfAbsent(bucket, key -> new AtomicInteger());
+            int current;
+            do {
+                current = count.get();
+                if (current >= limitPerBucket) {
+                    for (long taken = first; taken < bucket; taken++) {
+                        buckets.get(taken).decrementAndGet();
+                    }
+                    rejected.incrementAndGet();
+                    return false;
+                }
+            } while (!count.compareAndSet(current, current + 1));
+        }
+        admitted.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Stops counting a reservation that was claimed, cancelled or failed to be stored.
+     *
+     * @param start The reservation start, in epoch milliseconds.
+     * @param end   The reservation end, in epoch milliseconds.
+     */
+    public void release(long start, long end) {
+        for (long bucket = firstBucket(start); bucket <= lastBucket(start, end); bucket++) {
+            AtomicInteger count = buckets.get(bucket);
+            if (count != null) {
+                count.updateAndGet(value -> Math.max(0, value - 1));
+            }
+        }
+    }
+
+    /**
+     * Replaces all counters with the counts of the given reservations. Used for the initial load.
+     *
+     * @param reservations The reservations read from 'parkingorders'.
+     */
+    public synchronized void load(List<ReservationIndex.Reservation> reservations) {
+        buckets.clear();
+        for (Map.Entry<Long, Integer> entry : countBuckets(reservations).entrySet()) {
+            buckets.put(entry.getKey(), new AtomicInteger(entry.getValue()));
+        }
+        suspects = new HashSet<>();
+    }
+
+    /**
+     * Compares the counters with the reservations in the database and repairs buckets that
+     * differed in the previous pass too. Buckets that ended before {@code now} are dropped.
+     *
+     * @param reservations The reservations read from 'parkingorders'.
+     * @param now          The current time, in epoch milliseconds.
+     * @return The number of buckets repaired.
+     */
+    public synchronized int reconcile(List<ReservationIndex.Reservation> reservations, long now) {
+        long current = firstBucket(now);
+        buckets.keySet().removeIf(bucket -> bucket < current);
+
+        Map<Long, Integer> expected = countBuckets(reservations);
+        Set<Long> keys = new HashSet<>(buckets.keySet());
+        keys.addAll(expected.keySet());
+
+        Set<Long> mismatched = new HashSet<>();
+        int fixed = 0;
+        for (Long bucket : keys) {
+            if (bucket < current) {
+                continue;
+            }
+            int want = expected.getOrDefault(bucket, 0);
+            AtomicInteger count = buckets.get(bucket);
+            if ((count == null ? 0 : count.get()) == want) {
+                continue;
+            }
+            if (suspects.contains(bucket)) {
+                buckets.computeIfAbsent(bucket, key -> new AtomicInteger()).set(want);
+                fixed++;
+            } else {
+                mismatched.add(bucket);
+            }
+        }
+        suspects = mismatched;
+        reconcileFixes.addAndGet(fixed);
+        return fixed;
+    }
+
+    /**
+     * @return A one-line summary of the counters for the server metrics output.
+     */
+    public String describe() {
+        int busiest = 0;
+        for (AtomicInteger count : buckets.values()) {
+            busiest = Math.max(busiest, count.get());
+        }
+        return "limitPerBucket=" + limitPerBucket + " bucketMinutes=" + bucketMillis / 60000 + " buckets=" + buckets.size()
+            + " busiestBucket=" + busiest + " admitted=" + admitted.get() + " rejected=" + rejected.get()
+            + " reconcileFixes=" + reconcileFixes.get();
+    }
+
+    private Map<Long, Integer> countBuckets(List<ReservationIndex.Reservation> reservations) {
+        Map<Long, Integer> counts = new HashMap<>();
+        for (ReservationIndex.Reservation reservation : reservations) {
+            for (long bucket = firstBucket(reservation.start); bucket <= lastBucket(reservation.start, reservation.end); bucket++) {
+                counts.merge(bucket, 1, Integer::sum);
+            }
+        }
+        return counts;
+    }
+
+    private long firstBucket(long start) {
+        return Math.floorDiv(start, bucketMillis);
+    }
+
+    private long lastBucket(long start, long end) {
+        return Math.floorDiv(Math.max(start, end - 1), bucketMillis);
+    }
+}
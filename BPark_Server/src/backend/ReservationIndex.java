@@ -0,0 +1,226 @@
+package backend;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * An in-memory index of the scheduled reservations in 'parkingorders', kept as one sorted
+ * timeline per slot and by confirmation code. It answers "which slots are free for
+ * [start, end)" with one ordered-map lookup per slot instead of two range queries, resolves
+ * reservation codes without a query, and is updated whenever a reservation is scheduled,
+ * claimed or cancelled.
+ * <p>
+ * All reservations have the same length, so within a slot the reservation with the latest
+ * start before {@code end} is also the one with the latest end, and a single
+ * {@link TreeMap#lowerEntry} decides whether a slot is free.
+ */
+public class ReservationIndex {
+
+    /**
+     * A single reservation interval [start, end) in epoch milliseconds.
+     */
+    public static final class Reservation {
+        final String confirmationCode;
+        final String subscriberCode;
+        final int slot;
+        final long start;
+        final long end;
+
+        public Reservation(String confirmationCode, String subscriberCode, int slot, long start, long end) {
+            this.confirmationCode = confirmationCode;
+            this.subscriberCode = subscriberCode;
+            this.slot = slot;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    private final int totalSlots;
+    private final List<TreeMap<Long, Reservation>> timelines;
+    private final Map<String, Reservation> byCode = new HashMap<>();
+    // Codes that differed from the database in the previous reconcile pass.
+    private Set<String> suspects = new HashSet<>();
+
+    /**
+     * @param totalSlots The number of slots in the lot, numbered 1..totalSlots.
+     */
+    public ReservationIndex(int totalSlots) {
+        this.totalSlots = totalSlots;
+        this.timelines = new ArrayList<>(totalSlots);
+        for (int i = 0; i < totalSlots; i++) {
+            timelines.add(new TreeMap<>());
+        }
+    }
+
+    /**
+     * Replaces the index contents with the given reservations. Used for the initial load.
+     * Reservations are indexed even if they overlap, since they are already in the database.
+     *
+     * @param reservations The reservations read from 'parkingorders'.
+     */
+    public synchronized void load(List<Reservation> reservations) {
+        for (TreeMap<Long, Reservation> timeline : timelines) {
+            timeline.clear();
+        }
+        byCode.clear();
+        for (Reservation reservation : reservations) {
+            index(reservation);
+        }
+        suspects = new HashSet<>();
+    }
+
+    /**
+     * Compares the index with the reservations in the database and repairs the codes that
+     * differed in the previous pass too, so a booking or claim that was in flight while the
+     * table was read is not mistaken for drift.
+     *
+     * @param reservations The reservations read from 'parkingorders'.
+     * @return The number of reservations added, replaced or removed.
+     */
+    public synchronized int reconcile(List<Reservation> reservations) {
+        Map<String, Reservation> expected = new HashMap<>();
+        for (Reservation reservation : reservations) {
+            if (isValid(reservation.slot)) {
+                expected.put(reservation.confirmationCode, reservation);
+            }
+        }
+        Set<String> codes = new HashSet<>(byCode.keySet());
+        codes.addAll(expected.keySet());
+
+        Set<String> mismatched = new HashSet<>();
+        int fixed = 0;
+        for (String code : codes) {
+            Reservation indexed = byCode.get(code);
+            Reservation want = expected.get(code);
+            if (indexed != null && want != null && indexed.slot == want.slot && indexed.start == want.start) {
+                continue;
+            }
+            if (!suspects.contains(code)) {
+                mismatched.add(code);
+                continue;
+            }
+            remove(code);
+            if (want != null) {
+                index(want);
+            }
+            fixed++;
+        }
+        suspects = mismatched;
+        return fixed;
+    }
+
+    /**
+     * @param start The start of the interval, in epoch milliseconds.
+     * @param end   The end of the interval (exclusive), in epoch milliseconds.
+     * @return The slots that have no reservation overlapping [start, end), in ascending order.
+     */
+    public synchronized List<Integer> freeSlots(long start, long end) {
+        List<Integer> free = new ArrayList<>();
+        for (int slot = 1; slot <= totalSlots; slot++) {
+            if (isFree(slot, start, end)) {
+                free.add(slot);
+            }
+        }
+        return free;
+    }
+
+    /**
+     * Adds a reservation if its slot is still free for the whole interval.
+     * The check and the insert are atomic, so two bookings cannot take the same interval.
+     *
+     * @param reservation The reservation to add.
+     * @return True if it was added, false if the slot is taken or the code is already indexed.
+     */
+    public synchronized boolean tryAdd(Reservation reservation) {
+        if (!isValid(reservation.slot) || byCode.containsKey(reservation.confirmationCode)
+                || !isFree(reservation.slot, reservation.start, reservation.end)) {
+            return false;
+        }
+        timelines.get(reservation.slot - 1).put(reservation.start, reservation);
+        byCode.put(reservation.confirmationCode, reservation);
+        return true;
+    }
+
+    /**
+     * @param confirmationCode The confirmation code of the reservation.
+     * @return The reservation, or null if no reservation has this code.
+     */
+    public synchronized Reservation find(String confirmationCode) {
+        return byCode.get(confirmationCode);
+    }
+
+    /**
+     * @param slot The slot number.
+     * @param time A time in epoch milliseconds.
+     * @return The start of the first reservation on the slot starting after {@code time}, or -1 if there is none.
+     */
+    public synchronized long nextStartAfter(int slot, long time) {
+        if (!isValid(slot)) {
+            return -1;
+        }
+        Long next = timelines.get(slot - 1).higherKey(time);
+        return next == null ? -1 : next;
+    }
+
+    /**
+     * @return All indexed reservations, earliest start first.
+     */
+    public synchronized List<Reservation> snapshot() {
+        List<Reservation> all = new ArrayList<>(byCode.values());
+        all.sort((a, b) -> Long.compare(a.start, b.start));
+        return all;
+    }
+
+    /**
+     * Removes a reservation after it was claimed or cancelled.
+     *
+     * @param confirmationCode The confirmation code of the reservation.
+     * @return True if the reservation was indexed.
+     */
+    public synchronized boolean remove(String confirmationCode) {
+        Reservation reservation = byCode.remove(confirmationCode);
+        if (reservation == null) {
+            return false;
+        }
+        TreeMap<Long, Reservation> timeline = timelines.get(reservation.slot - 1);
+        timeline.remove(reservation.start, reservation);
+        return true;
+    }
+
+    /**
+     * @return The number of indexed reservations.
+     */
+    public synchronized int size() {
+        return byCode.size();
+    }
+
+    /**
+     * @return A one-line summary of the index for the server metrics output.
+     */
+    public String describe() {
+        return "reservations=" + size();
+    }
+
+    // Caller must hold the monitor. Indexes the reservation even if it overlaps another one.
+    private void index(Reservation reservation) {
+        if (isValid(reservation.slot)) {
+            timelines.get(reservation.slot - 1).put(reservation.start, reservation);
+            byCode.put(reservation.confirmationCode, reservation);
+        }
+    }
+
+    // Caller must hold the monitor.
+    private boolean isFree(int slot, long start, long end) {
+        Map.Entry<Long, Reservation> previous = timelines.get(slot - 1).lowerEntry(end);
+        return previous == null || previous.getValue().end <= start;
+    }
+
+    private boolean isValid(int slot) {
+        return slot >= 1 && slot <= totalSlots;
+    }
+}
@@ -0,0 +1,269 @@
+package backend;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Applies versioned schema changes to the 'bpark' database when the server starts.
+ * The applied versions are recorded in a 'schema_version' table, so each migration runs
+ * exactly once per database. New migrations are added to the end of {@link #MIGRATIONS}
+ * with the next version number; existing entries must never be edited.
+ * <p>
+ * A migration that the rest of the schema does not depend on, such as partitioning, is marked
+ * optional: it may have a precondition that is checked against the live schema first, and if
+ * the precondition is not met or the migration fails, it is reported and retried on the next
+ * start, while the later migrations are still applied.
+ */
+public class SchemaMigrator {
+
+    /**
+     * MySQL error codes for objects that already exist. A migration statement failing with one
+     * of these is treated as already applied, so databases that were patched by hand still migrate.
+     */
+    private static final List<Integer> ALREADY_EXISTS_ERRORS = Arrays.asList(
+        1050, // ER_TABLE_EXISTS_ERROR
+        1060, // ER_DUP_FIELDNAME
+        1061  // ER_DUP_KEYNAME
+    );
+
+    /**
+     * Checks whether a migration can run against the current schema.
+     */
+    @FunctionalInterface
+    private interface Precondition {
+        /**
+         * @return Null if the migration can run, otherwise the reason it cannot.
+         */
+        String check(Connection conn) throws SQLException;
+    }
+
+    private static final List<Migration> MIGRATIONS = Arrays.asList(
+        new Migration(1, "Indexes for the manager reports and subscriber history",
+            "CREATE INDEX idx_activity_log_type_time ON activity_log (activity_type, activity_timestamp)",
+            "CREATE INDEX idx_activity_log_subscriber_time ON activity_log (subscriber_code, activity_timestamp)",
+            "CREATE INDEX idx_activeparking_start ON activeparking (time_of_placing_an_order)"),
+        new Migration(2, "Daily rollup tables for the manager reports",
+            "CREATE TABLE activity_daily_counts (" +
+                "activity_type VARCHAR(64) NOT NULL, " +
+                "activity_date DATE NOT NULL, " +
+                "activity_count INT NOT NULL DEFAULT 0, " +
+                "PRIMARY KEY (activity_type, activity_date))",
+            "CREATE TABLE slot_daily_hours (" +
+                "usage_date DATE NOT NULL, " +
+                "parking_space INT NOT NULL, " +
+                "total_hours INT NOT NULL DEFAULT 0, " +
+                "PRIMARY KEY (usage_date, parking_space))",
+            "CREATE TABLE subscriber_daily_hours (" +
+                "usage_date DATE NOT NULL, " +
+                "subscriber_code VARCHAR(64) NOT NULL, " +
+                "total_hours INT NOT NULL DEFAULT 0, " +
+                "PRIMARY KEY (usage_date, subscriber_code))",
+            ReportRollups.BACKFILL_ACTIVITY_COUNTS),
+        new Migration(3, "Index for keyset pagination of the system-wide activity log",
+            "CREATE INDEX idx_activity_log_time ON activity_log (activity_timestamp)"),
+        new Migration(4, "Append-only history of completed parking sessions",
+            "CREATE TABLE parking_history (" +
+                "id BIGINT NOT NULL AUTO_INCREMENT, " +
+                "confirmation_code VARCHAR(64) NOT NULL, " +
+                "parking_space INT NOT NULL, " +
+                "subscriber_code VARCHAR(64) NOT NULL, " +
+                "start_time DATETIME NOT NULL, " +
+                "end_time DATETIME NOT NULL, " +
+                "released_at DATETIME NOT NULL, " +
+                "PRIMARY KEY (id), " +
+                "KEY idx_parking_history_start_slot (start_time, parking_space, end_time), " +
+                "KEY idx_parking_history_start_subscriber (start_time, subscriber_code, end_time))"),
+        // MySQL requires the partitioning column in every unique key, so the primary key becomes (id, activity_timestamp).
+        // ActivityLogArchiver splits p_future into monthly partitions on its first run, and does nothing while the table
+        // is not partitioned, so this migration is optional. It used to create activity_log_archive as well; that table
+        // is read whether or not activity_log is partitioned, so it moved to the required migration 7.
+        new Migration(5, "Month-partitioned activity_log", SchemaMigrator::checkActivityLogPartitioning,
+            "ALTER TABLE activity_log " +
+                "MODIFY activity_timestamp DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP, " +
+                "DROP PRIMARY KEY, ADD PRIMARY KEY (id, activity_timestamp)",
+            "ALTER TABLE activity_log PARTITION BY RANGE (TO_DAYS(activity_timestamp)) " +
+                "(PARTITION p_future VALUES LESS THAN MAXVALUE)"),
+        new Migration(6, "Reminder claims, so due reminders are claimed in bulk before sending",
+            "ALTER TABLE parkingorders " +
+                "ADD COLUMN reminder_claim CHAR(36) NULL, " +
+                "ADD COLUMN reminder_claimed_at DATETIME NULL",
+            "CREATE INDEX idx_parkingorders_reminder_claim ON parkingorders (reminder_claim)"),
+        // Already present where migration 5 ran in its earlier form; the duplicate CREATE is then skipped.
+        new Migration(7, "Bookkeeping of the activity_log months moved to the archive",
+            "CREATE TABLE activity_log_archive (" +
+                "archive_month DATE NOT NULL, " +
+                "row_count INT NOT NULL, " +
+                "archived_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, " +
+                "PRIMARY KEY (archive_month))")
+    );
+
+    private final ConnectionPool pool;
+
+    /**
+     * @param pool The connection pool of the database to migrate.
+     */
+    public SchemaMigrator(ConnectionPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Applies every migration that is not recorded in 'schema_version', in order.
+     * Stops at the first required migration that fails so later ones never run against a
+     * partial schema; optional migrations that cannot run are reported and skipped.
+     *
+     * @return The highest applied schema version after migrating.
+     * @throws SQLException If reading the version table or applying a required migration fails.
+     */
+    public int migrate() throws SQLException {
+        try (Connection conn = pool.getConnection()) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("CREATE TABLE IF NOT EXISTS schema_version (" +
+                    "version INT NOT NULL PRIMARY KEY, " +
+                    "description VARCHAR(255) NOT NULL, " +
+                    "applied_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP)");
+            }
+
+            Set<Integer> applied = appliedVersions(conn);
+            for (Migration migration : MIGRATIONS) {
+                if (applied.contains(migration.version)) {
+                    continue;
+                }
+                if (migration.precondition != null) {
+                    String reason = migration.precondition.check(conn);
+                    if (reason != null) {
+                        System.err.println("Skipping optional schema migration " + migration.version + " (" + migration.description + "): " + reason);
+                        continue;
+                    }
+                }
+                try {
+                    apply(conn, migration);
+                } catch (SQLException e) {
+                    if (migration.precondition == null) {
+                        throw e;
+                    }
+                    System.err.println("Optional schema migration " + migration.version + " failed, it will be retried on the next start: " + e.getMessage());
+                    continue;
+                }
+                applied.add(migration.version);
+                System.out.println("Applied schema migration " + migration.version + ": " + migration.description);
+            }
+            return applied.isEmpty() ? 0 : Collections.max(applied);
+        }
+    }
+
+    private Set<Integer> appliedVersions(Connection conn) throws SQLException {
+        Set<Integer> versions = new HashSet<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT version FROM schema_version")) {
+            while (rs.next()) {
+                versions.add(rs.getInt(1));
+            }
+        }
+        return versions;
+    }
+
+    private void apply(Connection conn, Migration migration) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            for (String sql : migration.statements) {
+                try {
+                    stmt.execute(sql);
+                } catch (SQLException e) {
+                    if (!ALREADY_EXISTS_ERRORS.contains(e.getErrorCode())) {
+                        throw new SQLException("Schema migration " + migration.version + " failed on: " + sql, e.getSQLState(), e.getErrorCode(), e);
+                    }
+                }
+            }
+        }
+        record(conn, migration);
+    }
+
+    private void record(Connection conn, Migration migration) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO schema_version (version, description) VALUES (?, ?)")) {
+            stmt.setInt(1, migration.version);
+            stmt.setString(2, migration.description);
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Checks the MySQL restrictions on partitioned tables that migration 5 would otherwise fail on:
+     * the table must use InnoDB, must have the primary key (id) the migration replaces, must not
+     * take part in a foreign key, must have every other unique key include activity_timestamp,
+     * and must not hold rows without a timestamp.
+     */
+    private static String checkActivityLogPartitioning(Connection conn) throws SQLException {
+        if (count(conn, "SELECT COUNT(*) FROM information_schema.PARTITIONS " +
+                "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'activity_log' AND PARTITION_NAME IS NOT NULL") > 0) {
+            return "activity_log is already partitioned";
+        }
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT ENGINE FROM information_schema.TABLES " +
+                 "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'activity_log'")) {
+            if (!rs.next()) {
+                return "activity_log does not exist";
+            }
+            if (!"InnoDB".equalsIgnoreCase(rs.getString(1))) {
+                return "activity_log uses the " + rs.getString(1) + " engine, only InnoDB tables can be partitioned";
+            }
+        }
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT GROUP_CONCAT(COLUMN_NAME ORDER BY SEQ_IN_INDEX) FROM information_schema.STATISTICS " +
+                 "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'activity_log' AND INDEX_NAME = 'PRIMARY'")) {
+            String primaryKey = rs.next() ? rs.getString(1) : null;
+            if (!"id".equals(primaryKey) && !"id,activity_timestamp".equals(primaryKey)) {
+                return "activity_log has primary key (" + primaryKey + "), expected (id)";
+            }
+        }
+        if (count(conn, "SELECT COUNT(*) FROM information_schema.KEY_COLUMN_USAGE WHERE TABLE_SCHEMA = DATABASE() " +
+                "AND REFERENCED_TABLE_NAME IS NOT NULL AND (TABLE_NAME = 'activity_log' OR REFERENCED_TABLE_NAME = 'activity_log')") > 0) {
+            return "activity_log has or is referenced by a foreign key, which partitioned tables do not support";
+        }
+        if (count(conn, "SELECT COUNT(*) FROM (SELECT INDEX_NAME FROM information_schema.STATISTICS " +
+                "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'activity_log' AND NON_UNIQUE = 0 AND INDEX_NAME <> 'PRIMARY' " +
+                "GROUP BY INDEX_NAME HAVING SUM(COLUMN_NAME = 'activity_timestamp') = 0) keys_without_timestamp") > 0) {
+            return "activity_log has a unique key without activity_timestamp";
+        }
+        if (count(conn, "SELECT COUNT(*) FROM (SELECT 1 FROM activity_log WHERE activity_timestamp IS NULL LIMIT 1) nulls") > 0) {
+            return "activity_log has rows without an activity_timestamp";
+        }
+        return null;
+    }
+
+    private static long count(Connection conn, String sql) throws SQLException {
+        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private static class Migration {
+        final int version;
+        final String description;
+        final Precondition precondition;
+        final String[] statements;
+
+        /**
+         * A required migration: if it fails, no later migration is applied.
+         */
+        Migration(int version, String description, String... statements) {
+            this(version, description, null, statements);
+        }
+
+        /**
+         * An optional migration: it runs only if the precondition allows it, and if it fails, the later migrations are still applied.
+         */
+        Migration(int version, String description, Precondition precondition, String... statements) {
+            this.version = version;
+            this.description = description;
+            this.precondition = precondition;
+            this.statements = statements;
+        }
+    }
+}
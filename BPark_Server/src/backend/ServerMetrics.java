@@ -0,0 +1,44 @@
+package backend;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Supplier;
+
+/**
+ * A small registry of named metric sources for the server.
+ * Components register a supplier that renders their current state as one line of text,
+ * and {@link #describe()} collects all of them for the GET_SERVER_METRICS command.
+ */
+public final class ServerMetrics {
+    private static final Map<String, Supplier<String>> sources = new ConcurrentSkipListMap<>();
+
+    private ServerMetrics() {
+    }
+
+    /**
+     * Registers (or replaces) a metric source.
+     *
+     * @param name   A short, dotted name such as "db.pool".
+     * @param source A supplier producing the current state of the component.
+     */
+    public static void register(String name, Supplier<String> source) {
+        sources.put(name, source);
+    }
+
+    /**
+     * @return All registered metrics, one "name: value" line per source, sorted by name.
+     */
+    public static String describe() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Supplier<String>> entry : sources.entrySet()) {
+            String value;
+            try {
+                value = entry.getValue().get();
+            } catch (RuntimeException e) {
+                value = "unavailable (" + e.getMessage() + ")";
+            }
+            sb.append(entry.getKey()).append(": ").append(value).append('\n');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,235 @@
+package backend;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The in-memory occupancy state of the parking lot, one bit per slot.
+ * It is loaded from 'activeparking' at startup and updated by the server whenever a car is
+ * parked or released, so slot queries never have to touch the database.
+ * <p>
+ * The bits live in an {@link AtomicLongArray} and are changed with compare-and-set, so
+ * concurrent updates of slots that share a word do not overwrite each other. The same CAS
+ * is used by {@link #claimFreeSlot()} to hand out free slots: two concurrent callers can
+ * never both succeed in setting the same bit, so a slot is never allocated twice.
+ * A periodic {@link #reconcile} compares the bitmap with the database and repairs slots
+ * whose state differs in two consecutive passes; a single mismatch is usually a park or
+ * release whose database write and bitmap update have not both happened yet.
+ */
+public class SlotOccupancy {
+
+    private final int totalSlots;
+    private final AtomicLongArray words;
+
+    // Slots that differed from the database in the previous reconcile pass; only touched by reconcile().
+    private BitSet suspects = new BitSet();
+
+    private final AtomicLong reconcilePasses = new AtomicLong();
+    private final AtomicLong reconcileFixes = new AtomicLong();
+
+    /**
+     * @param totalSlots The number of slots in the lot, numbered 1..totalSlots.
+     */
+    public SlotOccupancy(int totalSlots) {
+        this.totalSlots = totalSlots;
+        this.words = new AtomicLongArray((totalSlots + 63) / 64);
+    }
+
+    /**
+     * @return The number of slots in the lot.
+     */
+    public int getTotalSlots() {
+        return totalSlots;
+    }
+
+    /**
+     * Replaces the whole bitmap with the given occupied slots. Used for the initial load.
+     *
+     * @param occupiedSlots The occupied slot numbers.
+     */
+    public synchronized void load(Iterable<Integer> occupiedSlots) {
+        for (int i = 0; i < words.length(); i++) {
+            words.set(i, 0L);
+        }
+        for (int slot : occupiedSlots) {
+            if (isValid(slot)) {
+                markOccupied(slot);
+            }
+        }
+        suspects = new BitSet();
+    }
+
+    /**
+     * @param slot The slot number.
+     * @return True if the slot is occupied.
+     */
+    public boolean isOccupied(int slot) {
+        if (!isValid(slot)) {
+            return false;
+        }
+        int bit = slot - 1;
+        return (words.get(bit >>> 6) & (1L << bit)) != 0;
+    }
+
+    /**
+     * Marks a slot as occupied.
+     *
+     * @param slot The slot number.
+     * @return True if the slot was free before this call.
+     */
+    public boolean markOccupied(int slot) {
+        if (!isValid(slot)) {
+            return false;
+        }
+        int bit = slot - 1;
+        int index = bit >>> 6;
+        long mask = 1L << bit;
+        while (true) {
+            long current = words.get(index);
+            if ((current & mask) != 0) {
+                return false;
+            }
+            if (words.compareAndSet(index, current, current | mask)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Marks a slot as free.
+     *
+     * @param slot The slot number.
+     * @return True if the slot was occupied before this call.
+     */
+    public boolean markFree(int slot) {
+        if (!isValid(slot)) {
+            return false;
+        }
+        int bit = slot - 1;
+        int index = bit >>> 6;
+        long mask = 1L << bit;
+        while (true) {
+            long current = words.get(index);
+            if ((current & mask) == 0) {
+                return false;
+            }
+            if (words.compareAndSet(index, current, current & ~mask)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Atomically claims a free slot. The search starts at a random word so concurrent
+     * callers spread over the lot instead of all contending for the lowest free slot.
+     * The claim must be given back with {@link #markFree} if the caller cannot use it.
+     *
+     * @return The claimed slot number, or -1 if the lot is full.
+     */
+    public int claimFreeSlot() {
+        int wordCount = words.length();
+        int start = ThreadLocalRandom.current().nextInt(wordCount);
+        for (int n = 0; n < wordCount; n++) {
+            int index = (start + n) % wordCount;
+            long validMask = validMask(index);
+            while (true) {
+                long current = words.get(index);
+                long free = ~current & validMask;
+                if (free == 0) {
+                    break;
+                }
+                long lowestFree = Long.lowestOneBit(free);
+                if (words.compareAndSet(index, current, current | lowestFree)) {
+                    return index * 64 + Long.numberOfTrailingZeros(lowestFree) + 1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return The occupied slot numbers in ascending order.
+     */
+    public ArrayList<Integer> occupiedSlots() {
+        ArrayList<Integer> occupied = new ArrayList<>();
+        for (int index = 0; index < words.length(); index++) {
+            long word = words.get(index);
+            while (word != 0) {
+                int bit = Long.numberOfTrailingZeros(word);
+                occupied.add(index * 64 + bit + 1);
+                word &= word - 1;
+            }
+        }
+        return occupied;
+    }
+
+    /**
+     * @return The number of occupied slots.
+     */
+    public int occupiedCount() {
+        int count = 0;
+        for (int index = 0; index < words.length(); index++) {
+            count += Long.bitCount(words.get(index));
+        }
+        return count;
+    }
+
+    /**
+     * Compares the bitmap with the occupied slots read from the database and repairs slots
+     * that were already mismatched in the previous pass.
+     *
+     * @param databaseSlots The slots that are occupied according to 'activeparking'.
+     * @return The number of slots that were repaired.
+     */
+    public synchronized int reconcile(Iterable<Integer> databaseSlots) {
+        BitSet expected = new BitSet(totalSlots);
+        for (int slot : databaseSlots) {
+            if (isValid(slot)) {
+                expected.set(slot - 1);
+            }
+        }
+
+        BitSet mismatched = new BitSet(totalSlots);
+        for (int bit = 0; bit < totalSlots; bit++) {
+            if (expected.get(bit) != isOccupied(bit + 1)) {
+                mismatched.set(bit);
+            }
+        }
+
+        BitSet persistent = (BitSet) mismatched.clone();
+        persistent.and(suspects);
+        for (int bit = persistent.nextSetBit(0); bit >= 0; bit = persistent.nextSetBit(bit + 1)) {
+            int slot = bit + 1;
+            boolean changed = expected.get(bit) ? markOccupied(slot) : markFree(slot);
+            if (changed) {
+                System.err.println("Slot occupancy: slot " + slot + " corrected to " + (expected.get(bit) ? "occupied" : "free") + " from the database.");
+            }
+        }
+        mismatched.andNot(persistent);
+        suspects = mismatched;
+
+        reconcilePasses.incrementAndGet();
+        reconcileFixes.addAndGet(persistent.cardinality());
+        return persistent.cardinality();
+    }
+
+    /**
+     * @return A one-line summary of the occupancy state for the server metrics output.
+     */
+    public String describe() {
+        return "occupied=" + occupiedCount() + "/" + totalSlots + " reconcilePasses=" + reconcilePasses.get() + " reconcileFixes=" + reconcileFixes.get();
+    }
+
+    // The bits of a word that correspond to real slots; only the last word can be partial.
+    private long validMask(int index) {
+        int bitsInWord = Math.min(64, totalSlots - index * 64);
+        return bitsInWord == 64 ? -1L : (1L << bitsInWord) - 1;
+    }
+
+    private boolean isValid(int slot) {
+        return slot >= 1 && slot <= totalSlots;
+    }
+}
@@ -0,0 +1,125 @@
+package backend;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A stress check for {@link SlotOccupancy}: many threads race to claim slots with
+ * {@link SlotOccupancy#claimFreeSlot()} (walk-in parking) and {@link SlotOccupancy#markOccupied}
+ * (a reservation's own slot), hold them briefly and give them back with
+ * {@link SlotOccupancy#markFree}. Every claim is checked against an independent per-slot
+ * holder count, so a slot handed out twice, or freed while not held, is reported as a violation.
+ * <p>
+ * Two rounds are run: one on a lot of {@code bpark.slots.total} slots, and one on a lot with
+ * fewer slots than threads, so that claims also race on a full lot.
+ * <p>
+ * Usage: {@code java backend.SlotOccupancyStress [threads [claimsPerThread]]}.
+ * Exits with status 1 if any violation is found.
+ */
+public class SlotOccupancyStress {
+    private static final int DEFAULT_THREADS = Math.max(8, Runtime.getRuntime().availableProcessors() * 4);
+    private static final int DEFAULT_CLAIMS_PER_THREAD = 500_000;
+
+    /**
+     * The outcome of one round.
+     */
+    private static final class Round {
+        final AtomicLong claims = new AtomicLong();
+        final AtomicLong fullLot = new AtomicLong();
+        final AtomicLong violations = new AtomicLong();
+    }
+
+    /**
+     * Runs both rounds and prints their totals.
+     *
+     * @param args Optionally the number of threads and the number of claims per thread.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_THREADS;
+        int claimsPerThread = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_CLAIMS_PER_THREAD;
+        int lotSize = Integer.getInteger("bpark.slots.total", 100);
+
+        boolean ok = run("lot of " + lotSize + " slots", lotSize, threads, claimsPerThread);
+        ok &= run("lot of " + Math.max(1, threads / 2) + " slots", Math.max(1, threads / 2), threads, claimsPerThread);
+        if (!ok) {
+            System.err.println("Slot occupancy stress check FAILED.");
+            System.exit(1);
+        }
+        System.out.println("Slot occupancy stress check passed.");
+    }
+
+    private static boolean run(String name, int slots, int threads, int claimsPerThread) throws InterruptedException {
+        SlotOccupancy occupancy = new SlotOccupancy(slots);
+        AtomicIntegerArray holders = new AtomicIntegerArray(slots + 1);
+        Round round = new Round();
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger finished = new AtomicInteger();
+
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < claimsPerThread; i++) {
+                    int slot;
+                    if (random.nextInt(4) == 0) {
+                        int wanted = random.nextInt(slots) + 1;
+                        slot = occupancy.markOccupied(wanted) ? wanted : -1;
+                    } else {
+                        slot = occupancy.claimFreeSlot();
+                        if (slot == -1) {
+                            round.fullLot.incrementAndGet();
+                        }
+                    }
+                    if (slot == -1) {
+                        continue;
+                    }
+                    round.claims.incrementAndGet();
+                    if (slot < 1 || slot > slots || holders.incrementAndGet(slot) != 1) {
+                        violation(round, "slot " + slot + " was handed out while already held");
+                    }
+                    if (random.nextInt(8) == 0) {
+                        Thread.yield();
+                    }
+                    holders.decrementAndGet(slot);
+                    if (!occupancy.markFree(slot)) {
+                        violation(round, "slot " + slot + " was already free when its holder released it");
+                    }
+                }
+                finished.incrementAndGet();
+            }, "slot-stress-" + (t + 1));
+            workers[t].start();
+        }
+
+        long started = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsedMillis = Math.max(1, (System.nanoTime() - started) / 1_000_000);
+
+        if (finished.get() != threads) {
+            violation(round, (threads - finished.get()) + " threads did not finish");
+        }
+        if (occupancy.occupiedCount() != 0) {
+            violation(round, occupancy.occupiedCount() + " slots are still occupied after every holder released its slot");
+        }
+        System.out.println(String.format("%s: threads=%d claims=%d fullLot=%d violations=%d (%d ms, %.0f claims/s)",
+            name, threads, round.claims.get(), round.fullLot.get(), round.violations.get(), elapsedMillis,
+            round.claims.get() * 1000.0 / elapsedMillis));
+        return round.violations.get() == 0;
+    }
+
+    private static void violation(Round round, String message) {
+        if (round.violations.incrementAndGet() <= 10) {
+            System.err.println("Violation: " + message);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package backend;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import common.SubscriberInfo;
+
+/**
+ * A bounded, least-recently-used cache of subscriber records keyed by subscription code.
+ * Reads go through {@link #get}, which loads from the database on a miss. Every method
+ * that changes a subscriber row must call {@link #invalidate} after the change is committed.
+ * <p>
+ * A load that races with an invalidation of the same cache is not stored, so a reader that
+ * fetched the row just before an update cannot put the old version back into the cache.
+ */
+public class SubscriberCache {
+
+    private final int maxEntries;
+    private final Map<String, SubscriberInfo> entries;
+    private long invalidations;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param maxEntries The maximum number of cached subscribers.
+     */
+    public SubscriberCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<String, SubscriberInfo>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SubscriberInfo> eldest) {
+                if (size() > SubscriberCache.this.maxEntries) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached subscriber, loading it on a miss. Subscribers that do not exist are not cached.
+     *
+     * @param subscriptionCode The subscription code.
+     * @param loader           Loads the subscriber from the database; may return null.
+     * @return The subscriber, or null if it does not exist.
+     */
+    public SubscriberInfo get(String subscriptionCode, Function<String, SubscriberInfo> loader) {
+        long generation;
+        synchronized (this) {
+            SubscriberInfo cached = entries.get(subscriptionCode);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return cached;
+            }
+            generation = invalidations;
+        }
+        misses.incrementAndGet();
+        SubscriberInfo loaded = loader.apply(subscriptionCode);
+        if (loaded != null) {
+            synchronized (this) {
+                if (generation == invalidations) {
+                    entries.put(subscriptionCode, loaded);
+                }
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Drops a subscriber from the cache after its row was changed.
+     *
+     * @param subscriptionCode The subscription code.
+     */
+    public synchronized void invalidate(String subscriptionCode) {
+        invalidations++;
+        entries.remove(subscriptionCode);
+    }
+
+    /**
+     * @return A one-line summary of the cache for the server metrics output.
+     */
+    public String describe() {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        int size;
+        synchronized (this) {
+            size = entries.size();
+        }
+        return String.format("size=%d/%d hits=%d misses=%d evictions=%d hitRate=%.1f%%",
+            size, maxEntries, hitCount, misses.get(), evictions.get(), total == 0 ? 0.0 : 100.0 * hitCount / total);
+    }
+}
@@ -0,0 +1,392 @@
+package backend;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
+
+import common.SubscriberInfo;
+
+/**
+ * Imports subscribers in bulk from a CSV file with the columns
+ * {@code subscriptionCode,userName,phoneNumber,email,id}; a header line is optional.
+ * Fields may be quoted with double quotes, with {@code ""} for a quote inside a field.
+ * <p>
+ * The file is streamed, so its size does not matter. Each row is validated, and valid rows
+ * are handed to {@link BParkRepository#insertSubscribers} in chunks of {@code batchSize},
+ * which inserts each chunk as one JDBC batch in one transaction. A welcome email is then
+ * queued for every inserted row; queueing waits for room, so a large import is slowed down
+ * to the rate the mail server accepts. Invalid rows, rows the database rejects and rows
+ * whose welcome email could not be sent are reported with their line number and do not
+ * stop the import.
+ * <p>
+ * Run from the command line with {@code java backend.SubscriberImporter subscribers.csv}.
+ * It only opens a connection pool, so it can run next to the live server, and it does not
+ * exit before every queued welcome email has been attempted.
+ */
+public class SubscriberImporter {
+    private static final int BATCH_SIZE = Integer.getInteger("bpark.import.batchSize", 500);
+    /** The most row errors kept in a {@link Result}; later ones are only counted. */
+    private static final int MAX_REPORTED_ERRORS = Integer.getInteger("bpark.import.maxReportedErrors", 1000);
+
+    private static final int MAX_CODE_LENGTH = 64;
+    private static final int MAX_FIELD_LENGTH = 255;
+    private static final Pattern PHONE = Pattern.compile("\\+?[0-9][0-9 -]{5,19}");
+    private static final Pattern EMAIL = Pattern.compile("[^@\\s]+@[^@\\s]+\\.[^@\\s]+");
+    private static final Pattern PERSONAL_ID = Pattern.compile("[0-9]{5,12}");
+
+    /**
+     * Receives the running totals after every chunk.
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+        void onProgress(Result progress);
+    }
+
+    /**
+     * A row that was not imported.
+     */
+    public static final class RowError {
+        private final long line;
+        private final String subscriptionCode;
+        private final String message;
+
+        RowError(long line, String subscriptionCode, String message) {
+            this.line = line;
+            this.subscriptionCode = subscriptionCode;
+            this.message = message;
+        }
+
+        public long getLine() {
+            return line;
+        }
+
+        public String getSubscriptionCode() {
+            return subscriptionCode;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return "line " + line + (subscriptionCode == null ? "" : " (" + subscriptionCode + ")") + ": " + message;
+        }
+    }
+
+    /**
+     * The totals of an import, also used for progress reports while it runs.
+     */
+    public static final class Result {
+        private final long startedAt = System.currentTimeMillis();
+        private long rowsRead;
+        private long imported;
+        private long rejected;
+        private final List<RowError> errors = new ArrayList<>();
+        // Updated by the mail senders while the import goes on.
+        private final AtomicLong emailsSent = new AtomicLong();
+        private final AtomicLong emailsFailed = new AtomicLong();
+        private final List<RowError> emailErrors = Collections.synchronizedList(new ArrayList<>());
+
+        public long getRowsRead() {
+            return rowsRead;
+        }
+
+        public long getImported() {
+            return imported;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+
+        /**
+         * @return The first rejected rows, at most {@code bpark.import.maxReportedErrors} of them.
+         */
+        public List<RowError> getErrors() {
+            return errors;
+        }
+
+        public long getEmailsSent() {
+            return emailsSent.get();
+        }
+
+        public long getEmailsFailed() {
+            return emailsFailed.get();
+        }
+
+        /**
+         * @return The first imported rows whose welcome email was not sent, at most
+         *         {@code bpark.import.maxReportedErrors} of them.
+         */
+        public List<RowError> getEmailErrors() {
+            synchronized (emailErrors) {
+                return new ArrayList<>(emailErrors);
+            }
+        }
+
+        @Override
+        public String toString() {
+            long elapsed = Math.max(1, System.currentTimeMillis() - startedAt);
+            return String.format("read=%d imported=%d rejected=%d emailsSent=%d emailsFailed=%d (%.0f rows/s)",
+                rowsRead, imported, rejected, emailsSent.get(), emailsFailed.get(), rowsRead * 1000.0 / elapsed);
+        }
+
+        private void reject(long line, String code, String message) {
+            rejected++;
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add(new RowError(line, code, message));
+            }
+        }
+
+        private void emailFailed(long line, String code, String message) {
+            emailsFailed.incrementAndGet();
+            synchronized (emailErrors) {
+                if (emailErrors.size() < MAX_REPORTED_ERRORS) {
+                    emailErrors.add(new RowError(line, code, message));
+                }
+            }
+        }
+    }
+
+    private final BParkRepository repository;
+    private final MailQueue welcomeMail;
+    private final int batchSize;
+
+    /**
+     * @param repository  Where the subscribers are inserted.
+     * @param welcomeMail The queue for the welcome emails, or null to send none.
+     * @param batchSize   The number of rows inserted per batch and transaction.
+     */
+    public SubscriberImporter(BParkRepository repository, MailQueue welcomeMail, int batchSize) {
+        this.repository = repository;
+        this.welcomeMail = welcomeMail;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * Imports every row of a CSV stream.
+     *
+     * @param csv      The CSV content; it is read to the end but not closed.
+     * @param listener Receives progress after each chunk, or null.
+     * @return The totals and the rejected rows.
+     * @throws IOException If the stream cannot be read.
+     */
+    public Result importCsv(Reader csv, ProgressListener listener) throws IOException {
+        Result result = new Result();
+        BufferedReader in = csv instanceof BufferedReader ? (BufferedReader) csv : new BufferedReader(csv);
+        Set<String> seenCodes = new HashSet<>();
+        List<SubscriberInfo> chunk = new ArrayList<>(batchSize);
+        List<Long> chunkLines = new ArrayList<>(batchSize);
+        long lineNumber = 0;
+        String line;
+        while ((line = in.readLine()) != null) {
+            lineNumber++;
+            if (line.trim().isEmpty() || (lineNumber == 1 && line.trim().toLowerCase().startsWith("subscriptioncode"))) {
+                continue;
+            }
+            result.rowsRead++;
+            List<String> fields = parseLine(line);
+            String code = fields != null && !fields.get(0).isEmpty() ? fields.get(0) : null;
+            String error = fields == null ? "Unterminated quoted field" : validate(fields);
+            if (error == null && !seenCodes.add(code)) {
+                error = "Duplicate subscription code in file";
+            }
+            if (error != null) {
+                result.reject(lineNumber, code, error);
+                continue;
+            }
+            chunk.add(new SubscriberInfo(code, fields.get(1), fields.get(2), fields.get(3), fields.get(4), 0, false));
+            chunkLines.add(lineNumber);
+            if (chunk.size() >= batchSize) {
+                flush(chunk, chunkLines, result, listener);
+            }
+        }
+        flush(chunk, chunkLines, result, listener);
+        return result;
+    }
+
+    private void flush(List<SubscriberInfo> chunk, List<Long> chunkLines, Result result, ProgressListener listener) {
+        if (!chunk.isEmpty()) {
+            List<String> errors = repository.insertSubscribers(chunk);
+            for (int i = 0; i < chunk.size(); i++) {
+                if (errors.get(i) == null) {
+                    result.imported++;
+                    queueWelcomeEmail(chunk.get(i), chunkLines.get(i), result);
+                } else {
+                    result.reject(chunkLines.get(i), chunk.get(i).getSubscriptionCode(), errors.get(i));
+                }
+            }
+            chunk.clear();
+            chunkLines.clear();
+            if (listener != null) {
+                listener.onProgress(result);
+            }
+        }
+    }
+
+    /**
+     * Queues the welcome email of an imported row, waiting for room in the queue.
+     * The outcome of the send is recorded in the result against the row's line.
+     */
+    private void queueWelcomeEmail(SubscriberInfo subscriber, long line, Result result) {
+        if (welcomeMail == null) {
+            return;
+        }
+        String code = subscriber.getSubscriptionCode();
+        String email = subscriber.getEmail();
+        if (Thread.currentThread().isInterrupted()) {
+            result.emailFailed(line, code, "Welcome email to " + email + " was not queued: import interrupted");
+            return;
+        }
+        try {
+            welcomeMail.put(() -> {
+                boolean sent;
+                try {
+                    sent = EmailService.sendWelcomeEmail(email, code);
+                } catch (RuntimeException e) {
+                    sent = false;
+                }
+                if (sent) {
+                    result.emailsSent.incrementAndGet();
+                } else {
+                    result.emailFailed(line, code, "Welcome email to " + email + " could not be sent");
+                }
+                return sent;
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.emailFailed(line, code, "Welcome email to " + email + " was not queued: import interrupted");
+        }
+    }
+
+    /**
+     * @return The reason the row is invalid, or null if it can be inserted.
+     */
+    private static String validate(List<String> fields) {
+        if (fields.size() != 5) {
+            return "Expected 5 fields but found " + fields.size();
+        }
+        String code = fields.get(0), name = fields.get(1), phone = fields.get(2), email = fields.get(3), id = fields.get(4);
+        if (code.isEmpty() || code.length() > MAX_CODE_LENGTH) {
+            return "Subscription code must be 1 to " + MAX_CODE_LENGTH + " characters";
+        }
+        if (name.isEmpty() || name.length() > MAX_FIELD_LENGTH) {
+            return "Name must be 1 to " + MAX_FIELD_LENGTH + " characters";
+        }
+        if (!PHONE.matcher(phone).matches()) {
+            return "Invalid phone number: " + phone;
+        }
+        if (email.length() > MAX_FIELD_LENGTH || !EMAIL.matcher(email).matches()) {
+            return "Invalid email address: " + email;
+        }
+        if (!PERSONAL_ID.matcher(id).matches()) {
+            return "Invalid ID: " + id;
+        }
+        return null;
+    }
+
+    /**
+     * Splits one CSV line into trimmed fields.
+     *
+     * @return The fields, or null if a quoted field is not closed on the same line.
+     */
+    static List<String> parseLine(String line) {
+        List<String> fields = new ArrayList<>(5);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString().trim());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            return null;
+        }
+        fields.add(field.toString().trim());
+        return fields;
+    }
+
+    /**
+     * Imports a CSV file into the MySQL database, printing progress and the rejected rows.
+     * Before exiting, waits without a time limit until every queued welcome email has been
+     * attempted, then lists the rows whose welcome email was not sent.
+     *
+     * @param args The path of the CSV file.
+     */
+    public static void main(String[] args) {
+        if (args.length != 1) {
+            System.err.println("Usage: java backend.SubscriberImporter <subscribers.csv>");
+            return;
+        }
+        DBController db = DBController.openForTool();
+        MailQueue welcomeMail = DBController.newMailQueue();
+        SubscriberImporter importer = new SubscriberImporter(db, welcomeMail, BATCH_SIZE);
+        // Kept from the progress reports, so rows imported before a read error are still reported.
+        AtomicReference<Result> progressed = new AtomicReference<>();
+        Result result = null;
+        try (Reader in = Files.newBufferedReader(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+            result = importer.importCsv(in, progress -> {
+                progressed.set(progress);
+                System.out.println("Import progress: " + progress);
+            });
+            for (RowError error : result.getErrors()) {
+                System.err.println("Rejected " + error);
+            }
+            if (result.getRejected() > result.getErrors().size()) {
+                System.err.println("... and " + (result.getRejected() - result.getErrors().size()) + " more rejected rows.");
+            }
+            System.out.println("Import finished: " + result);
+        } catch (IOException e) {
+            System.err.println("Failed to read " + args[0] + ": " + e.getMessage());
+        } finally {
+            System.out.println("Waiting for the queued welcome emails to be sent: " + welcomeMail.describe());
+            try {
+                welcomeMail.drain();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                System.err.println("Interrupted while waiting for welcome emails: " + welcomeMail.describe());
+            }
+            db.shutdown();
+        }
+        if (result == null) {
+            result = progressed.get();
+        }
+        if (result != null) {
+            List<RowError> emailErrors = result.getEmailErrors();
+            for (RowError error : emailErrors) {
+                System.err.println("Welcome email not sent for " + error);
+            }
+            if (result.getEmailsFailed() > emailErrors.size()) {
+                System.err.println("... and " + (result.getEmailsFailed() - emailErrors.size()) + " more rows without a welcome email.");
+            }
+            System.out.println("Welcome emails: " + result.getEmailsSent() + " sent, " + result.getEmailsFailed() + " not sent.");
+        }
+    }
+}
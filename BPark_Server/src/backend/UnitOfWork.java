@@ -0,0 +1,132 @@
+package backend;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs a multi-statement database flow as one transaction on its own pooled connection.
+ * Every call checks out a dedicated connection, so concurrent requests never share a
+ * transaction, and no server-wide lock is needed to keep them apart.
+ * <p>
+ * If the database aborts the transaction because of a deadlock or a lock wait timeout,
+ * the whole work is rolled back and run again from the start, after a short randomized
+ * backoff, up to a configurable number of attempts. The work must therefore only touch
+ * the database; in-memory state should be updated by the caller after {@link #execute}
+ * returns, when the transaction is known to be committed.
+ */
+public class UnitOfWork {
+
+    /**
+     * The body of a transaction. It may be run more than once, so it must rebuild any
+     * result it returns from scratch on every run.
+     *
+     * @param <T> The type of the result.
+     */
+    @FunctionalInterface
+    public interface TransactionWork<T> {
+        T execute(Connection conn) throws SQLException;
+    }
+
+    /** MySQL error code for "Deadlock found when trying to get lock". */
+    private static final int ER_LOCK_DEADLOCK = 1213;
+    /** MySQL error code for "Lock wait timeout exceeded". */
+    private static final int ER_LOCK_WAIT_TIMEOUT = 1205;
+    /** SQLState class for serialization failures, including deadlocks. */
+    private static final String SERIALIZATION_FAILURE = "40001";
+
+    private final ConnectionPool pool;
+    private final int maxAttempts;
+    private final long backoffMillis;
+
+    private final AtomicLong commits = new AtomicLong();
+    private final AtomicLong rollbacks = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+
+    /**
+     * @param pool          The pool to check out connections from.
+     * @param maxAttempts   How many times a transaction is run before a retryable failure is given up on.
+     * @param backoffMillis The base delay before a retry; it doubles with every attempt and is randomized.
+     */
+    public UnitOfWork(ConnectionPool pool, int maxAttempts, long backoffMillis) {
+        this.pool = pool;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.backoffMillis = Math.max(0, backoffMillis);
+    }
+
+    /**
+     * Runs the work in a transaction and commits it, retrying on deadlocks and lock wait timeouts.
+     *
+     * @param work The statements to run.
+     * @param <T>  The type of the result.
+     * @return The result of the committed run.
+     * @throws SQLException If the work fails with a non-retryable error, or still fails after the last attempt.
+     */
+    public <T> T execute(TransactionWork<T> work) throws SQLException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return executeOnce(work);
+            } catch (SQLException e) {
+                if (attempt >= maxAttempts || !isRetryable(e)) {
+                    throw e;
+                }
+                retries.incrementAndGet();
+                System.err.println("Transaction aborted (" + e.getMessage() + "), retrying (attempt " + (attempt + 1) + " of " + maxAttempts + ")");
+                backoff(attempt);
+            }
+        }
+    }
+
+    /**
+     * @return A one-line summary of transaction outcomes for the server metrics output.
+     */
+    public String describe() {
+        return "commits=" + commits.get() + " rollbacks=" + rollbacks.get() + " retries=" + retries.get();
+    }
+
+    private <T> T executeOnce(TransactionWork<T> work) throws SQLException {
+        try (Connection conn = pool.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                T result = work.execute(conn);
+                conn.commit();
+                commits.incrementAndGet();
+                return result;
+            } catch (SQLException | RuntimeException e) {
+                rollbacks.incrementAndGet();
+                try {
+                    conn.rollback();
+                } catch (SQLException ex) {
+                    System.err.println("Rollback failed: " + ex.getMessage());
+                }
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    private static boolean isRetryable(SQLException e) {
+        for (SQLException cause = e; cause != null; cause = cause.getNextException()) {
+            if (cause.getErrorCode() == ER_LOCK_DEADLOCK || cause.getErrorCode() == ER_LOCK_WAIT_TIMEOUT
+                    || SERIALIZATION_FAILURE.equals(cause.getSQLState())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void backoff(int attempt) throws SQLException {
+        long delay = backoffMillis << Math.min(attempt - 1, 10);
+        if (delay <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting to retry a transaction", e);
+        }
+    }
+}
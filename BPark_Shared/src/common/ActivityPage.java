@@ -0,0 +1,35 @@
+package common;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+
+/**
+ * A data transfer object (DTO) holding one page of activity log entries, newest first.
+ * The opaque {@code nextCursor} is sent back with the next request to continue after the
+ * last entry of this page; it is null when there are no older entries.
+ */
+public class ActivityPage implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final ArrayList<ActivityInfo> activities;
+    private final String nextCursor;
+    private final boolean continuation;
+
+    /**
+     * Constructs an ActivityPage object.
+     *
+     * @param activities   The entries on this page.
+     * @param nextCursor   The cursor for the next page, or null if this is the last page.
+     * @param continuation True if this page was requested with a cursor (i.e. it is not the first page).
+     */
+    public ActivityPage(ArrayList<ActivityInfo> activities, String nextCursor, boolean continuation) {
+        this.activities = activities;
+        this.nextCursor = nextCursor;
+        this.continuation = continuation;
+    }
+
+    public ArrayList<ActivityInfo> getActivities() { return activities; }
+    public String getNextCursor() { return nextCursor; }
+    public boolean hasMore() { return nextCursor != null; }
+    public boolean isContinuation() { return continuation; }
+}
@@ -7,22 +7,24 @@ import java.io.Serializable;
  * about both active parking sessions (from the 'activeparking' table) and
  * scheduled future orders (from the 'parkingorders' table).
  * Some fields may be null depending on the context.
+ * Times are carried as epoch milliseconds (0 when not set) and are only formatted for display
+ * by the client or in emails, so no format/parse round trip happens on the server.
  */
 public class OrderInfo implements Serializable {
 
-    private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 2L;
 
     // Fields from 'activeparking' table
     private String parkingSpace;
     private String orderNumber;
     private String confirmationCode;
     private String subscriberId;
-    private String timeOfPlacingOrder; // Corresponds to time_of_placing_an_order
-    private String endParkTime;        // Corresponds to endParkTime
+    private long timeOfPlacingOrder;   // Corresponds to time_of_placing_an_order, epoch millis
+    private long endParkTime;          // Corresponds to endParkTime, epoch millis
     private String orderDate;          // Corresponds to order_date
 
     // Fields from 'parkingorders' table
-    private String scheduledTime;      // Corresponds to scheduled_time
+    private long scheduledTime;        // Corresponds to scheduled_time, epoch millis
     private String futureParkingSpot;  // Corresponds to futureParkingSpot
 
     // Helper fields for other functionalities
@@ -33,7 +35,7 @@ public class OrderInfo implements Serializable {
     /**
      * Constructor for Active Parking Orders from the 'activeparking' table.
      */
-    public OrderInfo(String parkingSpace, String orderNumber, String orderDate, String confirmationCode, String subscriberId, String timeOfPlacingOrder, String endParkTime) {
+    public OrderInfo(String parkingSpace, String orderNumber, String orderDate, String confirmationCode, String subscriberId, long timeOfPlacingOrder, long endParkTime) {
         this.parkingSpace = parkingSpace;
         this.orderNumber = orderNumber;
         this.orderDate = orderDate;
@@ -46,7 +48,7 @@ public class OrderInfo implements Serializable {
     /**
      * Constructor for Scheduled Future Orders from the 'parkingorders' table.
      */
-    public OrderInfo(String subscriberId, String userName, String scheduledTime, String futureParkingSpot, String confirmationCode) {
+    public OrderInfo(String subscriberId, String userName, long scheduledTime, String futureParkingSpot, String confirmationCode) {
         this.subscriberId = subscriberId;
         this.userName = userName;
         this.scheduledTime = scheduledTime;
@@ -59,10 +61,10 @@ public class OrderInfo implements Serializable {
     public String getOrderNumber() { return orderNumber; }
     public String getConfirmationCode() { return confirmationCode; }
     public String getSubscriberId() { return subscriberId; }
-    public String getTimeOfPlacingOrder() { return timeOfPlacingOrder; }
-    public String getEndParkTime() { return endParkTime; }
+    public long getTimeOfPlacingOrder() { return timeOfPlacingOrder; }
+    public long getEndParkTime() { return endParkTime; }
     public String getOrderDate() { return orderDate; }
-    public String getScheduledTime() { return scheduledTime; }
+    public long getScheduledTime() { return scheduledTime; }
     public String getFutureParkingSpot() { return futureParkingSpot; }
     public String getUserName() { return userName; }
     public String getUserNameForEmail() { return userNameForEmail; }
@@ -74,5 +76,5 @@ public class OrderInfo implements Serializable {
     public void setUserEmailForEmail(String userEmailForEmail) { this.userEmailForEmail = userEmailForEmail; }
     public void setOrderNumber(String orderNumber) {this.orderNumber = orderNumber;}
     // Legacy support for older parts of the code
-    public String getDateOfPlacingOrder() { return timeOfPlacingOrder; }
+    public long getDateOfPlacingOrder() { return timeOfPlacingOrder; }
 }
\ No newline at end of file
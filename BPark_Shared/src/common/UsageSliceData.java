@@ -0,0 +1,32 @@
+package common;
+
+import java.io.Serializable;
+
+/**
+ * One bucket of a parking usage slice: the sessions that started in the bucket and the
+ * hours they were parked, e.g. all sessions that started between 08:00 and 09:00.
+ */
+public class UsageSliceData implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private String label;
+    private int sessionCount;
+    private long totalHours;
+
+    public UsageSliceData(String label, int sessionCount, long totalHours) {
+        this.label = label;
+        this.sessionCount = sessionCount;
+        this.totalHours = totalHours;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public int getSessionCount() {
+        return sessionCount;
+    }
+
+    public long getTotalHours() {
+        return totalHours;
+    }
+}